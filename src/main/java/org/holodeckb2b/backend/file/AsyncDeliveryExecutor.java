@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.holodeckb2b.backend.file.util.Threads;
+
+/**
+ * Executes the asynchronous deliveries of the {@link NotifyAndDeliverOperation}. It uses a pool with a fixed maximum
+ * number of threads and a bounded queue for deliveries waiting to be executed. When the queue is full new deliveries
+ * are rejected immediately so the Holodeck B2B Core can retry the delivery later instead of the back-end creating an
+ * unlimited number of threads.
+ * <p>When virtual threads are used, each delivery is executed on a new virtual thread instead of a pooled one. The
+ * number of deliveries accepted but not yet completed is then limited to the pool size plus the queue capacity, and a
+ * delivery waits on its own virtual thread until less than pool size deliveries are running.
+ * <p>Executors are shared between all delivery method instances that use the same configuration. Idle threads are
+ * stopped after one minute, so an executor does not hold resources when there are no deliveries.
+ * <p>To monitor the executor, it is registered as MBean with the platform MBean server under the name
+ * <code>org.holodeckb2b.backend.file:type=AsyncDeliveryExecutor,name=«configuration»</code>. See {@link
+ * AsyncDeliveryExecutorMBean} for the available metrics.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class AsyncDeliveryExecutor implements AsyncDeliveryExecutorMBean {
+	private static final Logger	log = LogManager.getLogger(AsyncDeliveryExecutor.class);
+
+	/**
+	 * The executors already created, mapped by their configuration
+	 */
+	private static final Map<String, AsyncDeliveryExecutor> executors = new ConcurrentHashMap<>();
+
+	/**
+	 * The maximum number of deliveries to execute at the same time
+	 */
+	private final int	poolSize;
+	/**
+	 * The thread pool executing the deliveries, <code>null</code> when a new virtual thread is used for each delivery
+	 */
+	private final ThreadPoolExecutor	pool;
+	/**
+	 * The executor starting a new virtual thread for each delivery, <code>null</code> when platform threads are used
+	 */
+	private final ExecutorService	threadPerTask;
+	/**
+	 * Limits the number of deliveries accepted but not yet completed when virtual threads are used
+	 */
+	private final Semaphore	accepted;
+	/**
+	 * Limits the number of deliveries running at the same time when virtual threads are used
+	 */
+	private final Semaphore	running;
+	/**
+	 * The number of deliveries being executed when virtual threads are used
+	 */
+	private final AtomicInteger	active = new AtomicInteger();
+	/**
+	 * The maximum number of waiting deliveries
+	 */
+	private final int	queueCapacity;
+
+	private final LongAdder	submitted = new LongAdder();
+	private final LongAdder	rejected = new LongAdder();
+	private final LongAdder	started = new LongAdder();
+	private final LongAdder	completed = new LongAdder();
+	private final AtomicLong	totalWaitTime = new AtomicLong();
+	private final AtomicLong	maxWaitTime = new AtomicLong();
+
+	/**
+	 * Gets the executor for the given configuration. If there is no executor yet with this configuration a new one is
+	 * created.
+	 *
+	 * @param poolSize			maximum number of deliveries to execute at the same time
+	 * @param queueCapacity		maximum number of deliveries waiting for execution
+	 * @param virtualThreads	indicates whether the deliveries should be executed on virtual threads
+	 * @return	the executor for the given configuration
+	 */
+	public static AsyncDeliveryExecutor getInstance(final int poolSize, final int queueCapacity,
+													final boolean virtualThreads) {
+		final boolean useVirtual = virtualThreads && Threads.isVirtualThreadSupported();
+		final String name = "pool-" + poolSize + "-queue-" + queueCapacity + (useVirtual ? "-virtual" : "");
+		return executors.computeIfAbsent(name, n -> new AsyncDeliveryExecutor(n, poolSize, queueCapacity,
+																				useVirtual));
+	}
+
+	/**
+	 * Creates a new executor.
+	 *
+	 * @param name				name of the executor, used for registering the MBean
+	 * @param poolSize			maximum number of deliveries to execute at the same time
+	 * @param queueCapacity		maximum number of deliveries waiting for execution
+	 * @param virtualThreads	indicates whether the deliveries should be executed on virtual threads
+	 */
+	private AsyncDeliveryExecutor(final String name, final int poolSize, final int queueCapacity,
+								  final boolean virtualThreads) {
+		this.poolSize = poolSize;
+		this.queueCapacity = queueCapacity;
+		this.threadPerTask = virtualThreads ? Threads.createVirtualThreadPerTaskExecutor("FileDelivery") : null;
+		if (threadPerTask != null) {
+			this.pool = null;
+			this.accepted = new Semaphore(poolSize + queueCapacity);
+			this.running = new Semaphore(poolSize);
+		} else {
+			final BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity)
+																	: new SynchronousQueue<>();
+			this.pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, queue,
+											   Threads.createThreadFactory("FileDelivery", false));
+			this.pool.allowCoreThreadTimeOut(true);
+			this.accepted = null;
+			this.running = null;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+						new ObjectName("org.holodeckb2b.backend.file:type=AsyncDeliveryExecutor,name=" + name));
+		} catch (Exception mbeanFailure) {
+			log.warn("Could not register the delivery executor ({}) for monitoring : {}", name,
+					 mbeanFailure.getMessage());
+		}
+		log.debug("Created delivery executor : {}", name);
+	}
+
+	/**
+	 * Executes the given delivery task when there is capacity available.
+	 *
+	 * @param delivery	the delivery task to execute
+	 * @return	<code>true</code> when the task was accepted for execution,<br>
+	 * 			<code>false</code> when it was rejected because the maximum number of waiting deliveries is reached
+	 */
+	public boolean execute(final Runnable delivery) {
+		final long queuedAt = System.nanoTime();
+		final Runnable task = () -> {
+			final long waitTime = System.nanoTime() - queuedAt;
+			started.increment();
+			totalWaitTime.addAndGet(waitTime);
+			maxWaitTime.accumulateAndGet(waitTime, Math::max);
+			try {
+				delivery.run();
+			} finally {
+				completed.increment();
+			}
+		};
+		try {
+			if (threadPerTask == null)
+				pool.execute(task);
+			else if (!accepted.tryAcquire())
+				throw new RejectedExecutionException();
+			else
+				try {
+					threadPerTask.execute(() -> runLimited(task));
+				} catch (RejectedExecutionException notStarted) {
+					accepted.release();
+					throw notStarted;
+				}
+			submitted.increment();
+			return true;
+		} catch (RejectedExecutionException queueFull) {
+			rejected.increment();
+			return false;
+		}
+	}
+
+	/**
+	 * Executes the delivery task on the current virtual thread once less than pool size deliveries are running.
+	 *
+	 * @param task	the delivery task to execute
+	 */
+	private void runLimited(final Runnable task) {
+		try {
+			running.acquireUninterruptibly();
+			active.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				active.decrementAndGet();
+				running.release();
+			}
+		} finally {
+			accepted.release();
+		}
+	}
+
+	@Override
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	@Override
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		if (pool != null)
+			return pool.getQueue().size();
+		else
+			return Math.max(0, poolSize + queueCapacity - accepted.availablePermits() - active.get());
+	}
+
+	@Override
+	public int getActiveCount() {
+		return pool != null ? pool.getActiveCount() : active.get();
+	}
+
+	@Override
+	public long getSubmittedCount() {
+		return submitted.sum();
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@Override
+	public long getCompletedCount() {
+		return completed.sum();
+	}
+
+	@Override
+	public double getAverageWaitTime() {
+		final long n = started.sum();
+		return n > 0 ? totalWaitTime.get() / (n * 1_000_000.0) : 0;
+	}
+
+	@Override
+	public double getMaxWaitTime() {
+		return maxWaitTime.get() / 1_000_000.0;
+	}
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file;
+
+/**
+ * Defines the metrics of the {@link AsyncDeliveryExecutor} that are available through JMX.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public interface AsyncDeliveryExecutorMBean {
+
+	/**
+	 * @return the maximum number of deliveries executed at the same time
+	 */
+	int getPoolSize();
+
+	/**
+	 * @return the maximum number of deliveries that can wait for execution
+	 */
+	int getQueueCapacity();
+
+	/**
+	 * @return the number of deliveries currently waiting for execution
+	 */
+	int getQueueDepth();
+
+	/**
+	 * @return the number of deliveries currently being executed
+	 */
+	int getActiveCount();
+
+	/**
+	 * @return the total number of deliveries accepted for execution
+	 */
+	long getSubmittedCount();
+
+	/**
+	 * @return the total number of deliveries that were rejected because the queue was full
+	 */
+	long getRejectedCount();
+
+	/**
+	 * @return the total number of executed deliveries
+	 */
+	long getCompletedCount();
+
+	/**
+	 * @return the average time in milliseconds a delivery waited in the queue before being executed
+	 */
+	double getAverageWaitTime();
+
+	/**
+	 * @return the maximum time in milliseconds a delivery waited in the queue before being executed
+	 */
+	double getMaxWaitTime();
+}
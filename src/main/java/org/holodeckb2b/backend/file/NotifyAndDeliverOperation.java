@@ -16,23 +16,47 @@
  */
 package org.holodeckb2b.backend.file;
 
+import java.io.IOException;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.holodeckb2b.backend.file.delivers.AbstractFileDeliverer;
+import org.holodeckb2b.backend.file.delivers.AbstractFileDeliverer.DirectoryLayout;
+import org.holodeckb2b.backend.file.delivers.AbstractFileDeliverer.LaneKey;
+import org.holodeckb2b.backend.file.delivers.AbstractFileDeliverer.PayloadTransferMode;
+import org.holodeckb2b.backend.file.delivers.DeliveryRouter;
 import org.holodeckb2b.backend.file.delivers.EbmsFileDeliverer;
 import org.holodeckb2b.backend.file.delivers.MMDDeliverer;
 import org.holodeckb2b.backend.file.delivers.SingleXMLDeliverer;
+import org.holodeckb2b.backend.file.journal.DeliveryJournal;
+import org.holodeckb2b.backend.file.journal.DeliveryJournalReader;
+import org.holodeckb2b.backend.file.journal.DeliveryRingBuffer;
+import org.holodeckb2b.backend.file.journal.DeliveryRingBufferReader;
+import org.holodeckb2b.backend.file.util.GroupCommitSyncer;
+import org.holodeckb2b.backend.file.util.Threads;
+import org.holodeckb2b.backend.file.util.UniqueNames;
 import org.holodeckb2b.commons.util.Utils;
 import org.holodeckb2b.interfaces.core.HolodeckB2BCoreInterface;
 import org.holodeckb2b.interfaces.delivery.IDeliveryCallback;
 import org.holodeckb2b.interfaces.delivery.IDeliveryMethod;
 import org.holodeckb2b.interfaces.delivery.MessageDeliveryException;
 import org.holodeckb2b.interfaces.messagemodel.IMessageUnit;
+import org.holodeckb2b.interfaces.messagemodel.IUserMessage;
 
 /**
  * Is a file based {@link IDeliveryMethod} implementation. This delivery method writes the meta-data and payloads (for
@@ -57,7 +81,68 @@ import org.holodeckb2b.interfaces.messagemodel.IMessageUnit;
  * <p>Which format is requested must be specified when creating the factory using the "<i>format</i>" parameter. If not
  * specified the <i>"ebms"</i> format will be used as default. Furthermore the directory where to write the files MUST
  * be specified using the "<i>deliveryDirectoy</i>" setting.
- * <p>This delivery method supports the asynchronous delivery of the messages.
+ * <p>By default the payloads are copied to the delivery directory. Using the "<i>payloadTransfer</i>" parameter the
+ * payload files can also be hard linked ("<i>link</i>") or moved ("<i>move</i>") to the delivery directory. This is
+ * only possible when the file containing the payload content is known and located on the same file system, otherwise
+ * the payload is copied. See {@link AbstractFileDeliverer.PayloadTransferMode}.
+ * <p>By default all files are written to the delivery directory itself. Using the "<i>directoryLayout</i>" parameter
+ * they can be spread over sub directories, either per day ("<i>day</i>", <code>yyyy/MM/dd</code>), per hour
+ * ("<i>hour</i>", <code>yyyy/MM/dd/HH</code>) or based on the hash of the message id ("<i>hash</i>",
+ * <code>xx/xx</code>). All files of a message unit are written to the same sub directory, so the payload locations in
+ * the meta-data remain relative to the meta-data file. See {@link AbstractFileDeliverer.DirectoryLayout}.
+ * <p>By default the names of the delivered files are based on the message id, and existing files are checked to
+ * ensure that a file name is unique. When the "<i>uniqueFileNames</i>" parameter is set to <i>true</i> the names are
+ * generated from a node id, the current time and a sequence number instead, so no existing files need to be checked.
+ * When multiple Holodeck B2B instances deliver to the same directory each should be configured with a different node
+ * id using the "<i>nodeId</i>" parameter. See {@link UniqueNames}.
+ * <p>When multiple back-end consumers process the delivered files, the deliveries can be partitioned into lanes using
+ * the "<i>deliveryLanes</i>" parameter. Each lane is a sub directory <code>lane-«n»</code> of the delivery directory
+ * and the lane of a message unit is selected by the hash of its conversation id ("<i>conversation</i>", default),
+ * the PartyId of its Sender ("<i>sender</i>") or its message id ("<i>message</i>") as specified by the
+ * "<i>laneKey</i>" parameter. Signal Messages are partitioned by the message id they reference. See {@link
+ * AbstractFileDeliverer.LaneKey}.
+ * <p>User Messages can be routed to other directories and formats based on their content by specifying routes. A
+ * route consists of parameters named "<i>route.«name».«criterion»</i>" that specify the comma separated values that
+ * match for the criterion, and the "<i>route.«name».deliveryDirectory</i>" and optional "<i>route.«name».format</i>"
+ * parameters that specify where and in which format the matching messages are delivered. The criteria that can be used
+ * are <i>service</i>, <i>action</i>, <i>sender</i>, <i>receiver</i>, <i>mpc</i> and <i>property.«name»</i>, see
+ * {@link DeliveryRouter}. All other parameters apply to all routes. The routes are compiled into an index when the
+ * delivery method is initialised and the first matching route, in order of the route names, is used. Signal Messages
+ * and User Messages not matching any route are delivered to the "<i>deliveryDirectory</i>".
+ * <p>The payloads of a message are written one after another. When the "<i>payloadWriteConcurrency</i>" parameter is
+ * set to a value larger than 1, the payloads of a message are written concurrently using a pool with the given number
+ * of platform threads. The pool is shared by all delivery methods with the same number of threads.
+ * <p>When the "<i>durableDelivery</i>" parameter is set to <i>true</i>, the payload files, the meta-data file and the
+ * directory entries are forced to disk before the meta-data file gets its final name. To limit the impact on the
+ * throughput the syncs of deliveries executed at the same time are combined using group commit, see {@link
+ * GroupCommitSyncer}. The time window in which the syncs are combined can be set using the "<i>syncWindow</i>"
+ * parameter (in milliseconds, default {@value #DEFAULT_SYNC_WINDOW}).
+ * <p>To let back-end systems find new deliveries without listing the delivery directory, the deliveries can be
+ * recorded in an append-only journal by setting the "<i>journalDirectory</i>" parameter. After the files of a message
+ * unit have got their final names a record with the message id, the type of message unit, the paths of the meta-data
+ * and payload files and the time of delivery is appended to the journal, which back-end systems can read from a stored
+ * offset using a {@link DeliveryJournalReader}. A new segment of the journal is started when the current one has
+ * reached the size set by the "<i>journalSegmentSize</i>" parameter (in MB, default {@value
+ * #DEFAULT_JOURNAL_SEGMENT_SIZE}) and segments are removed when they have not changed during the time set by the
+ * "<i>journalRetention</i>" parameter (in hours, default {@value #DEFAULT_JOURNAL_RETENTION}, 0 to keep all segments).
+ * See {@link DeliveryJournal}.
+ * <p>Back-end systems running on the same host can be notified of new deliveries with low latency using a memory-mapped
+ * ring buffer file, specified by the "<i>ringBufferFile</i>" parameter. After each delivery an entry with the message
+ * id and the path of the meta-data file is written to the ring buffer, which back-end systems can read using a {@link
+ * DeliveryRingBufferReader}. The number of entries and their size in bytes can be set using the
+ * "<i>ringBufferCapacity</i>" (default {@value #DEFAULT_RING_BUFFER_CAPACITY}) and "<i>ringBufferEntrySize</i>"
+ * (default {@value #DEFAULT_RING_BUFFER_ENTRY_SIZE}) parameters. See {@link DeliveryRingBuffer} for the layout of the
+ * file.
+ * <p>In the <i>ebms</i> and <i>single_xml</i> formats the meta-data of User Messages and Receipts is written directly
+ * to file without first creating an Axiom object tree. This can be disabled by setting the "<i>useStreamingWriter</i>"
+ * parameter to <i>false</i>.
+ * <p>This delivery method supports the asynchronous delivery of the messages. The asynchronous deliveries are executed
+ * by an {@link AsyncDeliveryExecutor} which limits the number of deliveries executed at the same time (parameter
+ * "<i>maxConcurrentDeliveries</i>", default {@value #DEFAULT_MAX_CONCURRENT}) and the number of deliveries that
+ * can wait for execution (parameter "<i>deliveryQueueSize</i>", default {@value #DEFAULT_QUEUE_SIZE}). When the queue
+ * is full the delivery fails immediately so the Holodeck B2B Core can retry it later. When the
+ * "<i>useVirtualThreads</i>" parameter is set to <i>true</i> and the Java runtime supports them, virtual threads are
+ * used to execute the deliveries.
  *
  * <p>This back-end was originally included in the Holodeck B2B Core project as the default back-end integration. But
  * since it is a non essential part it has been split into a separate extension.
@@ -78,6 +163,125 @@ public class NotifyAndDeliverOperation implements IDeliveryMethod {
      * The name of the parameter for the format
      */
     public static final String FORMAT_PARAM = "format";
+    /**
+     * The name of the parameter to indicate that virtual threads should be used for asynchronous delivery
+     */
+    public static final String VIRTUAL_THREADS_PARAM = "useVirtualThreads";
+    /**
+     * The name of the parameter for the maximum number of concurrent asynchronous deliveries
+     */
+    public static final String MAX_CONCURRENT_PARAM = "maxConcurrentDeliveries";
+    /**
+     * The name of the parameter for the maximum number of asynchronous deliveries waiting for execution
+     */
+    public static final String QUEUE_SIZE_PARAM = "deliveryQueueSize";
+    /**
+     * The name of the parameter for how the payloads should be transferred to the delivery directory
+     */
+    public static final String PAYLOAD_TRANSFER_PARAM = "payloadTransfer";
+    /**
+     * The name of the parameter for how the delivered files should be spread over sub directories
+     */
+    public static final String DIRECTORY_LAYOUT_PARAM = "directoryLayout";
+    /**
+     * The name of the parameter to indicate that generated unique file names should be used
+     */
+    public static final String UNIQUE_FILE_NAMES_PARAM = "uniqueFileNames";
+    /**
+     * The name of the parameter for the node id used in the generated file names
+     */
+    public static final String NODE_ID_PARAM = "nodeId";
+    /**
+     * The name of the parameter for the number of lanes the deliveries should be partitioned into
+     */
+    public static final String LANES_PARAM = "deliveryLanes";
+    /**
+     * The name of the parameter for the key used to select the lane of a message unit
+     */
+    public static final String LANE_KEY_PARAM = "laneKey";
+    /**
+     * The prefix of the names of the parameters specifying the routes
+     */
+    public static final String ROUTE_PREFIX = "route.";
+    /**
+     * The name of the parameter for the maximum number of payloads of a message written concurrently
+     */
+    public static final String PAYLOAD_WRITE_CONCURRENCY_PARAM = "payloadWriteConcurrency";
+    /**
+     * The name of the parameter to indicate that delivered files should be forced to disk
+     */
+    public static final String DURABLE_DELIVERY_PARAM = "durableDelivery";
+    /**
+     * The name of the parameter for the time window in which syncs to disk are combined
+     */
+    public static final String SYNC_WINDOW_PARAM = "syncWindow";
+    /**
+     * The name of the parameter for the directory of the delivery journal
+     */
+    public static final String JOURNAL_DIR_PARAM = "journalDirectory";
+    /**
+     * The name of the parameter for the size in MB after which a new journal segment is started
+     */
+    public static final String JOURNAL_SEGMENT_SIZE_PARAM = "journalSegmentSize";
+    /**
+     * The name of the parameter for the number of hours journal segments are kept
+     */
+    public static final String JOURNAL_RETENTION_PARAM = "journalRetention";
+    /**
+     * The name of the parameter for the ring buffer file to notify co-located back-ends of deliveries
+     */
+    public static final String RING_BUFFER_FILE_PARAM = "ringBufferFile";
+    /**
+     * The name of the parameter for the number of entries in the ring buffer
+     */
+    public static final String RING_BUFFER_CAPACITY_PARAM = "ringBufferCapacity";
+    /**
+     * The name of the parameter for the size in bytes of the ring buffer entries
+     */
+    public static final String RING_BUFFER_ENTRY_SIZE_PARAM = "ringBufferEntrySize";
+    /**
+     * The name of the parameter to indicate whether the meta-data should be written using the streaming writer
+     */
+    public static final String STREAMING_WRITER_PARAM = "useStreamingWriter";
+    /**
+     * Default maximum number of concurrent asynchronous deliveries
+     */
+    public static final int DEFAULT_MAX_CONCURRENT = 10;
+    /**
+     * Default maximum number of asynchronous deliveries waiting for execution
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    /**
+     * Default time window in milliseconds in which syncs to disk are combined
+     */
+    public static final int DEFAULT_SYNC_WINDOW = 5;
+    /**
+     * Default size in MB after which a new journal segment is started
+     */
+    public static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 64;
+    /**
+     * Default number of hours journal segments are kept
+     */
+    public static final int DEFAULT_JOURNAL_RETENTION = 168;
+    /**
+     * Default number of entries in the ring buffer
+     */
+    public static final int DEFAULT_RING_BUFFER_CAPACITY = 4096;
+    /**
+     * Default size in bytes of the ring buffer entries
+     */
+    public static final int DEFAULT_RING_BUFFER_ENTRY_SIZE = 512;
+
+    /**
+     * The syncers already created, mapped by their time window. The syncer is shared between the delivery methods so
+     * the syncs of all deliveries can be combined.
+     */
+    private static final Map<Integer, GroupCommitSyncer> syncers = new ConcurrentHashMap<>();
+    /**
+     * The pools for writing payloads concurrently already created, mapped by their number of threads. The pools are
+     * shared between the delivery methods so re-initialising a delivery method does not create a new pool each time.
+     */
+    private static final Map<Integer, ExecutorService> payloadWriteExecutors = new ConcurrentHashMap<>();
 
     /**
      * The delivery directory path
@@ -87,6 +291,15 @@ public class NotifyAndDeliverOperation implements IDeliveryMethod {
      * The actual implementation of the delivery
      */
     protected AbstractFileDeliverer		deliverer;
+    /**
+     * The router selecting the deliverer for User Messages based on their content, <code>null</code> if there are no
+     * routes and all message units are delivered using the default deliverer
+     */
+    protected DeliveryRouter<AbstractFileDeliverer>	router;
+    /**
+     * The executor of the asynchronous deliveries
+     */
+    protected AsyncDeliveryExecutor	deliveryExecutor;
 
     /**
      * Initializes the factory, ensures that a valid delivery directory is specified.
@@ -108,27 +321,256 @@ public class NotifyAndDeliverOperation implements IDeliveryMethod {
         if (Utils.isNullOrEmpty(sDir))
         	throw new MessageDeliveryException("Configuration error! No directory specified!");
 
-        deliveryDir = Paths.get(sDir);
-        if (!deliveryDir.isAbsolute())
-        	deliveryDir = HolodeckB2BCoreInterface.getConfiguration().getHolodeckB2BHome().resolve(deliveryDir);
-
-        if (!checkDirectory())
+        deliveryDir = resolveDirectory(sDir);
+        if (!checkDirectory(deliveryDir))
             throw new MessageDeliveryException("Configuration error! Specified directory [" + deliveryDir
                                                                         + " does not exits or is not writable!");
 
         // Check if XML format is specified
         String format = (String) settings.get(FORMAT_PARAM);
+        if (!"single_xml".equals(format) && !"mmd".equals(format))
+        	format = "ebms";
+        deliverer = createDeliverer(format, deliveryDir, settings);
+        final List<AbstractFileDeliverer> deliverers = new ArrayList<>();
+        deliverers.add(deliverer);
+        router = createRouter(settings, format, deliverers);
+
+        final boolean useVirtualThreads = Utils.isTrue((String) settings.get(VIRTUAL_THREADS_PARAM));
+        if (useVirtualThreads && !Threads.isVirtualThreadSupported())
+        	log.warn("Virtual threads are not supported by the Java runtime, using platform threads");
+        final int maxConcurrent = Math.max(1, getIntSetting(settings, MAX_CONCURRENT_PARAM, DEFAULT_MAX_CONCURRENT));
+        final int queueSize = getIntSetting(settings, QUEUE_SIZE_PARAM, DEFAULT_QUEUE_SIZE);
+        deliveryExecutor = AsyncDeliveryExecutor.getInstance(maxConcurrent, queueSize, useVirtualThreads);
+
+        final int payloadWriters = getIntSetting(settings, PAYLOAD_WRITE_CONCURRENCY_PARAM, 1);
+        if (payloadWriters > 1) {
+        	final ExecutorService payloadWriteExecutor = payloadWriteExecutors.computeIfAbsent(payloadWriters, n -> {
+        		// Threads are stopped when idle so the pool does not hold resources when there are no deliveries
+        		final ThreadPoolExecutor pool = new ThreadPoolExecutor(n, n, 60, TimeUnit.SECONDS,
+        												new LinkedBlockingQueue<>(),
+        												Threads.createThreadFactory("FilePayloadWriter", false));
+        		pool.allowCoreThreadTimeOut(true);
+        		return pool;
+        	});
+        	deliverers.forEach(d -> d.setPayloadWriteExecutor(payloadWriteExecutor));
+        }
+
+        if (Utils.isTrue((String) settings.get(DURABLE_DELIVERY_PARAM))) {
+        	final int syncWindow = getIntSetting(settings, SYNC_WINDOW_PARAM, DEFAULT_SYNC_WINDOW);
+        	final GroupCommitSyncer syncer = syncers.computeIfAbsent(syncWindow, w -> new GroupCommitSyncer(w));
+        	deliverers.forEach(d -> d.setSyncer(syncer));
+        }
+
+        final String journalDir = (String) settings.get(JOURNAL_DIR_PARAM);
+        if (!Utils.isNullOrEmpty(journalDir)) {
+        	final long segmentSize = getIntSetting(settings, JOURNAL_SEGMENT_SIZE_PARAM, DEFAULT_JOURNAL_SEGMENT_SIZE);
+        	if (segmentSize == 0)
+        		throw new MessageDeliveryException("Configuration error! Invalid value for "
+        											+ JOURNAL_SEGMENT_SIZE_PARAM + " : " + segmentSize);
+        	final long retention = getIntSetting(settings, JOURNAL_RETENTION_PARAM, DEFAULT_JOURNAL_RETENTION);
+        	final DeliveryJournal journal;
+        	try {
+        		journal = DeliveryJournal.getInstance(resolveDirectory(journalDir), segmentSize * 1024 * 1024,
+        											  TimeUnit.HOURS.toMillis(retention));
+        	} catch (IOException journalFailure) {
+        		throw new MessageDeliveryException("Configuration error! Could not open journal in " + journalDir,
+        											journalFailure);
+        	}
+        	deliverers.forEach(d -> d.setJournal(journal));
+        }
+
+        final String ringBufferFile = (String) settings.get(RING_BUFFER_FILE_PARAM);
+        if (!Utils.isNullOrEmpty(ringBufferFile)) {
+        	final int capacity = getIntSetting(settings, RING_BUFFER_CAPACITY_PARAM, DEFAULT_RING_BUFFER_CAPACITY);
+        	final int entrySize = getIntSetting(settings, RING_BUFFER_ENTRY_SIZE_PARAM, DEFAULT_RING_BUFFER_ENTRY_SIZE);
+        	final DeliveryRingBuffer ringBuffer;
+        	try {
+        		ringBuffer = DeliveryRingBuffer.getInstance(resolveDirectory(ringBufferFile), capacity, entrySize);
+        	} catch (IllegalArgumentException invalid) {
+        		throw new MessageDeliveryException("Configuration error! Invalid ring buffer settings : "
+        											+ invalid.getMessage());
+        	} catch (IOException ringBufferFailure) {
+        		throw new MessageDeliveryException("Configuration error! Could not open ring buffer " + ringBufferFile,
+        											ringBufferFailure);
+        	}
+        	deliverers.forEach(d -> d.setRingBuffer(ringBuffer));
+        }
+
+        log.info("Initialised file delivery method using {} format to {}{}", format, deliveryDir,
+        		 deliverers.size() > 1 ? " with " + (deliverers.size() - 1) + " routes" : "");
+    }
+
+    /**
+     * Helper method to resolve the path of a directory or file specified in the settings. A relative path is resolved
+     * against the Holodeck B2B home directory.
+     *
+     * @param dir	the path as specified in the settings
+     * @return	the absolute path
+     */
+    private static Path resolveDirectory(final String dir) {
+    	final Path path = Paths.get(dir);
+    	return path.isAbsolute() ? path
+    							 : HolodeckB2BCoreInterface.getConfiguration().getHolodeckB2BHome().resolve(path);
+    }
+
+    /**
+     * Creates the deliverer for the given format and directory, configured according to the settings.
+     *
+     * @param format	the delivery format
+     * @param dir		the delivery directory
+     * @param settings	the settings of the delivery method
+     * @return	the configured deliverer
+     * @throws MessageDeliveryException	when the settings contain an invalid value
+     * @since 2.1.0
+     */
+    protected AbstractFileDeliverer createDeliverer(final String format, final Path dir, final Map<String, ?> settings)
+    																				throws MessageDeliveryException {
+    	final AbstractFileDeliverer deliverer;
         switch (format) {
             case "single_xml" :
-                deliverer = new SingleXMLDeliverer(deliveryDir); break;
+                deliverer = new SingleXMLDeliverer(dir); break;
             case "mmd" :
-                deliverer = new MMDDeliverer(deliveryDir); break;
-            case "ebms" :
+                deliverer = new MMDDeliverer(dir); break;
             default:
-            	format = "ebms";
-                deliverer = new EbmsFileDeliverer(deliveryDir);
+                deliverer = new EbmsFileDeliverer(dir);
+        }
+        if (deliverer instanceof EbmsFileDeliverer) {
+        	final String streamingWriter = (String) settings.get(STREAMING_WRITER_PARAM);
+        	((EbmsFileDeliverer) deliverer).setUseStreamingWriter(streamingWriter == null
+        															|| Utils.isTrue(streamingWriter));
         }
-        log.info("Initialised file delivery method using {} format to {}", format, deliveryDir);
+        final String transferMode = (String) settings.get(PAYLOAD_TRANSFER_PARAM);
+        if (!Utils.isNullOrEmpty(transferMode))
+        	try {
+        		deliverer.setPayloadTransferMode(
+        						PayloadTransferMode.valueOf(transferMode.trim().toUpperCase(Locale.ROOT)));
+        	} catch (IllegalArgumentException invalid) {
+        		throw new MessageDeliveryException("Configuration error! Invalid value for " + PAYLOAD_TRANSFER_PARAM
+        											+ " : " + transferMode);
+        	}
+        final String layout = (String) settings.get(DIRECTORY_LAYOUT_PARAM);
+        if (!Utils.isNullOrEmpty(layout))
+        	try {
+        		deliverer.setDirectoryLayout(DirectoryLayout.valueOf(layout.trim().toUpperCase(Locale.ROOT)));
+        	} catch (IllegalArgumentException invalid) {
+        		throw new MessageDeliveryException("Configuration error! Invalid value for " + DIRECTORY_LAYOUT_PARAM
+        											+ " : " + layout);
+        	}
+        final int lanes = getIntSetting(settings, LANES_PARAM, 1);
+        final String laneKey = (String) settings.get(LANE_KEY_PARAM);
+        try {
+        	deliverer.setLanes(Math.max(1, lanes), Utils.isNullOrEmpty(laneKey) ? null
+        										: LaneKey.valueOf(laneKey.trim().toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException invalid) {
+        	throw new MessageDeliveryException("Configuration error! Invalid value for " + LANE_KEY_PARAM
+        										+ " : " + laneKey);
+        }
+        if (Utils.isTrue((String) settings.get(UNIQUE_FILE_NAMES_PARAM))) {
+        	final String nodeId = (String) settings.get(NODE_ID_PARAM);
+        	try {
+        		deliverer.setUniqueNames(new UniqueNames(nodeId));
+        	} catch (IllegalArgumentException invalid) {
+        		throw new MessageDeliveryException("Configuration error! Invalid value for " + NODE_ID_PARAM
+        											+ " : " + nodeId);
+        	}
+        }
+        return deliverer;
+    }
+
+    /**
+     * Creates the router for the routes specified in the settings. A route is specified by settings named
+     * "<code>route.«name».«criterion»</code>" containing the comma separated values that match for the criterion, see
+     * {@link DeliveryRouter} for the supported criteria, and the "<code>route.«name».deliveryDirectory</code>" and
+     * optional "<code>route.«name».format</code>" settings specifying the directory and format to use for the messages
+     * matching the route. The routes are evaluated in order of their names, where numeric names come first and are
+     * compared by their value.
+     *
+     * @param settings		the settings of the delivery method
+     * @param defaultFormat	the format to use when the route does not specify one
+     * @param deliverers	the list to add the deliverers of the routes to
+     * @return	the router, <code>null</code> if no routes are specified
+     * @throws MessageDeliveryException	when a route is not correctly specified
+     * @since 2.1.0
+     */
+    protected DeliveryRouter<AbstractFileDeliverer> createRouter(final Map<String, ?> settings,
+    									final String defaultFormat, final List<AbstractFileDeliverer> deliverers)
+    																				throws MessageDeliveryException {
+    	final Map<String, Map<String, String>> routes = new TreeMap<>((a, b) -> {
+    		final boolean aNum = a.matches("\\d+"), bNum = b.matches("\\d+");
+    		if (aNum && bNum)
+    			return new BigInteger(a).compareTo(new BigInteger(b));
+    		else
+    			return aNum ? -1 : bNum ? 1 : a.compareTo(b);
+    	});
+    	for (final Map.Entry<String, ?> e : settings.entrySet()) {
+    		if (!e.getKey().startsWith(ROUTE_PREFIX))
+    			continue;
+    		final String spec = e.getKey().substring(ROUTE_PREFIX.length());
+    		final int sep = spec.indexOf('.');
+    		if (sep <= 0 || sep == spec.length() - 1 || !(e.getValue() instanceof String))
+    			throw new MessageDeliveryException("Configuration error! Invalid route setting : " + e.getKey());
+    		routes.computeIfAbsent(spec.substring(0, sep), n -> new HashMap<>())
+    			  .put(spec.substring(sep + 1), ((String) e.getValue()).trim());
+    	}
+    	if (routes.isEmpty())
+    		return null;
+
+    	final DeliveryRouter<AbstractFileDeliverer> router = new DeliveryRouter<>();
+    	for (final Map.Entry<String, Map<String, String>> route : routes.entrySet()) {
+    		final Map<String, String> spec = route.getValue();
+    		final String dir = spec.remove(DELIVERY_DIR_PARAM);
+    		if (Utils.isNullOrEmpty(dir))
+    			throw new MessageDeliveryException("Configuration error! No directory specified for route "
+    												+ route.getKey());
+    		final Path routeDir = resolveDirectory(dir);
+    		if (!checkDirectory(routeDir))
+    			throw new MessageDeliveryException("Configuration error! Directory [" + routeDir + "] of route "
+    												+ route.getKey() + " does not exits or is not writable!");
+    		final String format = spec.remove(FORMAT_PARAM);
+    		final Map<String, List<String>> criteria = new HashMap<>();
+    		for (final Map.Entry<String, String> c : spec.entrySet()) {
+    			final List<String> values = new ArrayList<>();
+    			for (final String v : c.getValue().split(","))
+    				if (!v.trim().isEmpty())
+    					values.add(v.trim());
+    			criteria.put(c.getKey(), values);
+    		}
+    		final AbstractFileDeliverer routeDeliverer = createDeliverer(Utils.isNullOrEmpty(format) ? defaultFormat
+    																	  : format.trim(), routeDir, settings);
+    		try {
+    			router.addRule(criteria, routeDeliverer);
+    		} catch (IllegalArgumentException invalid) {
+    			throw new MessageDeliveryException("Configuration error! Invalid route " + route.getKey() + " : "
+    												+ invalid.getMessage());
+    		}
+    		deliverers.add(routeDeliverer);
+    	}
+    	return router;
+    }
+
+
+    /**
+     * Helper method to get the value of a setting that should contain a non negative integer.
+     *
+     * @param settings		the settings of the delivery method
+     * @param name			name of the setting
+     * @param defaultValue	the value to use when the setting is not specified
+     * @return	the value of the setting
+     * @throws MessageDeliveryException	when the setting does not contain a valid non negative integer
+     */
+    protected static int getIntSetting(final Map<String, ?> settings, final String name, final int defaultValue)
+    																				throws MessageDeliveryException {
+    	final Object value = settings.get(name);
+    	if (value == null || (value instanceof String && Utils.isNullOrEmpty((String) value)))
+    		return defaultValue;
+    	try {
+    		final int n = Integer.parseInt(value.toString().trim());
+    		if (n < 0)
+    			throw new NumberFormatException();
+    		return n;
+    	} catch (NumberFormatException invalid) {
+    		throw new MessageDeliveryException("Configuration error! Invalid value for " + name + " : " + value);
+    	}
     }
 
     @Override
@@ -138,32 +580,60 @@ public class NotifyAndDeliverOperation implements IDeliveryMethod {
 
     @Override
     public void deliver(IMessageUnit rcvdMsgUnit) throws MessageDeliveryException {
-    	deliverer.deliver(rcvdMsgUnit);
+    	selectDeliverer(rcvdMsgUnit).deliver(rcvdMsgUnit);
+    }
+
+    /**
+     * Selects the deliverer to use for the message unit. When routes are configured, the deliverer of the first route
+     * that matches a User Message is used. Signal Messages and User Messages that don't match any route are delivered
+     * using the default deliverer.
+     *
+     * @param msgUnit	the message unit to deliver
+     * @return	the deliverer to use
+     * @since 2.1.0
+     */
+    protected AbstractFileDeliverer selectDeliverer(final IMessageUnit msgUnit) {
+    	if (router != null && msgUnit instanceof IUserMessage) {
+    		final AbstractFileDeliverer routed = router.route((IUserMessage) msgUnit);
+    		if (routed != null)
+    			return routed;
+    	}
+    	return deliverer;
     }
 
     @Override
     public void deliver(IMessageUnit rcvdMsgUnit, IDeliveryCallback callback)  {
-    	new Thread(() -> {
+    	final boolean accepted = deliveryExecutor.execute(() -> {
 	    	try {
-    			if (!checkDirectory()) {
+	    		final AbstractFileDeliverer selected = selectDeliverer(rcvdMsgUnit);
+	    		final Path targetDir = selected.getDirectory();
+    			if (!checkDirectory(targetDir)) {
     				// Directory is not valid
-    				log.error("The specified directory ({}) is not accessible", deliveryDir);
-    				callback.failed(new MessageDeliveryException("Specified directory does not exits or is not writable!"));
+    				log.error("The specified directory ({}) is not accessible", targetDir);
+    				callback.failed(new MessageDeliveryException(
+    												"Specified directory does not exits or is not writable!"));
+    			} else {
+    				selected.deliver(rcvdMsgUnit);
+    				callback.success();
     			}
-	    		deliver(rcvdMsgUnit);
-	    		callback.success();
 	    	} catch (MessageDeliveryException deliveryFailure) {
 	    		callback.failed(deliveryFailure);
 	    	}
-    	}).start();
+    	});
+    	if (!accepted) {
+    		log.warn("Delivery of message unit [msgId={}] rejected because the delivery queue is full ({})",
+    				 rcvdMsgUnit.getMessageId(), deliveryExecutor.getQueueDepth());
+    		callback.failed(new MessageDeliveryException("Too many pending deliveries, try again later"));
+    	}
     }
 
     /**
      * Checks if the directory is still valid, i.e. exists and is writable.
      *
+     * @param dir	the directory to check
      * @return <code>true</code> when directory is valid,<br><code>false</code> if not
      */
-    private boolean checkDirectory() {
-        return Files.isDirectory(deliveryDir) && Files.isWritable(deliveryDir);
+    private static boolean checkDirectory(final Path dir) {
+        return Files.isDirectory(dir) && Files.isWritable(dir);
     }
 }
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Provides access to the MMD documents archived by the {@link SubmissionArchiver}. An archived MMD document can be
+ * retrieved using either the message-id contained in the document or the name of the file containing the accepted
+ * MMD document (i.e. the original file name with extension <i>accepted</i>).
+ * <p>The archive directory contains a zip file (extension <i>zip</i>) for each segment and an index file (extension
+ * <i>idx</i>) with the same name. The index is a UTF-8 encoded text file with one line per archived document
+ * containing the message-id (empty when the document does not contain one) and the name of the entry in the segment,
+ * separated by a tab. The entry name is the path of the accepted MMD file relative to the directory it was archived
+ * from, with a suffix "<i>~n</i>" when the segment already contained another document with that path.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class SubmissionArchive {
+	/**
+	 * Prefix used for the segment names
+	 */
+	static final String SEGMENT_PREFIX = "accepted-";
+	/**
+	 * Extension of the segment files
+	 */
+	static final String SEGMENT_EXT = ".zip";
+	/**
+	 * Extension of the index files
+	 */
+	static final String INDEX_EXT = ".idx";
+
+	/**
+	 * The directory containing the archive segments
+	 */
+	private final Path archiveDir;
+
+	/**
+	 * Creates a new instance to access the archive in the given directory.
+	 *
+	 * @param archiveDir	the directory where the archive segments are stored
+	 */
+	public SubmissionArchive(final Path archiveDir) {
+		this.archiveDir = archiveDir;
+	}
+
+	/**
+	 * Retrieves the archived MMD document with the given message-id or file name. When there are multiple documents
+	 * that match, the one from the most recent segment is returned.
+	 *
+	 * @param id	the message-id or file name of the archived MMD document
+	 * @return	the content of the MMD document, or <code>null</code> if there is no archived document with the given
+	 * 			message-id or file name
+	 * @throws IOException	when an error occurs reading the archive
+	 */
+	public byte[] retrieve(final String id) throws IOException {
+		for (String segment : getSegments()) {
+			final String entryName = findInIndex(segment, id);
+			if (entryName != null)
+				try (ZipFile zip = new ZipFile(archiveDir.resolve(segment + SEGMENT_EXT).toFile())) {
+					final ZipEntry entry = zip.getEntry(entryName);
+					if (entry != null)
+						try (InputStream is = zip.getInputStream(entry)) {
+							return is.readAllBytes();
+						}
+				}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the names of the segments in the archive, with the most recent segment first.
+	 *
+	 * @return	list of segment names
+	 * @throws IOException	when the archive directory cannot be read
+	 */
+	public List<String> getSegments() throws IOException {
+		try (Stream<Path> files = Files.list(archiveDir)) {
+			return files.map(p -> p.getFileName().toString())
+						.filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(INDEX_EXT))
+						.map(n -> n.substring(0, n.length() - INDEX_EXT.length()))
+						.sorted(Comparator.reverseOrder())
+						.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Gets the original file name from the name of an entry, i.e. without the directory path and suffix.
+	 *
+	 * @param entryName	name of the entry
+	 * @return	the file name
+	 */
+	private static String getFileName(final String entryName) {
+		final String name = entryName.substring(entryName.lastIndexOf('/') + 1);
+		final int suffix = name.lastIndexOf('~');
+		return suffix > 0 ? name.substring(0, suffix) : name;
+	}
+
+	/**
+	 * Searches the index of the given segment for an entry with the given message-id or name.
+	 *
+	 * @param segment	name of the segment
+	 * @param id		the message-id or file name to search for
+	 * @return	the name of the entry in the segment, or <code>null</code> if not found
+	 * @throws IOException	when the index cannot be read
+	 */
+	private String findInIndex(final String segment, final String id) throws IOException {
+		try (BufferedReader index = Files.newBufferedReader(archiveDir.resolve(segment + INDEX_EXT),
+															StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = index.readLine()) != null) {
+				final int sep = line.indexOf('\t');
+				if (sep < 0)
+					continue;
+				final String entryName = line.substring(sep + 1);
+				if (id.equals(line.substring(0, sep)) || id.equals(entryName) || id.equals(getFileName(entryName)))
+					return entryName;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.holodeckb2b.common.workers.AbstractWorkerTask;
+import org.holodeckb2b.commons.util.Utils;
+import org.holodeckb2b.interfaces.core.HolodeckB2BCoreInterface;
+import org.holodeckb2b.interfaces.workerpool.TaskConfigurationException;
+
+/**
+ * This worker compacts the MMD files of accepted submissions by moving them into <i>archive segments</i>. A segment is
+ * a zip file that contains all accepted MMD files of one hour or one day, based on the last modification time of the
+ * file, which is the time the submission was accepted. For each segment an index file is maintained that links the
+ * message-id contained in the MMD document to the file in the segment. The {@link SubmissionArchive} class can be
+ * used to retrieve archived MMD documents.
+ * <p>The worker has the following parameters:<ul>
+ * <li><i>directory</i> : the directory containing the accepted MMD files, i.e. the <i>watchPath</i> or the
+ * 		<i>acceptedDirectory</i> of the {@link SubmitOperation}. Files in sub directories of this directory (as created
+ * 		when the submitter partitions the accepted files by date) are also archived. Required.</li>
+ * <li><i>archiveDirectory</i> : the directory where the archive segments are written. A relative path is resolved
+ * 		against the <i>directory</i>. Default is "<i>archive</i>".</li>
+ * <li><i>minAge</i> : the minimum age in seconds of accepted MMD files before they are archived. Default is one day.
+ * 		</li>
+ * <li><i>segmentPeriod</i> : the period covered by one segment, either "<i>hour</i>" or "<i>day</i>" (default).</li>
+ * </ul>
+ * <p>NOTE: As the message-id of a submitted message is often assigned by the Holodeck B2B Core, the MMD may not
+ * contain it. In that case the archived MMD can only be retrieved using its original file name.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ * @see SubmissionArchive
+ */
+public class SubmissionArchiver extends AbstractWorkerTask {
+	/**
+	 * Extension of the files to archive
+	 */
+	private static final String ACCEPTED_EXT = ".accepted";
+	/**
+	 * Format of the segment names for hourly segments
+	 */
+	private static final DateTimeFormatter HOUR_SEGMENTS = DateTimeFormatter.ofPattern("yyyyMMddHH");
+	/**
+	 * Format of the segment names for daily segments
+	 */
+	private static final DateTimeFormatter DAY_SEGMENTS = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	/**
+	 * Factory for the readers used to get the message-id from the MMD. DTDs and external entities are not processed
+	 * as the MMD documents come from the back-end's submission directory.
+	 */
+	private static final XMLInputFactory XML_INPUT_FACTORY;
+	static {
+		XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	/**
+	 * The directory containing the accepted MMD files
+	 */
+	protected Path directory;
+	/**
+	 * The directory where the archive segments are stored
+	 */
+	protected Path archiveDir;
+	/**
+	 * The minimum age in milliseconds of files to archive
+	 */
+	protected long minAge;
+	/**
+	 * The format used to create the segment names
+	 */
+	protected DateTimeFormatter segmentFormat;
+
+	@Override
+	public void setParameters(final Map<String, ?> parameters) throws TaskConfigurationException {
+		final String pathParameter = (String) parameters.get("directory");
+		if (Utils.isNullOrEmpty(pathParameter)) {
+			log.error("Unable to configure task: Missing required parameter \"directory\"");
+			throw new TaskConfigurationException("Missing required parameter \"directory\"");
+		}
+		directory = Paths.get(pathParameter);
+		if (!directory.isAbsolute())
+			directory = HolodeckB2BCoreInterface.getConfiguration().getHolodeckB2BHome().resolve(directory);
+		if (!Files.isDirectory(directory) || !Files.isWritable(directory)) {
+			log.error("The specified directory [" + directory + "] is not accessible to HB2B");
+			throw new TaskConfigurationException("Invalid path specified!");
+		}
+
+		final String archiveParameter = (String) parameters.get("archiveDirectory");
+		archiveDir = directory.resolve(Utils.isNullOrEmpty(archiveParameter) ? "archive" : archiveParameter)
+							  .normalize();
+		try {
+			Files.createDirectories(archiveDir);
+		} catch (IOException createFailure) {
+			log.error("Could not create the archive directory [{}] : {}", archiveDir, createFailure.getMessage());
+			throw new TaskConfigurationException("Invalid archive path specified!");
+		}
+
+		final String ageParameter = (String) parameters.get("minAge");
+		try {
+			minAge = (Utils.isNullOrEmpty(ageParameter) ? 86400 : Long.parseLong(ageParameter.trim())) * 1000;
+		} catch (NumberFormatException invalid) {
+			log.error("Unable to configure task: Invalid value for parameter \"minAge\" : {}", ageParameter);
+			throw new TaskConfigurationException("Invalid value for parameter \"minAge\"");
+		}
+
+		final String period = (String) parameters.get("segmentPeriod");
+		if (Utils.isNullOrEmpty(period) || "day".equalsIgnoreCase(period))
+			segmentFormat = DAY_SEGMENTS;
+		else if ("hour".equalsIgnoreCase(period))
+			segmentFormat = HOUR_SEGMENTS;
+		else {
+			log.error("Unable to configure task: Invalid value for parameter \"segmentPeriod\" : {}", period);
+			throw new TaskConfigurationException("Invalid value for parameter \"segmentPeriod\"");
+		}
+
+		log.info("Configured submission archiver:\n\tDirectory = {}\n\tArchive directory = {}\n\tMinimum age = {}s"
+				+ "\n\tSegment period = {}", directory, archiveDir, minAge / 1000,
+				segmentFormat == DAY_SEGMENTS ? "day" : "hour");
+	}
+
+	@Override
+	public void doProcessing() {
+		log.debug("Collecting accepted MMD files to archive from {}", directory);
+		final long maxModified = System.currentTimeMillis() - minAge;
+		final Map<String, List<Path>> segments = new TreeMap<>();
+		try (Stream<Path> files = Files.find(directory, 2, (p, attrs) -> isArchivable(p, attrs, maxModified))) {
+			files.forEach(p -> {
+				try {
+					segments.computeIfAbsent(getSegmentName(Files.getLastModifiedTime(p).toMillis()),
+											 s -> new ArrayList<>()).add(p);
+				} catch (IOException fileGone) {
+					// File was removed in the meantime, so no need to archive it
+				}
+			});
+		} catch (IOException | RuntimeException scanFailure) {
+			log.error("Could not search directory [{}] for accepted MMD files : {}", directory,
+					 Utils.getRootCause(scanFailure).getMessage());
+			return;
+		}
+
+		for (Map.Entry<String, List<Path>> segment : segments.entrySet())
+			try {
+				archive(segment.getKey(), segment.getValue());
+			} catch (IOException archiveFailure) {
+				log.error("Could not archive accepted MMD files to segment {} : {}", segment.getKey(),
+						  Utils.getRootCause(archiveFailure).getMessage());
+			}
+	}
+
+	/**
+	 * Adds the given files to the archive segment and index and removes them from the directory. The name of the entry
+	 * in the segment is the path of the file relative to the directory, so files with the same name in different sub
+	 * directories are archived separately. When the segment already contains an entry with that name but with other
+	 * content, which happens when a file name is reused after the first file was archived, a suffix "<i>~n</i>" is
+	 * added to the entry name. When the segment already contains the same content, the file was archived in a run that
+	 * failed before the file could be removed and it is only added to the index if needed. Only the files that have
+	 * been written to the segment and index are removed.
+	 *
+	 * @param segmentName	the name of the segment
+	 * @param files			the accepted MMD files to add to the segment
+	 * @throws IOException	when the files could not be added to the segment
+	 */
+	protected void archive(final String segmentName, final List<Path> files) throws IOException {
+		log.debug("Archiving {} files to segment {}", files.size(), segmentName);
+		final Path segmentPath = archiveDir.resolve(segmentName + SubmissionArchive.SEGMENT_EXT);
+		final Path indexPath = archiveDir.resolve(segmentName + SubmissionArchive.INDEX_EXT);
+		final Set<String> indexed = readIndexedEntries(indexPath);
+		final List<String> indexEntries = new ArrayList<>(files.size());
+		final List<Path> archived = new ArrayList<>(files.size());
+		try (FileSystem zip = FileSystems.newFileSystem(URI.create("jar:" + segmentPath.toUri()),
+														Collections.singletonMap("create", "true"))) {
+			for (Path f : files) {
+				final byte[] content;
+				try {
+					content = Files.readAllBytes(f);
+				} catch (NoSuchFileException fileGone) {
+					// File was removed in the meantime, so no need to archive it
+					continue;
+				}
+				final String baseName = getEntryName(f);
+				String entryName = baseName;
+				for (int n = 1; ; n++) {
+					final Path entry = zip.getPath(entryName);
+					if (!Files.exists(entry)) {
+						if (entry.getParent() != null)
+							Files.createDirectories(entry.getParent());
+						Files.write(entry, content);
+						break;
+					} else if (Arrays.equals(content, Files.readAllBytes(entry)))
+						// Archived in a run that failed before the file could be removed
+						break;
+					entryName = baseName + "~" + n;
+				}
+				if (indexed.add(entryName))
+					indexEntries.add(getMessageId(content) + "\t" + entryName);
+				archived.add(f);
+			}
+		}
+		if (!indexEntries.isEmpty())
+			Files.write(indexPath, indexEntries, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND);
+
+		for (Path f : archived)
+			try {
+				Files.deleteIfExists(f);
+			} catch (IOException deleteFailure) {
+				log.warn("Could not remove archived file ({}) : {}", f, deleteFailure.getMessage());
+			}
+		log.info("Archived {} accepted MMD files to segment {}", archived.size(), segmentName);
+	}
+
+	/**
+	 * Gets the name of the entry in the segment for the given file, i.e. its path relative to the directory.
+	 *
+	 * @param f	the path of the file
+	 * @return	the entry name, using '/' as separator
+	 */
+	private String getEntryName(final Path f) {
+		final Path relative = directory.relativize(f);
+		final StringBuilder name = new StringBuilder();
+		for (Path part : relative) {
+			if (name.length() > 0)
+				name.append('/');
+			name.append(part.toString());
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Reads the names of the entries already included in the index of a segment.
+	 *
+	 * @param indexPath	path of the index file
+	 * @return	the names of the indexed entries, empty if the index does not exist yet
+	 * @throws IOException	when the index cannot be read
+	 */
+	private static Set<String> readIndexedEntries(final Path indexPath) throws IOException {
+		final Set<String> entries = new HashSet<>();
+		if (Files.exists(indexPath))
+			for (String line : Files.readAllLines(indexPath, StandardCharsets.UTF_8)) {
+				final int sep = line.indexOf('\t');
+				if (sep >= 0)
+					entries.add(line.substring(sep + 1));
+			}
+		return entries;
+	}
+
+	/**
+	 * Checks whether the given file should be archived, i.e. whether it is an accepted MMD file that is older than the
+	 * configured minimum age and not already in the archive directory.
+	 *
+	 * @param p				the path of the file
+	 * @param attrs			the attributes of the file
+	 * @param maxModified	the last modification time a file may have to be archived
+	 * @return	<code>true</code> if the file should be archived, <code>false</code> otherwise
+	 */
+	private boolean isArchivable(final Path p, final BasicFileAttributes attrs, final long maxModified) {
+		return attrs.isRegularFile() && p.getFileName().toString().endsWith(ACCEPTED_EXT)
+				&& attrs.lastModifiedTime().toMillis() <= maxModified && !p.startsWith(archiveDir);
+	}
+
+	/**
+	 * Gets the name of the segment for the given time.
+	 *
+	 * @param time	the time in milliseconds since epoch
+	 * @return	the segment name
+	 */
+	private String getSegmentName(final long time) {
+		return SubmissionArchive.SEGMENT_PREFIX
+				+ segmentFormat.format(Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault()));
+	}
+
+	/**
+	 * Gets the message-id from the MMD document.
+	 *
+	 * @param mmd	the content of the MMD document
+	 * @return	the message-id included in the MMD or an empty string if the document does not contain one
+	 */
+	private String getMessageId(final byte[] mmd) {
+		try (InputStream is = new ByteArrayInputStream(mmd)) {
+			final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+			try {
+				while (reader.hasNext())
+					if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+						if ("MessageId".equals(reader.getLocalName()))
+							return reader.getElementText().trim();
+						else if ("PartyInfo".equals(reader.getLocalName()))
+							// MessageId must be in the MessageInfo element that precedes PartyInfo
+							break;
+					}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | XMLStreamException parseFailure) {
+			log.debug("Could not read message-id from MMD : {}", parseFailure.getMessage());
+		}
+		return "";
+	}
+}
@@ -17,18 +17,41 @@
 package org.holodeckb2b.backend.file;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+import org.holodeckb2b.backend.file.mmd.InvalidMMDException;
+import org.holodeckb2b.backend.file.mmd.MMDReader;
+import org.holodeckb2b.backend.file.mmd.MMDSchema;
 import org.holodeckb2b.backend.file.mmd.MessageMetaData;
 import org.holodeckb2b.backend.file.mmd.PartInfo;
+import org.holodeckb2b.backend.file.util.Threads;
+import org.holodeckb2b.backend.file.util.UniqueNames;
 import org.holodeckb2b.common.workers.AbstractWorkerTask;
 import org.holodeckb2b.commons.util.FileUtils;
 import org.holodeckb2b.commons.util.Utils;
@@ -47,6 +70,40 @@ import org.holodeckb2b.interfaces.workerpool.TaskConfigurationException;
  * per submission by setting the <code>//PayloadInfo/@deleteFilesAfterSubmit</code> attribute in the MMD or globally
  * by setting the _deleteFilesAfterSubmit_ parameter of the worker. If a value is supplied in the MMD it takes
  * precedence over the global value configured in the worker.
+ * <p>By default the worker polls the directory, i.e. on each run it lists the directory and processes all MMD files it
+ * finds. When the <i>useFileEvents</i> parameter is set to <i>true</i> the worker is event driven and uses a {@link
+ * WatchService} to get notified when new MMD files are created in or moved into the directory. As events can be lost
+ * the worker still scans the complete directory periodically, the interval of this <i>reconciliation scan</i> can be
+ * set using the <i>reconciliationInterval</i> parameter (in seconds, default 60). A file is processed when no new
+ * events for it have been received for <i>settleTime</i> milliseconds (default 100) to prevent that it is read while
+ * the back-end is still writing it. Note that in event driven mode each run of the worker lasts until the next
+ * reconciliation scan is due.
+ * <p>The MMD files found in a run are processed one after another unless the <i>concurrency</i> parameter is set to
+ * a value larger than 1, in which case the files are processed in parallel by a pool of threads of the given size. As
+ * each file is claimed by renaming it before processing, the results of processing (i.e. the <i>accepted</i>,
+ * <i>rejected</i> and <i>err</i> files) are the same as for sequential processing. The run ends when all files found
+ * have been processed.
+ * <p>When the <i>useVirtualThreads</i> parameter is set to <i>true</i> and the Java runtime supports virtual threads,
+ * each file is processed on a new virtual thread. The <i>concurrency</i> parameter then limits the number of files
+ * being processed at the same time. As virtual threads are cheap a much higher concurrency can be used, which is
+ * useful as processing an MMD file mostly consists of waiting for file I/O.
+ * <p>The number of MMD files processed in one run can be limited using the <i>maxFilesPerRun</i> parameter. This is
+ * useful when there is a large backlog of files as it limits the time and resources needed for one run.
+ * <p>By default the processed MMD files (and <i>err</i> files) stay in the watched directory. To keep the watched
+ * directory small they can be moved to separate directories by specifying the <i>acceptedDirectory</i> and
+ * <i>rejectedDirectory</i> parameters. Relative paths are resolved against the watched directory. When the
+ * <i>partitionByDate</i> parameter is set to <i>true</i> the processed files are stored in a sub directory of these
+ * directories named after the current date (in <i>yyyy-MM-dd</i> format).
+ * <p>The MMD documents are read using the streaming {@link MMDReader}. When the <i>useStreamingParser</i> parameter is
+ * set to <i>false</i> the Simple XML based parser of earlier versions is used instead.
+ * <p>When the <i>validateMMD</i> parameter is set to <i>true</i> the MMD documents are validated against the MMD schema
+ * while they are read by the streaming parser. Invalid documents are rejected before they are submitted to the Core
+ * and the error file only contains the validation error.
+ * <p>By default the processed files keep the name of the MMD file and existing files are checked to ensure the name is
+ * unique. When the <i>uniqueFileNames</i> parameter is set to <i>true</i> a generated unique name is appended to the
+ * name of the MMD file instead, so no existing files need to be checked. The generated names, which are also used for
+ * the temporary files, include a node id that can be set using the <i>nodeId</i> parameter. When multiple Holodeck B2B
+ * instances process the same directory each should be configured with a different node id. See {@link UniqueNames}.
  *
  * @author Sander Fieten (sander at holodeck-b2b.org)
  */
@@ -60,13 +117,87 @@ public class SubmitOperation extends AbstractWorkerTask {
      */
     protected boolean removePayloadsDefault;
     /**
-     * Random numbers are used to create unique temp file names
+     * Random numbers were used to create unique temp file names
+     *
+     * @deprecated The temp file names are now generated by {@link #uniqueNames}
      */
+    @Deprecated
     protected Random randomizer = new Random();
+    /**
+     * The generator of unique names used for the temp file names and, when enabled, the names of the processed files
+     *
+     * @since 2.1.0
+     */
+    protected UniqueNames uniqueNames = new UniqueNames();
+    /**
+     * Indicates whether the processed files should get a generated unique name instead of checking for existing files
+     *
+     * @since 2.1.0
+     */
+    protected boolean uniqueFileNames;
+    /**
+     * The watch service used to get notified of new files in the watched directory, <code>null</code> when the
+     * directory is polled
+     */
+    protected WatchService watcher;
+    /**
+     * The interval in milliseconds between two reconciliation scans of the directory when using file events
+     */
+    protected long reconciliationInterval;
+    /**
+     * The time in milliseconds that no events should be received for a new file before it is processed
+     */
+    protected long settleTime;
+    /**
+     * The new MMD files for which events were received but that are not yet processed, mapped to the time of the last
+     * received event
+     */
+    private final Map<Path, Long> pendingFiles = new HashMap<>();
+    /**
+     * The time at which the next reconciliation scan should be executed
+     */
+    private long nextReconciliation;
+    /**
+     * Indicator whether events may have been lost and the directory must be scanned
+     */
+    private boolean overflowed;
+    /**
+     * The executor used to process the MMD files in parallel, <code>null</code> when files are processed sequentially
+     */
+    protected ExecutorService submitExecutor;
+    /**
+     * Limits the number of MMD files processed at the same time when a new virtual thread is used for each file,
+     * <code>null</code> when the files are processed by a pool of platform threads or sequentially
+     */
+    protected Semaphore submitLimit;
+    /**
+     * The maximum number of MMD files to process in one run, 0 if there is no limit
+     */
+    protected long maxFilesPerRun;
+    /**
+     * The directory where the accepted MMD files are moved to, <code>null</code> if they stay in the watched directory
+     */
+    protected Path acceptedDir;
+    /**
+     * The directory where the rejected MMD files are moved to, <code>null</code> if they stay in the watched directory
+     */
+    protected Path rejectedDir;
+    /**
+     * Indicates whether the processed files should be stored in sub directories per date
+     */
+    protected boolean partitionByDate;
+    /**
+     * Indicates whether the MMD documents are read using the streaming {@link MMDReader}
+     */
+    protected boolean useStreamingParser;
+    /**
+     * Indicates whether the MMD documents should be validated against the MMD schema
+     */
+    protected boolean validateMMD;
 
     /**
-     * Initialises the worker. This worker has just one parameter, <i>watchPath</i>, which must point to the directory
-     * that contains the MMD files.
+     * Initialises the worker. The only required parameter is <i>watchPath</i>, which must point to the directory that
+     * contains the MMD files.
      */
     @Override
     public void setParameters(final Map<String, ?> parameters) throws TaskConfigurationException {
@@ -89,72 +220,413 @@ public class SubmitOperation extends AbstractWorkerTask {
 
         final String globalDelete = (String) parameters.get("deleteFilesAfterSubmit");
         removePayloadsDefault = globalDelete == null || Utils.isTrue(globalDelete);
-        log.info("Configured submitter:\n\tWatched directory = {}\n\tRemove payloads = {}", watchPath,
-        			removePayloadsDefault);
+
+        reconciliationInterval = getNumericParameter(parameters, "reconciliationInterval", 60) * 1000;
+        settleTime = getNumericParameter(parameters, "settleTime", 100);
+        maxFilesPerRun = getNumericParameter(parameters, "maxFilesPerRun", 0);
+        acceptedDir = getOutcomeDirectory(parameters, "acceptedDirectory");
+        rejectedDir = getOutcomeDirectory(parameters, "rejectedDirectory");
+        partitionByDate = Utils.isTrue((String) parameters.get("partitionByDate"));
+        final String streamingParser = (String) parameters.get("useStreamingParser");
+        useStreamingParser = streamingParser == null || Utils.isTrue(streamingParser);
+        validateMMD = Utils.isTrue((String) parameters.get("validateMMD"));
+        final String nodeId = (String) parameters.get("nodeId");
+        try {
+        	uniqueNames = new UniqueNames(nodeId);
+        } catch (IllegalArgumentException invalid) {
+        	log.error("Unable to configure task: Invalid value for parameter \"nodeId\" : {}", nodeId);
+        	throw new TaskConfigurationException("Invalid value for parameter \"nodeId\"");
+        }
+        uniqueFileNames = Utils.isTrue((String) parameters.get("uniqueFileNames"));
+        if (validateMMD && !useStreamingParser) {
+        	log.warn("Validation of MMD documents requires the streaming parser, documents will not be validated");
+        	validateMMD = false;
+        } else if (validateMMD)
+        	try {
+        		MMDSchema.getSchema();
+        	} catch (IOException schemaUnavailable) {
+        		log.error("Unable to configure task: Could not load the MMD schema : {}",
+        					Utils.getRootCause(schemaUnavailable).getMessage());
+        		throw new TaskConfigurationException("MMD schema not available for validation");
+        	}
+        stopWatching();
+        final boolean useFileEvents = Utils.isTrue((String) parameters.get("useFileEvents")) && startWatching();
+
+        if (submitExecutor != null)
+        	submitExecutor.shutdown();
+        final int concurrency = (int) Math.max(1, getNumericParameter(parameters, "concurrency", 1));
+        final boolean useVirtualThreads = Utils.isTrue((String) parameters.get("useVirtualThreads"));
+        if (useVirtualThreads && !Threads.isVirtualThreadSupported())
+        	log.warn("Virtual threads are not supported by the Java runtime, using platform threads");
+        submitExecutor = useVirtualThreads ? Threads.createVirtualThreadPerTaskExecutor("FileSubmitter") : null;
+        submitLimit = submitExecutor != null ? new Semaphore(concurrency) : null;
+        if (submitExecutor == null && concurrency > 1)
+        	submitExecutor = Executors.newFixedThreadPool(concurrency,
+        												  Threads.createThreadFactory("FileSubmitter", false));
+
+        log.info("Configured submitter:\n\tWatched directory = {}\n\tRemove payloads = {}\n\tUse file events = {}"
+        		+ "\n\tConcurrency = {}\n\tVirtual threads = {}\n\tAccepted directory = {}"
+        		+ "\n\tRejected directory = {}\n\tStreaming parser = {}\n\tValidate MMD = {}", watchPath,
+        		removePayloadsDefault, useFileEvents, concurrency,
+        		submitLimit != null,
+        		acceptedDir != null ? acceptedDir : watchPath, rejectedDir != null ? rejectedDir : watchPath,
+        		useStreamingParser, validateMMD);
+    }
+
+    /**
+     * Helper method to get the directory where processed MMD files should be moved to. When the specified directory
+     * does not exist yet, it is created.
+     *
+     * @param parameters    the worker's parameters
+     * @param name          name of the parameter that specifies the directory
+     * @return  the path of the directory, or <code>null</code> if no directory is specified
+     * @throws TaskConfigurationException when the specified directory cannot be created or is not writable
+     */
+    protected Path getOutcomeDirectory(final Map<String, ?> parameters, final String name)
+    																			throws TaskConfigurationException {
+    	final String value = (String) parameters.get(name);
+    	if (Utils.isNullOrEmpty(value))
+    		return null;
+
+    	final Path dir = Paths.get(watchPath).resolve(value).normalize();
+    	try {
+    		Files.createDirectories(dir);
+    	} catch (IOException createFailure) {
+    		log.error("Unable to configure task: Could not create directory ({}) specified by \"{}\" : {}", dir, name,
+    					createFailure.getMessage());
+    		throw new TaskConfigurationException("Invalid path specified for \"" + name + "\"");
+    	}
+    	if (!Files.isWritable(dir)) {
+    		log.error("Unable to configure task: The directory ({}) specified by \"{}\" is not writable", dir, name);
+    		throw new TaskConfigurationException("Invalid path specified for \"" + name + "\"");
+    	}
+    	return dir;
+    }
+
+    /**
+     * Helper method to get the value of a parameter that should contain a non negative number.
+     *
+     * @param parameters    the worker's parameters
+     * @param name          name of the parameter
+     * @param defaultValue  the value to use when the parameter is not specified
+     * @return  the value of the parameter
+     * @throws TaskConfigurationException when the parameter value is not a valid non negative number
+     */
+    protected long getNumericParameter(final Map<String, ?> parameters, final String name, final long defaultValue)
+    																			throws TaskConfigurationException {
+    	final String value = (String) parameters.get(name);
+    	if (Utils.isNullOrEmpty(value))
+    		return defaultValue;
+    	try {
+    		final long n = Long.parseLong(value.trim());
+    		if (n < 0)
+    			throw new NumberFormatException();
+    		return n;
+    	} catch (NumberFormatException invalid) {
+    		log.error("Unable to configure task: Invalid value for parameter \"{}\" : {}", name, value);
+    		throw new TaskConfigurationException("Invalid value for parameter \"" + name + "\"");
+    	}
     }
 
     @Override
     public void doProcessing() {
+        if (watcher == null) {
+            processMMDFiles(getMMDFiles());
+            return;
+        }
+
+        // In event driven mode the worker runs a reconciliation scan to pick up files for which no event was received
+        // and then processes the events received for the watched directory until the next scan is due
+        if (overflowed || System.currentTimeMillis() >= nextReconciliation) {
+            log.debug("Reconciling event queue with content of watched directory: " + watchPath);
+            overflowed = false;
+            pendingFiles.clear();
+            final File[] mmdFiles = getMMDFiles();
+            processMMDFiles(mmdFiles);
+            // When the maximum number of files was found, there may be more files available so scan again next run
+            overflowed = mmdFiles != null && maxFilesPerRun > 0 && mmdFiles.length >= maxFilesPerRun;
+            nextReconciliation = System.currentTimeMillis() + reconciliationInterval;
+        }
+        try {
+            waitForEvents(nextReconciliation);
+        } catch (InterruptedException interrupted) {
+            log.debug("Waiting for file events was interrupted");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the list of MMD files that are currently available in the watched directory. The directory is read using a
+     * {@link DirectoryStream} so only the entries with the <i>mmd</i> extension need to be checked to be a regular file
+     * and the memory needed does not depend on the total number of files in the directory. When a maximum number of
+     * files to process per run is configured, the scan stops when this number of MMD files has been found.
+     *
+     * @return  array of MMD files in the watched directory, <code>null</code> if the directory could not be read
+     */
+    protected File[] getMMDFiles() {
         log.debug("Get list of available MMD files from watched directory: " + watchPath);
-        final File   dir = new File(watchPath);
-        final File[] mmdFiles = dir.listFiles(new FileFilter() {
-                                        @Override
-                                        public boolean accept(final File file) {
-                                            return file.isFile() && file.getName().toLowerCase().endsWith(".mmd");
-                                        }
-                                    });
-        // A null value indicates the directory could not be read => signal as error
-        if (mmdFiles == null) {
+        final List<File> mmdFiles = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(watchPath),
+                                                                  p -> isMMDFile(p.getFileName().toString()))) {
+            for (Path p : dir) {
+                try {
+                    if (!Files.readAttributes(p, BasicFileAttributes.class).isRegularFile())
+                        continue;
+                } catch (IOException fileGone) {
+                    // The file has probably been claimed by another worker in the meantime
+                    continue;
+                }
+                mmdFiles.add(p.toFile());
+                if (maxFilesPerRun > 0 && mmdFiles.size() >= maxFilesPerRun) {
+                    log.debug("Maximum number of files to process reached");
+                    break;
+                }
+            }
+        } catch (IOException | DirectoryIteratorException scanFailure) {
+            // The directory could not be read => signal as error
             log.error("The specified directory [" + watchPath + "]could not be searched for MMD files!");
+            return null;
+        }
+
+        return mmdFiles.toArray(new File[mmdFiles.size()]);
+    }
+
+    /**
+     * Submits the messages for the given MMD files.
+     *
+     * @param mmdFiles  the MMD files to process, may be <code>null</code>
+     */
+    protected void processMMDFiles(final File[] mmdFiles) {
+        if (mmdFiles == null || mmdFiles.length == 0)
             return;
+
+        if (submitExecutor == null) {
+            for(File f : mmdFiles)
+                processMMDFile(f);
+            return;
+        }
+
+        log.debug("Processing {} MMD files in parallel", mmdFiles.length);
+        final List<Future<?>> tasks = new ArrayList<>(mmdFiles.length);
+        final Semaphore limit = submitLimit;
+        try {
+            for(File f : mmdFiles)
+                if (limit == null)
+                    tasks.add(submitExecutor.submit(() -> processMMDFile(f)));
+                else {
+                    // Only start a new virtual thread when less than the maximum number of files are being processed
+                    limit.acquire();
+                    try {
+                        tasks.add(submitExecutor.submit(() -> {
+                            try {
+                                processMMDFile(f);
+                            } finally {
+                                limit.release();
+                            }
+                        }));
+                    } catch (RuntimeException rejected) {
+                        limit.release();
+                        throw rejected;
+                    }
+                }
+            for(Future<?> t : tasks)
+                try {
+                    t.get();
+                } catch (ExecutionException processingFailure) {
+                    log.error("Unexpected error while processing MMD file : {}",
+                              Utils.getRootCause(processingFailure).getMessage());
+                }
+        } catch (InterruptedException interrupted) {
+            // Files not yet claimed are left for the next run, files already being processed will be completed
+            log.debug("Processing of MMD files was interrupted");
+            tasks.forEach(t -> t.cancel(false));
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Submits the message for the given MMD file. To prevent the file from being processed by another worker it is
+     * first renamed. When this rename fails the file is skipped as it is already processed by another worker or has
+     * been changed externally.
+     *
+     * @param f     the MMD file to process
+     */
+    protected void processMMDFile(final File f) {
+        // Get file name without the extension
+        final String  cFileName = f.getAbsolutePath();
+        final String  baseFileName = cFileName.substring(0, cFileName.toLowerCase().indexOf(".mmd"));
+        final String  tFileName = baseFileName + "_" + uniqueNames.next() + ".processing";
+        final File    tFile = new File(tFileName);
+
+        try {
+            // Directly rename file to prevent processing by another worker
+            if (!f.exists() || !f.renameTo(tFile)) {
+                // Renaming failed, so file already processed by another worker or externally
+                // changed
+                log.debug(f.getName() + " is not processed because it could not be renamed");
+                return;
+            }
+            // The file can be processed
+            log.trace("Read message meta data from " + f.getName());
+            final MessageMetaData mmd = useStreamingParser ? MMDReader.read(tFile, validateMMD)
+            											   : MessageMetaData.createFromFile(tFile);
+            log.trace("Succesfully read message meta data from " + f.getName());
+            // Convert relative paths in payload references to absolute ones to prevent file not found errors
+            convertPayloadPaths(mmd, f);
+            HolodeckB2BCoreInterface.getMessageSubmitter().submitMessage(mmd);
+            log.info("User message from " + f.getName() + " succesfully submitted to Holodeck B2B");
+            if (mmd.shouldDeleteFilesAfterSubmit() != null ? mmd.shouldDeleteFilesAfterSubmit()
+                                                           : removePayloadsDefault)
+                deletePayloadFiles(mmd);
+            // Change extension to reflect success
+            Files.move(Paths.get(tFileName), getOutcomePath(acceptedDir, baseFileName, ".accepted")
+                       , StandardCopyOption.REPLACE_EXISTING);
+        } catch (final Exception e) {
+            // Something went wrong on reading the message meta data
+            log.error("An error occured when processing message meta data from " + f.getName()
+                        + ". Details: " + Utils.getRootCause(e).getMessage());
+            // Change extension to reflect error and write error information
+            try {
+                final Path rejectFilePath = getOutcomePath(rejectedDir, baseFileName, ".rejected");
+                Files.move(Paths.get(tFileName), rejectFilePath, StandardCopyOption.REPLACE_EXISTING);
+                writeErrorFile(rejectFilePath, e);
+            } catch (IOException ex) {
+                // The directory where the file was originally found has gone. Nothing we can do about it, so ignore
+                log.error("An error occured while renaming the mmd file or writing the error info to file!");
+            }
+        }
+    }
+
+    /**
+     * Gets the path where a processed MMD file should be stored. When generated unique file names are used, the
+     * generated name is appended to the name of the MMD file and no check on existing files is needed.
+     *
+     * @param outcomeDir    the directory where the processed file should be stored, <code>null</code> if it should
+     *                      stay in the watched directory
+     * @param baseFileName  the full path of the MMD file without extension
+     * @param ext           the extension indicating the result of processing
+     * @return  the path for the processed file
+     * @throws IOException  when the directory for the processed file could not be created
+     */
+    protected Path getOutcomePath(final Path outcomeDir, final String baseFileName, final String ext)
+    																							throws IOException {
+        if (outcomeDir == null)
+            return uniqueFileNames ? Paths.get(baseFileName + "_" + uniqueNames.next() + ext)
+            					   : FileUtils.createFileWithUniqueName(baseFileName + ext);
+
+        final Path dir = partitionByDate ? outcomeDir.resolve(LocalDate.now().toString()) : outcomeDir;
+        Files.createDirectories(dir);
+        final String fileName = Paths.get(baseFileName).getFileName().toString();
+        return uniqueFileNames ? dir.resolve(fileName + "_" + uniqueNames.next() + ext)
+        					   : FileUtils.createFileWithUniqueName(dir.resolve(fileName + ext));
+    }
+
+    /**
+     * Waits for file events on the watched directory and processes the MMD files that are created in or moved into the
+     * directory. To prevent that a file is read before the back-end has finished writing it, a new MMD file is only
+     * processed after no events have been received for it during the <i>settle time</i>.
+     * <p>The method returns when the given deadline has passed or when an overflow occurred, i.e. when events may have
+     * been lost and a reconciliation scan of the directory is needed.
+     *
+     * @param deadline  the time (in ms since epoch) until which events should be processed
+     * @throws InterruptedException when the thread is interrupted while waiting for new events
+     */
+    protected void waitForEvents(final long deadline) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        while (now < deadline && !overflowed) {
+            long waitTime = deadline - now;
+            for (long lastEvent : pendingFiles.values())
+                waitTime = Math.min(waitTime, Math.max(1, lastEvent + settleTime - now));
+
+            WatchKey key = watcher.poll(waitTime, TimeUnit.MILLISECONDS);
+            while (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        log.warn("Events for the watched directory ({}) may have been lost", watchPath);
+                        overflowed = true;
+                    } else {
+                        final Path fileName = (Path) event.context();
+                        if (isMMDFile(fileName.toString()))
+                            pendingFiles.put(fileName, System.currentTimeMillis());
+                    }
+                }
+                if (!key.reset()) {
+                    log.error("The watched directory [" + watchPath + "] is no longer accessible!");
+                    overflowed = true;
+                }
+                key = watcher.poll();
+            }
+            if (overflowed)
+                return;
+
+            now = System.currentTimeMillis();
+            final List<File> readyFiles = new ArrayList<>();
+            final Iterator<Map.Entry<Path, Long>> pending = pendingFiles.entrySet().iterator();
+            while (pending.hasNext()) {
+                final Map.Entry<Path, Long> e = pending.next();
+                if (e.getValue() + settleTime <= now) {
+                    pending.remove();
+                    final File f = Paths.get(watchPath).resolve(e.getKey()).toFile();
+                    if (f.isFile())
+                        readyFiles.add(f);
+                }
+            }
+            if (!readyFiles.isEmpty()) {
+                log.debug("Received events for {} new MMD files", readyFiles.size());
+                processMMDFiles(readyFiles.toArray(new File[readyFiles.size()]));
+                now = System.currentTimeMillis();
+            }
         }
+    }
 
-        for(File f : mmdFiles) {
-            // Get file name without the extension
-            final String  cFileName = f.getAbsolutePath();
-            final String  baseFileName = cFileName.substring(0, cFileName.toLowerCase().indexOf(".mmd"));
-            final String  tFileName = baseFileName + "_" + randomizer.nextInt() + ".processing";
-            final File 	  tFile = new File(tFileName);
-
-	        try {
-	            // Directly rename file to prevent processing by another worker
-	        	if (!f.exists() || !f.renameTo(tFile)) {
-	                // Renaming failed, so file already processed by another worker or externally
-	                // changed
-	                log.debug(f.getName() + " is not processed because it could not be renamed");
-	                continue;
-	            }
-                // The file can be processed
-                log.trace("Read message meta data from " + f.getName());
-                final MessageMetaData mmd = MessageMetaData.createFromFile(new File(tFileName));
-                log.trace("Succesfully read message meta data from " + f.getName());
-                // Convert relative paths in payload references to absolute ones to prevent file not found errors
-                convertPayloadPaths(mmd, f);
-                HolodeckB2BCoreInterface.getMessageSubmitter().submitMessage(mmd);
-                log.info("User message from " + f.getName() + " succesfully submitted to Holodeck B2B");
-                if (mmd.shouldDeleteFilesAfterSubmit() != null ? mmd.shouldDeleteFilesAfterSubmit()
-                											   : removePayloadsDefault)
-                	deletePayloadFiles(mmd);
-                // Change extension to reflect success
-                Files.move(Paths.get(tFileName), FileUtils.createFileWithUniqueName(baseFileName + ".accepted")
-                           , StandardCopyOption.REPLACE_EXISTING);
-	        } catch (final Exception e) {
-	            // Something went wrong on reading the message meta data
-	            log.error("An error occured when processing message meta data from " + f.getName()
-	                        + ". Details: " + Utils.getRootCause(e).getMessage());
-	            // Change extension to reflect error and write error information
-	            try {
-	                final Path rejectFilePath = FileUtils.createFileWithUniqueName(baseFileName + ".rejected");
-	                Files.move(Paths.get(tFileName), rejectFilePath, StandardCopyOption.REPLACE_EXISTING);
-	                writeErrorFile(rejectFilePath, e);
-	            } catch (IOException ex) {
-	                // The directory where the file was originally found has gone. Nothing we can do about it, so ignore
-	                log.error("An error occured while renaming the mmd file or writing the error info to file!");
-	            }
-	        }
+    /**
+     * Starts watching the directory for new files.
+     *
+     * @return  <code>true</code> when the directory is now being watched, <code>false</code> when no watch service
+     *          could be registered for the directory
+     */
+    private boolean startWatching() {
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            Paths.get(watchPath).register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                                                   StandardWatchEventKinds.ENTRY_MODIFY);
+            pendingFiles.clear();
+            overflowed = false;
+            nextReconciliation = 0;
+            return true;
+        } catch (IOException | UnsupportedOperationException watchFailure) {
+            log.warn("Could not register watch service for directory ({}) : {}", watchPath,
+                     Utils.getRootCause(watchFailure).getMessage());
+            stopWatching();
+            return false;
+        }
+    }
+
+    /**
+     * Stops watching the directory (if it is watched).
+     */
+    private void stopWatching() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException closeFailure) {
+                log.warn("Error closing the watch service for directory ({}) : {}", watchPath,
+                         closeFailure.getMessage());
+            }
+            watcher = null;
         }
     }
 
+    /**
+     * Checks whether the given file name indicates the file is a MMD document.
+     *
+     * @param fileName  the file name to check
+     * @return  <code>true</code> if the file name has the <i>mmd</i> extension, <code>false</code> otherwise
+     */
+    private static boolean isMMDFile(final String fileName) {
+        return fileName.toLowerCase().endsWith(".mmd");
+    }
+
     /**
      * Is a helper method to convert relative payload paths to absolute ones.
      *
@@ -211,6 +683,11 @@ public class SubmitOperation extends AbstractWorkerTask {
             errorFile.write("The message could not be submitted to Holodeck B2B due to an error:\n\n");
             errorFile.write("Error type:    " + fault.getClass().getSimpleName() + "\n");
             errorFile.write("Error message: " + fault.getMessage() + "\n");
+            if (fault instanceof InvalidMMDException) {
+            	// The message already describes the problem, no need to include the stack trace
+                log.debug("Error information written to file");
+                return;
+            }
             errorFile.write("\n\nError details\n-------------\n");
             errorFile.write("Exception cause: " + (fault.getCause() != null
                                                                 ? fault.getCause().toString() : "unknown") + "\n");
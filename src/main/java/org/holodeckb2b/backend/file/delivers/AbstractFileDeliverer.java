@@ -16,26 +16,51 @@
  */
 package org.holodeckb2b.backend.file.delivers;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.holodeckb2b.backend.file.NotifyAndDeliverOperation;
-import org.holodeckb2b.backend.file.mmd.MessageMetaData;
+import org.holodeckb2b.backend.file.journal.DeliveryJournal;
+import org.holodeckb2b.backend.file.journal.DeliveryRingBuffer;
 import org.holodeckb2b.backend.file.mmd.PartInfo;
+import org.holodeckb2b.backend.file.mmd.PayloadView;
+import org.holodeckb2b.backend.file.mmd.UserMessageView;
+import org.holodeckb2b.backend.file.util.BufferPool;
+import org.holodeckb2b.backend.file.util.GroupCommitSyncer;
+import org.holodeckb2b.backend.file.util.UniqueNames;
 import org.holodeckb2b.commons.util.FileUtils;
 import org.holodeckb2b.commons.util.Utils;
 import org.holodeckb2b.interfaces.delivery.MessageDeliveryException;
+import org.holodeckb2b.interfaces.general.IPartyId;
+import org.holodeckb2b.interfaces.general.ITradingPartner;
+import org.holodeckb2b.interfaces.messagemodel.ICollaborationInfo;
+import org.holodeckb2b.interfaces.messagemodel.IErrorMessage;
 import org.holodeckb2b.interfaces.messagemodel.IMessageUnit;
 import org.holodeckb2b.interfaces.messagemodel.IPayload;
+import org.holodeckb2b.interfaces.messagemodel.IReceipt;
 import org.holodeckb2b.interfaces.messagemodel.ISignalMessage;
 import org.holodeckb2b.interfaces.messagemodel.IUserMessage;
 
@@ -44,15 +69,122 @@ import org.holodeckb2b.interfaces.messagemodel.IUserMessage;
  * the payloads of a User Message to the target directory and adapt the meta-data accordingly. The writing of the
  * message meta data file has to be implemented in the subclass. This also includes writing the meta-data of signal
  * messages to file.
+ * <p>By default the payload content is copied to the target directory. When the file containing the payload content
+ * can be resolved, the deliverer can also be configured to create a hard link to the file or to move it to the target
+ * directory, see {@link PayloadTransferMode}. As the Holodeck B2B interfaces only provide the payload content as a
+ * stream, the file is only known when the payload is a {@link PartInfo} with a content location. This means that payloads
+ * received by the Holodeck B2B Core are always copied, which is logged as warning the first time it happens. Subclasses
+ * can override {@link #getPayloadFile(IPayload)} to resolve the file in other cases.
+ * <p>The payloads of a message are written one after another, unless an executor for writing the payloads is set
+ * using {@link #setPayloadWriteExecutor(ExecutorService)}. In that case they are written concurrently. The meta-data
+ * file is only written when all payloads have been written and if one of the payloads cannot be written, all payload
+ * files of the message are removed.
+ * <p>By default the written files are not explicitly forced to disk, so after a power loss a meta-data file may
+ * reference payload files that were not persisted. To prevent this a {@link GroupCommitSyncer} can be set that is used
+ * to sync the payload files, the meta-data file and the directory before the meta-data file gets its final name.
+ * <p>The files can be spread over sub directories of the target directory by setting a {@link DirectoryLayout}. The
+ * sub directory is determined once per message unit, see {@link #getTargetDirectory(IMessageUnit)}.
+ * <p>To let multiple back-end consumers process the delivered files without coordination, the deliveries can be
+ * partitioned into a number of <i>lanes</i>, each a sub directory of the target directory named <code>lane-«n»</code>.
+ * The lane of a message unit is selected by the hash of a {@link LaneKey}, so all message units with the same key are
+ * delivered to the same lane. The directory layout is applied within each lane.
+ * <p>By default the names of the delivered files are based on the message id and a unique name is ensured by checking
+ * for existing files. When a {@link UniqueNames} generator is set, the generated names are used instead and the files
+ * are created without checking for existing files, see {@link #createFile(Path, String)}.
  *
  * @author Sander Fieten (sander at holodeck-b2b.org)
  */
 public abstract class AbstractFileDeliverer {
+	/**
+	 * Enumerates the ways the payload content can be transferred to the target directory.
+	 *
+	 * @since 2.1.0
+	 */
+	public enum PayloadTransferMode {
+		/**
+		 * The payload content is copied
+		 */
+		COPY,
+		/**
+		 * A hard link to the file containing the payload content is created. Falls back to copying when the file is
+		 * not known or on another file system.
+		 */
+		LINK,
+		/**
+		 * The file containing the payload content is atomically moved. Falls back to copying when the file is not known
+		 * or on another file system. Should only be used when the file is not needed anymore after delivery.
+		 */
+		MOVE
+	}
+
+	/**
+	 * Enumerates the layouts of the target directory, i.e. how the delivered files are spread over sub directories of
+	 * the target directory. All files of a message unit are written to the same directory, so the payload locations
+	 * included in the meta-data remain relative to the meta-data file.
+	 *
+	 * @since 2.1.0
+	 */
+	public enum DirectoryLayout {
+		/**
+		 * All files are written to the target directory itself
+		 */
+		FLAT,
+		/**
+		 * The files are written to a sub directory for the day of delivery, <code>«yyyy»/«MM»/«dd»</code>
+		 */
+		DAY,
+		/**
+		 * The files are written to a sub directory for the hour of delivery, <code>«yyyy»/«MM»/«dd»/«HH»</code>
+		 */
+		HOUR,
+		/**
+		 * The files are written to one of 65536 sub directories, <code>«xx»/«xx»</code>, selected by the hash of the
+		 * message id
+		 */
+		HASH
+	}
+
+	/**
+	 * Enumerates the keys that can be used to select the lane a message unit is delivered to. As Signal Messages
+	 * don't contain the conversation id or sender, they are always partitioned by the message id they reference, or
+	 * their own message id if they don't reference a message.
+	 *
+	 * @since 2.1.0
+	 */
+	public enum LaneKey {
+		/**
+		 * The conversation id of the User Message
+		 */
+		CONVERSATION,
+		/**
+		 * The PartyId of the Sender of the User Message. If the Sender has multiple PartyIds, the lowest one is used.
+		 */
+		SENDER,
+		/**
+		 * The message id of the User Message
+		 */
+		MESSAGE
+	}
+
 	/**
 	 * Extension to use when writing the files to disk. This extension is used to prevent the back-end from picking up
 	 * files that are still being written.
 	 */
 	protected static final String TMP_EXTENSION = ".processing";
+	/**
+	 * The number of bytes from the start of the payload content used to detect its MIME type. This is the maximum
+	 * length used by the MIME type detection and the size of the pooled buffers.
+	 */
+	private static final int MIME_DETECTION_LENGTH = BufferPool.BUFFER_SIZE;
+	/**
+	 * The format of the sub directory name for the {@link DirectoryLayout#DAY} layout
+	 */
+	private static final DateTimeFormatter DAY_DIR_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+	/**
+	 * The format of the sub directory name for the {@link DirectoryLayout#HOUR} layout
+	 */
+	private static final DateTimeFormatter HOUR_DIR_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd/HH");
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
 
 	/**
 	 * Logger.
@@ -64,6 +196,59 @@ public abstract class AbstractFileDeliverer {
      */
     protected Path  directory = null;
 
+    /**
+     * How the payload content should be transferred to the target directory
+     */
+    protected PayloadTransferMode	payloadTransferMode = PayloadTransferMode.COPY;
+
+    /**
+     * The executor used to write the payloads of a message concurrently, <code>null</code> if the payloads should be
+     * written one after another
+     */
+    protected ExecutorService	payloadWriteExecutor;
+
+    /**
+     * The syncer used to force the delivered files to disk, <code>null</code> if files should not be synced
+     */
+    protected GroupCommitSyncer	syncer;
+
+    /**
+     * How the files are spread over sub directories of the target directory
+     */
+    protected DirectoryLayout	directoryLayout = DirectoryLayout.FLAT;
+
+    /**
+     * The generator of the file names, <code>null</code> if the file names should be based on the message id
+     */
+    protected UniqueNames	uniqueNames;
+
+    /**
+     * The number of lanes the deliveries are partitioned into, 1 if the deliveries should not be partitioned
+     */
+    protected int	lanes = 1;
+
+    /**
+     * The key used to select the lane of a message unit
+     */
+    protected LaneKey	laneKey = LaneKey.CONVERSATION;
+
+    /**
+     * The journal to record the delivered message units in, <code>null</code> if deliveries should not be recorded
+     */
+    protected DeliveryJournal	journal;
+
+    /**
+     * The ring buffer to notify co-located back-ends of the delivered message units, <code>null</code> if no
+     * notifications should be written
+     */
+    protected DeliveryRingBuffer	ringBuffer;
+
+    /**
+     * Indicates whether it has already been reported that a payload is copied because its file is not known, so this
+     * is only logged as warning once
+     */
+    private final AtomicBoolean	unknownFileReported = new AtomicBoolean();
+
     /**
      * Constructs a new deliverer which will write the files to the given directory.
      *
@@ -73,6 +258,107 @@ public abstract class AbstractFileDeliverer {
         this.directory = dir;
     }
 
+    /**
+     * Gets the directory the files are written to.
+     *
+     * @return	the target directory
+     * @since 2.1.0
+     */
+    public Path getDirectory() {
+    	return directory;
+    }
+
+    /**
+     * Sets how the payload content should be transferred to the target directory.
+     *
+     * @param mode	the transfer mode to use
+     * @since 2.1.0
+     */
+    public void setPayloadTransferMode(final PayloadTransferMode mode) {
+    	this.payloadTransferMode = mode != null ? mode : PayloadTransferMode.COPY;
+    }
+
+    /**
+     * Sets the executor to use for writing the payloads of a message concurrently. When not set, the payloads are
+     * written one after another.
+     *
+     * @param executor	the executor to use, <code>null</code> to write the payloads one after another
+     * @since 2.1.0
+     */
+    public void setPayloadWriteExecutor(final ExecutorService executor) {
+    	this.payloadWriteExecutor = executor;
+    }
+
+    /**
+     * Sets the syncer to use for forcing the delivered files to disk. When set, each payload file is synced by the
+     * thread writing it, the meta-data file and the directory entries are synced before the meta-data file gets its
+     * final name, and the directory is synced again after the rename.
+     *
+     * @param syncer	the syncer to use, <code>null</code> if files should not be synced
+     * @since 2.1.0
+     */
+    public void setSyncer(final GroupCommitSyncer syncer) {
+    	this.syncer = syncer;
+    }
+
+    /**
+     * Sets how the delivered files should be spread over sub directories of the target directory.
+     *
+     * @param layout	the directory layout to use
+     * @since 2.1.0
+     */
+    public void setDirectoryLayout(final DirectoryLayout layout) {
+    	this.directoryLayout = layout != null ? layout : DirectoryLayout.FLAT;
+    }
+
+    /**
+     * Sets the generator to use for the names of the delivered files. When not set, the names of the files are based
+     * on the message id.
+     *
+     * @param names		the generator to use, <code>null</code> to base the file names on the message id
+     * @since 2.1.0
+     */
+    public void setUniqueNames(final UniqueNames names) {
+    	this.uniqueNames = names;
+    }
+
+    /**
+     * Sets the number of lanes the deliveries should be partitioned into and the key to select the lane of a message
+     * unit.
+     *
+     * @param count		the number of lanes, 1 if the deliveries should not be partitioned
+     * @param key		the key to select the lane of a message unit
+     * @since 2.1.0
+     */
+    public void setLanes(final int count, final LaneKey key) {
+    	if (count < 1)
+    		throw new IllegalArgumentException("Number of lanes must be at least 1");
+    	this.lanes = count;
+    	this.laneKey = key != null ? key : LaneKey.CONVERSATION;
+    }
+
+    /**
+     * Sets the journal to record the delivered message units in. When set, a record is appended to the journal after
+     * the files of a message unit have got their final names.
+     *
+     * @param journal	the journal to use, <code>null</code> if deliveries should not be recorded
+     * @since 2.1.0
+     */
+    public void setJournal(final DeliveryJournal journal) {
+    	this.journal = journal;
+    }
+
+    /**
+     * Sets the ring buffer to notify back-ends running on the same host of the delivered message units. When set, an
+     * entry is written to the ring buffer after the delivery has been recorded in the journal, if any.
+     *
+     * @param ringBuffer	the ring buffer to use, <code>null</code> if no notifications should be written
+     * @since 2.1.0
+     */
+    public void setRingBuffer(final DeliveryRingBuffer ringBuffer) {
+    	this.ringBuffer = ringBuffer;
+    }
+
     public void deliver(final IMessageUnit rcvdMsgUnit) throws MessageDeliveryException {
         if (rcvdMsgUnit instanceof IUserMessage)
             deliverUserMessage((IUserMessage) rcvdMsgUnit);
@@ -90,23 +376,23 @@ public abstract class AbstractFileDeliverer {
     protected void deliverUserMessage(final IUserMessage usrMsgUnit) throws MessageDeliveryException {
         log.debug("Delivering user message with msgId=" + usrMsgUnit.getMessageId());
 
-        // We first convert the user message into a MMD document so info can be edited
-        final MessageMetaData mmd = new MessageMetaData(usrMsgUnit);
-        final Collection<PartInfo>    copiedPLs = new ArrayList<>();
+        // Use a view of the user message so the payload locations can be set without copying all meta-data
+        final UserMessageView mmd = new UserMessageView(usrMsgUnit);
+        // The saved payloads with, if the payload file was moved, its original location
+        final Map<PayloadView, Path>    copiedPLs = Collections.synchronizedMap(new HashMap<>());
+        Path targetDir = directory;
+        final String outFile;
         try {
+        	// All files of the message are written to the same directory, so it is determined only once
+        	targetDir = getTargetDirectory(usrMsgUnit);
 	        if (!Utils.isNullOrEmpty(mmd.getPayloads()) && payloadsAsFile()) {
 	        	log.debug("Write all payloads to delivery directory");
-	            for(final PartInfo p : mmd.getPayloads()) {
-	                final Path newPath = savePayload(p, mmd.getMessageId());
-	                if (newPath != null)
-	                	p.setContentLocation(newPath.toString());
-	                copiedPLs.add(p);
-	            }
+	        	savePayloads(mmd, targetDir, copiedPLs);
 	            log.trace("Copied all payload files");
 	        }
 
             log.trace("Write message meta data to file");
-            final String outFile = writeUserMessageInfoToFile(mmd);
+            outFile = writeUserMessageInfoToFile(mmd, targetDir);
             log.debug("User message [msgID={}] delivered to {}", mmd.getMessageId(), outFile);
         } catch (final IOException ex) {
             log.error("An error occurred while delivering the user message [{}]\n\tError details: {}",
@@ -115,26 +401,42 @@ public abstract class AbstractFileDeliverer {
             // may already been copied and should be deleted
             if (!copiedPLs.isEmpty()) {
                 log.trace("Remove already copied payload files from delivery directory");
-                for(final PartInfo p : copiedPLs)
+                for(final Map.Entry<PayloadView, Path> pl : copiedPLs.entrySet()) {
+                	final Path location = pl.getKey().getContentFile();
                 	try {
-                		Files.deleteIfExists(Paths.get(p.getContentLocation()));
+                		if (pl.getValue() != null)
+                			// The payload file was moved, so move it back
+                			Files.move(location, pl.getValue(), StandardCopyOption.ATOMIC_MOVE);
+                		else
+                			Files.deleteIfExists(location);
 	                } catch (IOException io) {
-	                    log.error("Could not remove temp file [" + p.getContentLocation() + "]! Remove manually.");
+	                    log.error("Could not remove temp file [" + location + "]! Remove manually.");
 	                }
+                }
             }
             // And signal failure
             throw new MessageDeliveryException("Error trying to deliver user message to file", ex);
         }
+
+        if (journal != null || ringBuffer != null) {
+        	final List<String> plFiles = new ArrayList<>();
+        	if (payloadsAsFile() && !Utils.isNullOrEmpty(mmd.getPayloads()))
+        		for (final PayloadView p : mmd.getPayloads())
+        			if (p.getContentFile() != null)
+        				plFiles.add(p.getContentFile().toString());
+        	recordDelivery(usrMsgUnit, outFile, plFiles);
+        }
     }
 
     /**
      * Writes the user message data to a file.
      *
-     * @param mmd           The user message unit meta data.
+     * @param mmd           The user message unit meta data, including the locations of the saved payloads.
+     * @param targetDir     The directory to write the file to, also containing the saved payloads
      * @return Path of the file that contains the message (meta-)data
      * @throws IOException  When the information could not be written to disk.
      */
-    protected abstract String writeUserMessageInfoToFile(MessageMetaData mmd) throws IOException;
+    protected abstract String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException;
 
     /**
      * Indicates whether the payloads included with the user message should be copied to the delivery directory.
@@ -152,10 +454,167 @@ public abstract class AbstractFileDeliverer {
      */
     protected abstract void deliverSignalMessage(ISignalMessage sigMsgUnit) throws MessageDeliveryException;
 
+    /**
+     * Records the delivery of the message unit in the journal and notifies co-located back-ends using the ring buffer,
+     * if these are set. As the files of the message unit have already been delivered when this method is called, they
+     * are not removed when the record cannot be appended to the journal. The delivery is however reported as failed, so
+     * it will be retried and the message unit is not missed by back-end systems reading the journal. These should
+     * therefore be able to handle a message unit being delivered twice.
+     *
+     * @param msgUnit		the delivered message unit
+     * @param metaDataFile	path of the delivered meta-data file
+     * @param payloadFiles	paths of the delivered payload files, empty if the payloads were not delivered as files
+     * @throws MessageDeliveryException	when the record could not be appended to the journal
+     * @since 2.1.0
+     */
+    protected void recordDelivery(final IMessageUnit msgUnit, final String metaDataFile,
+    							  final List<String> payloadFiles) throws MessageDeliveryException {
+    	if (journal == null && ringBuffer == null)
+    		return;
+    	final String type = msgUnit instanceof IUserMessage ? "UserMessage"
+    						: msgUnit instanceof IReceipt ? "Receipt"
+    						: msgUnit instanceof IErrorMessage ? "Error" : "Signal";
+    	if (journal != null)
+	    	try {
+	    		journal.append(type, msgUnit.getMessageId(), metaDataFile, payloadFiles);
+	    		if (syncer != null)
+	    			syncer.sync(Collections.singletonList(journal.getActiveSegment()), null);
+	    	} catch (IOException journalFailure) {
+	    		log.error("Could not record delivery of message unit [{}] in journal : {}", msgUnit.getMessageId(),
+	    					journalFailure.getMessage());
+	    		throw new MessageDeliveryException("Could not record delivery in journal", journalFailure);
+	    	}
+    	if (ringBuffer != null)
+    		ringBuffer.publish(type, msgUnit.getMessageId(), metaDataFile);
+    }
+
+    /**
+     * Gets the directory to which the files of the message unit should be written, according to the configured lanes
+     * and {@link DirectoryLayout}. The directory is created if it does not exist yet and, when a syncer is set, the
+     * entries of the newly created directories are synced to disk.
+     *
+     * @param msgUnit	the message unit being delivered
+     * @return	the directory to write the files of the message unit to
+     * @throws IOException	when the directory could not be created
+     * @since 2.1.0
+     */
+    protected Path getTargetDirectory(final IMessageUnit msgUnit) throws IOException {
+    	Path targetDir = lanes > 1 ? directory.resolve("lane-" + getLane(msgUnit)) : directory;
+    	switch (directoryLayout) {
+    	case DAY :
+    		targetDir = targetDir.resolve(DAY_DIR_FORMAT.format(LocalDateTime.now()));
+    		break;
+    	case HOUR :
+    		targetDir = targetDir.resolve(HOUR_DIR_FORMAT.format(LocalDateTime.now()));
+    		break;
+    	case HASH :
+    		targetDir = targetDir.resolve(hashDirectory(msgUnit.getMessageId()));
+    		break;
+    	default :
+    		break;
+    	}
+    	if (targetDir == directory || Files.isDirectory(targetDir))
+    		return targetDir;
+
+    	// Find the first level that doesn't exist yet, so the new directory entries can be synced
+    	Path firstNew = targetDir;
+    	while (!directory.equals(firstNew.getParent()) && !Files.isDirectory(firstNew.getParent()))
+    		firstNew = firstNew.getParent();
+    	Files.createDirectories(targetDir);
+    	if (syncer != null)
+    		for (Path d = targetDir; d != null && !d.equals(firstNew.getParent()); d = d.getParent())
+    			syncer.sync(Collections.emptyList(), d.getParent());
+    	return targetDir;
+    }
+
+    /**
+     * Gets the lane the message unit should be delivered to, based on the hash of the configured {@link LaneKey}. When
+     * the key is not available in the message unit, its message id is used.
+     *
+     * @param msgUnit	the message unit being delivered
+     * @return	the lane, between 0 and the number of lanes
+     * @since 2.1.0
+     */
+    protected int getLane(final IMessageUnit msgUnit) {
+    	String key = null;
+    	if (msgUnit instanceof ISignalMessage)
+    		key = msgUnit.getRefToMessageId();
+    	else if (laneKey == LaneKey.CONVERSATION) {
+    		final ICollaborationInfo collabInfo = ((IUserMessage) msgUnit).getCollaborationInfo();
+    		key = collabInfo != null ? collabInfo.getConversationId() : null;
+    	} else if (laneKey == LaneKey.SENDER) {
+    		final ITradingPartner sender = ((IUserMessage) msgUnit).getSender();
+    		if (sender != null && !Utils.isNullOrEmpty(sender.getPartyIds()))
+    			for (final IPartyId pid : sender.getPartyIds()) {
+    				final String id = Utils.isNullOrEmpty(pid.getType()) ? pid.getId()
+    																	  : pid.getType() + ':' + pid.getId();
+    				if (key == null || id.compareTo(key) < 0)
+    					key = id;
+    			}
+    	}
+    	return Math.floorMod(hash(Utils.isNullOrEmpty(key) ? msgUnit.getMessageId() : key), lanes);
+    }
+
+    /**
+     * Calculates the hash of a key used to select a lane or sub directory. As the hash code of a string is specified
+     * by the Java language the same key always results in the same hash, also in other JVMs.
+     *
+     * @param key	the key
+     * @return	the hash of the key
+     */
+    private static int hash(final String key) {
+    	final int h = key.hashCode();
+    	// Mix in the high bits, as the low bits of the hash code of similar keys are often the same
+    	return h ^ (h >>> 16);
+    }
+
+    /**
+     * Helper method to get the name of the sub directory for the {@link DirectoryLayout#HASH} layout.
+     *
+     * @param msgId		the message id
+     * @return	the relative path of the sub directory, <code>«xx»/«xx»</code>
+     */
+    static String hashDirectory(final String msgId) {
+    	final int m = hash(msgId);
+    	return new String(new char[] { HEX_DIGITS[(m >>> 12) & 0xf], HEX_DIGITS[(m >>> 8) & 0xf], '/',
+    								   HEX_DIGITS[(m >>> 4) & 0xf], HEX_DIGITS[m & 0xf] });
+    }
+
+    /**
+     * Gets the part of the file name that identifies the message unit. This is the message id, unless a {@link
+     * UniqueNames} generator is set in which case a new unique name is generated.
+     *
+     * @param msgId		the message id of the message unit
+     * @return	the name to use in the file name
+     * @since 2.1.0
+     */
+    protected String getFileName(final String msgId) {
+    	return uniqueNames != null ? uniqueNames.next() : msgId;
+    }
+
+    /**
+     * Creates a new file with the given name in the target directory. When the file name is based on the message id
+     * it is first sanitised and a unique name is ensured by checking for existing files. When a {@link UniqueNames}
+     * generator is set the name is already unique and the file is created directly.
+     *
+     * @param targetDir	the directory to create the file in
+     * @param fileName	the name of the file
+     * @return	the path of the created file
+     * @throws IOException	when the file could not be created
+     * @since 2.1.0
+     */
+    protected Path createFile(final Path targetDir, final String fileName) throws IOException {
+    	if (uniqueNames != null)
+    		return Files.createFile(targetDir.resolve(fileName));
+    	else
+    		return FileUtils.createFileWithUniqueName(targetDir.resolve(FileUtils.sanitizeFileName(fileName)));
+    }
+
     /**
      * Helper method that will change the temporary "processing" extension into the final "xml" extension. As there
      * could already exist a file with the same name and "xml" extension the method calls {@link
-     * Utils#createFileWithUniqueName(String)} to ensure that the xml file can be written.
+     * Utils#createFileWithUniqueName(String)} to ensure that the xml file can be written, unless the file name was
+     * generated by the {@link UniqueNames} generator.
      *
      * @param tmpFilePath	the path to the temp file
      * @return				the path to the xml file
@@ -165,19 +624,122 @@ public abstract class AbstractFileDeliverer {
     	String filename = tmpFilePath.toString();
     	filename = filename.substring(0, filename.lastIndexOf(TMP_EXTENSION)) + ".xml";
 
-    	return Files.move(tmpFilePath, FileUtils.createFileWithUniqueName(filename), StandardCopyOption.REPLACE_EXISTING)
-    				.toString();
+    	if (syncer != null)
+    		// Make sure the file and the entries of the payload files are durable before the file gets its final name
+    		syncer.sync(Collections.singletonList(tmpFilePath), tmpFilePath.getParent());
+    	final Path xmlFilePath = Files.move(tmpFilePath, uniqueNames != null ? Paths.get(filename)
+    													: FileUtils.createFileWithUniqueName(filename),
+    										StandardCopyOption.REPLACE_EXISTING);
+    	if (syncer != null)
+    		syncer.sync(Collections.emptyList(), xmlFilePath.getParent());
+    	return xmlFilePath.toString();
+    }
+
+    /**
+     * Helper method to save the payloads of the user message to the <i>delivery directory</i>. When an executor for
+     * writing payloads is set and the message contains more than one payload, the payloads are written concurrently.
+     * This method only returns when all payloads have been processed, also when saving one of them failed, so all
+     * saved payloads are registered and can be removed.
+     *
+     * @param mmd			the meta-data of the user message
+     * @param targetDir		the directory to save the payloads to
+     * @param copiedPLs		the map to register the saved payloads in
+     * @throws IOException	when one of the payloads could not be saved
+     */
+    private void savePayloads(final UserMessageView mmd, final Path targetDir,
+    						  final Map<PayloadView, Path> copiedPLs) throws IOException {
+    	final Collection<PayloadView> payloads = mmd.getPayloads();
+    	if (payloadWriteExecutor == null || payloads.size() == 1) {
+    		for(final PayloadView p : payloads)
+    			savePayload(p, mmd.getMessageId(), targetDir, copiedPLs);
+    		return;
+    	}
+
+    	log.trace("Write {} payloads concurrently", payloads.size());
+    	final List<Future<?>> writes = new ArrayList<>(payloads.size());
+    	for(final PayloadView p : payloads)
+    		writes.add(payloadWriteExecutor.submit(() -> {
+    			savePayload(p, mmd.getMessageId(), targetDir, copiedPLs);
+    			return null;
+    		}));
+
+    	IOException failure = null;
+    	boolean interrupted = false;
+    	for(final Future<?> w : writes) {
+    		// Wait for all writes to finish, so no payload file is created after the clean up
+    		boolean done = false;
+    		while (!done)
+    			try {
+    				w.get();
+    				done = true;
+    			} catch (InterruptedException interrupt) {
+    				interrupted = true;
+    			} catch (ExecutionException writeFailure) {
+    				if (failure == null)
+    					failure = writeFailure.getCause() instanceof IOException ? (IOException) writeFailure.getCause()
+    										: new IOException("Error writing payload", writeFailure.getCause());
+    				done = true;
+    			}
+    	}
+    	if (interrupted) {
+    		Thread.currentThread().interrupt();
+    		if (failure == null)
+    			failure = new InterruptedIOException("Interrupted while writing payloads");
+    	}
+    	if (failure != null)
+    		throw failure;
+    }
+
+    /**
+     * Helper method to save the payload to the <i>delivery directory</i>, update its location and register it as
+     * saved.
+     *
+     * @param p				the payload to save
+     * @param msgId			the message-id of the message that contains the payload
+     * @param targetDir		the directory to save the payload to
+     * @param copiedPLs		the map to register the saved payload in
+     * @throws IOException	when the payload could not be saved
+     */
+    private void savePayload(final PayloadView p, final String msgId, final Path targetDir,
+    						 final Map<PayloadView, Path> copiedPLs) throws IOException {
+    	final Path srcFile = payloadTransferMode == PayloadTransferMode.MOVE ? getPayloadFile(p.getSource()) : null;
+    	final Path newPath = savePayload(p, msgId, targetDir);
+    	if (newPath != null) {
+    		// The location in the meta-data is relative to the directory of the message
+    		p.setContentLocation(newPath.toString(), targetDir.resolve(newPath).toAbsolutePath());
+    		copiedPLs.put(p, srcFile != null && !Files.exists(srcFile) ? srcFile : null);
+    	}
+    }
+
+    /**
+     * Gets the file that contains the content of the given payload, which is needed to link or move the payload file
+     * to the target directory.
+     *
+     * @param p		the payload as provided by the Holodeck B2B Core
+     * @return		path of the file containing the payload content, or <code>null</code> if not known
+     * @since 2.1.0
+     */
+    protected Path getPayloadFile(final IPayload p) {
+    	return p instanceof PartInfo ? ((PartInfo) p).getContentFile() : null;
     }
 
     /**
-     * Helper method to save the payload content to <i>delivery directory</i>.
+     * Helper method to save the payload content to <i>delivery directory</i>. Depending on the configured {@link
+     * PayloadTransferMode} and whether the file containing the payload content is known, the file is linked or moved
+     * to the delivery directory. Otherwise the content is copied. When the payload content is read from a file, the
+     * data is transferred directly between the files by the operating system without being copied into the JVM's
+     * memory.
+     * <p>The content is read only once. If the MIME type of the payload is not specified, it is detected from the
+     * first part of the content before that is written. The content is written to a temporary file which is renamed
+     * to its final name, including the extension for the MIME type, when all data is written.
      *
      * @param p         The payload for which the content must be copied
      * @param msgId     The message-id of the message that contains the payload, used for name the file
-     * @return          The path where the payload content is now stored
+     * @param targetDir The directory to save the payload to
+     * @return          The path where the payload content is now stored, relative to the target directory
      * @throws IOException  When the payload content could not be copied to the <i>delivery directory</i>
      */
-    private Path savePayload(final IPayload p, final String msgId) throws IOException {
+    private Path savePayload(final PayloadView p, final String msgId, final Path targetDir) throws IOException {
         // If payload was external to message, it is not processed by Holodeck B2B, so no content to move
         if (IPayload.Containment.EXTERNAL == p.getContainment())
             return null;
@@ -190,37 +752,187 @@ public abstract class AbstractFileDeliverer {
         if (plRef.indexOf("@") > 0)
             plRef = plRef.substring(0, plRef.indexOf("@"));
 
-        // Try to set nice extension based on MIME Type of payload
+        // With generated names the name is already unique, so the reference is not needed
+        final String baseName = "pl-" + (uniqueNames != null ? uniqueNames.next() : msgId + "-" + plRef);
+
         String mimeType = p.getMimeType();
-        if (Utils.isNullOrEmpty(mimeType)) {
-            // No MIME type given in message, try to detect from content
-            try (InputStream cis = p.getContent()) {
-            	mimeType = FileUtils.detectMimeType(cis);
-            } catch (final IOException ex) { mimeType = null; } // Unable to detect the MIME Type
+        if (payloadTransferMode != PayloadTransferMode.COPY) {
+        	final Path srcFile = getPayloadFile(p.getSource());
+        	if (srcFile != null) {
+        		if (Utils.isNullOrEmpty(mimeType)) {
+        			final byte[] buf = BufferPool.getByteBuffer();
+        			try (InputStream cis = Files.newInputStream(srcFile)) {
+        				mimeType = detectMimeType(buf, readFully(cis, buf));
+        			} finally {
+        				BufferPool.release(buf);
+        			}
+        		}
+        		final Path targetPath = createPayloadFile(targetDir, baseName, mimeType);
+        		if (linkOrMove(srcFile, targetPath)) {
+        			if (syncer != null)
+        				GroupCommitSyncer.syncFile(targetPath);
+        			return targetPath.getFileName();
+        		}
+        		// Could not link or move the file, so copy the content to a new file
+        		Files.deleteIfExists(targetPath);
+        	} else if (unknownFileReported.compareAndSet(false, true))
+        		log.warn("File of payload ({}) is not known, so it is copied although payload transfer mode {} is"
+        				+ " configured. Payloads received by the Holodeck B2B Core are always copied, as the Core only"
+        				+ " provides their content as a stream.", p.getPayloadURI(),
+        				payloadTransferMode.name().toLowerCase());
+        	else
+        		log.debug("File of payload ({}) is not known, copying content", p.getPayloadURI());
         }
-        final String ext = FileUtils.getExtension(mimeType);
 
-        final Path targetPath = FileUtils.createFileWithUniqueName(directory.resolve(
-        										FileUtils.sanitizeFileName("pl-" + msgId + "-" + plRef
-        																				 + (ext != null ? ext : ""))));
-        try (InputStream cis = p.getContent(); FileOutputStream fos = new FileOutputStream(targetPath.toFile())) {
+        // The content is first written to a temp file as the final name depends on the MIME type which may need to
+        // be detected from the content
+        final Path tmpPath = createFile(targetDir, baseName + TMP_EXTENSION);
+        final byte[] buf = BufferPool.getByteBuffer();
+        try (InputStream cis = p.getContent(); FileOutputStream fos = new FileOutputStream(tmpPath.toFile())) {
         	log.trace("Saving payload ({}) data to file", p.getPayloadURI());
-        	Utils.copyStream(cis, fos);
+        	if (Utils.isNullOrEmpty(mimeType)) {
+        		// No MIME type given in message, detect it from the first part of the content before writing it
+        		final int n = readFully(cis, buf);
+        		mimeType = detectMimeType(buf, n);
+        		fos.write(buf, 0, n);
+        	}
+        	if (cis instanceof FileInputStream)
+        		transfer(((FileInputStream) cis).getChannel(), fos.getChannel());
+        	else
+        		for (int n = cis.read(buf); n >= 0; n = cis.read(buf))
+        			fos.write(buf, 0, n);
+        	if (syncer != null)
+        		// Sync while the file is still open, the directory entry is synced with the meta-data file
+        		fos.getChannel().force(true);
         	log.debug("Saved payload ({}) data to file", p.getPayloadURI());
         } catch (final IOException ex) {
-        	log.error("Error writing payload ({}) content to file {} : {}", p.getPayloadURI(), targetPath.toString(),
+        	log.error("Error writing payload ({}) content to file {} : {}", p.getPayloadURI(), tmpPath.toString(),
         				ex.getMessage());
             // Could not write payload data to file -> delivery not possible
             // Try to remove the already created file
-            try {
-                Files.deleteIfExists(targetPath);
-            } catch (IOException io) {
-                log.error("Could not remove temp file [" + targetPath.toString() + "]! Remove manually.");
-            }
+            removeTempFile(tmpPath);
             throw new IOException("Unable to deliver message because payload [" + p.getPayloadURI()
             						+ "] could not be saved to file!", ex);
+        } finally {
+        	BufferPool.release(buf);
         }
 
-        return targetPath.getFileName();
+        // Now rename the file so it gets the nice extension based on the MIME type of the payload
+        try {
+        	final Path targetPath = Files.move(tmpPath, createPayloadFile(targetDir, baseName, mimeType),
+        									   StandardCopyOption.ATOMIC_MOVE);
+        	return targetPath.getFileName();
+        } catch (final IOException ex) {
+        	log.error("Error renaming payload ({}) file {} : {}", p.getPayloadURI(), tmpPath.toString(),
+        				ex.getMessage());
+        	removeTempFile(tmpPath);
+        	throw new IOException("Unable to deliver message because payload [" + p.getPayloadURI()
+        							+ "] could not be saved to file!", ex);
+        }
+    }
+
+    /**
+     * Helper method to create the file in the delivery directory for the payload. To prevent overwriting existing
+     * files a unique file name is used.
+     *
+     * @param targetDir	the directory to create the file in
+     * @param baseName	the base name for the file
+     * @param mimeType	the MIME type of the payload, used to add a nice extension to the file name
+     * @return	the path of the created file
+     * @throws IOException	when the file could not be created
+     */
+    private Path createPayloadFile(final Path targetDir, final String baseName, final String mimeType)
+    																								throws IOException {
+    	final String ext = FileUtils.getExtension(mimeType);
+    	return createFile(targetDir, baseName + (ext != null ? ext : ""));
+    }
+
+    /**
+     * Helper method to detect the MIME type of the payload based on the first part of its content.
+     *
+     * @param prefix	buffer containing the first {@link #MIME_DETECTION_LENGTH} bytes of the content, or all content if
+     * 					it is shorter
+     * @param length	the number of bytes in the buffer
+     * @return	the detected MIME type, or <code>null</code> if it could not be detected
+     */
+    private static String detectMimeType(final byte[] prefix, final int length) {
+    	try {
+    		return FileUtils.detectMimeType(new ByteArrayInputStream(prefix, 0, length));
+    	} catch (final IOException ex) {
+    		return null; // Unable to detect the MIME Type
+    	}
+    }
+
+    /**
+     * Helper method to read the first part of the content into the buffer. The buffer is filled completely unless the
+     * end of the stream is reached.
+     *
+     * @param is	the stream to read from
+     * @param buf	the buffer to read into
+     * @return	the number of bytes read
+     * @throws IOException	when reading from the stream fails
+     */
+    private static int readFully(final InputStream is, final byte[] buf) throws IOException {
+    	int n = 0;
+    	while (n < buf.length) {
+    		final int r = is.read(buf, n, buf.length - n);
+    		if (r < 0)
+    			break;
+    		n += r;
+    	}
+    	return n;
+    }
+
+    /**
+     * Helper method to remove a temporary file when the payload could not be saved.
+     *
+     * @param tmpPath	the path of the file to remove
+     */
+    private static void removeTempFile(final Path tmpPath) {
+    	try {
+    		Files.deleteIfExists(tmpPath);
+    	} catch (IOException io) {
+    		log.error("Could not remove temp file [" + tmpPath.toString() + "]! Remove manually.");
+    	}
+    }
+
+    /**
+     * Helper method to link or move the payload file to the target path, depending on the configured transfer mode.
+     * As the target file has already been created to reserve the file name, it is replaced by the link or moved file.
+     *
+     * @param srcFile		the file containing the payload content
+     * @param targetPath	the path in the delivery directory
+     * @return	<code>true</code> if the file was linked or moved,<br>
+     * 			<code>false</code> if that is not possible and the payload content should be copied
+     */
+    private boolean linkOrMove(final Path srcFile, final Path targetPath) {
+    	try {
+    		Files.delete(targetPath);
+    		if (payloadTransferMode == PayloadTransferMode.LINK)
+    			Files.createLink(targetPath, srcFile);
+    		else
+    			Files.move(srcFile, targetPath, StandardCopyOption.ATOMIC_MOVE);
+    		log.debug("Payload file {} {} to {}", srcFile, payloadTransferMode == PayloadTransferMode.LINK ? "linked"
+    																								: "moved", targetPath);
+    		return true;
+    	} catch (IOException | UnsupportedOperationException notPossible) {
+    		log.warn("Could not {} payload file {} ({}), copying content instead",
+    					payloadTransferMode.name().toLowerCase(), srcFile, notPossible.toString());
+    		return false;
+    	}
+    }
+
+    /**
+     * Helper method to transfer all remaining data from the source file to the target file. As the transfer may not
+     * complete in one call, it is repeated until the end of the source file is reached.
+     *
+     * @param src		the channel of the source file, positioned at the start of the data to transfer
+     * @param target	the channel of the target file
+     * @throws IOException	when the data could not be transferred
+     */
+    private static void transfer(final FileChannel src, final FileChannel target) throws IOException {
+    	long pos = src.position();
+    	while (pos < src.size())
+    		pos += src.transferTo(pos, src.size() - pos, target);
     }
 }
\ No newline at end of file
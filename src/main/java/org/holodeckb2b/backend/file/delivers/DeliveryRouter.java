@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.delivers;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.holodeckb2b.commons.util.Utils;
+import org.holodeckb2b.interfaces.general.IPartyId;
+import org.holodeckb2b.interfaces.general.IProperty;
+import org.holodeckb2b.interfaces.general.ITradingPartner;
+import org.holodeckb2b.interfaces.messagemodel.ICollaborationInfo;
+import org.holodeckb2b.interfaces.messagemodel.IUserMessage;
+
+/**
+ * Selects the target of a User Message based on its content using a set of routing rules. A rule specifies for one or
+ * more <i>criteria</i> the values that match and the target to use when all criteria match. The supported criteria
+ * are:<ul>
+ * <li>{@link #SERVICE} : the name of the Service</li>
+ * <li>{@link #ACTION} : the Action</li>
+ * <li>{@link #SENDER} : the id of one of the PartyIds of the Sender</li>
+ * <li>{@link #RECEIVER} : the id of one of the PartyIds of the Receiver</li>
+ * <li>{@link #MPC} : the MPC</li>
+ * <li>{@link #PROPERTY_PREFIX}<i>«name»</i> : the value of the Message Property with the given name</li></ul>
+ * <p>When multiple rules match, the rule added first is used.
+ * <p>The rules are compiled into an index per criterion that maps each value to the set of rules that match on it,
+ * plus the set of rules that don't use the criterion. Routing a message therefore takes one hash lookup and one bitset
+ * operation for each criterion that is used by the rules, independent of the number of rules.
+ *
+ * @param <T>	the type of the route targets
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class DeliveryRouter<T> {
+	/**
+	 * The criterion for the Service name
+	 */
+	public static final String SERVICE = "service";
+	/**
+	 * The criterion for the Action
+	 */
+	public static final String ACTION = "action";
+	/**
+	 * The criterion for the PartyId of the Sender
+	 */
+	public static final String SENDER = "sender";
+	/**
+	 * The criterion for the PartyId of the Receiver
+	 */
+	public static final String RECEIVER = "receiver";
+	/**
+	 * The criterion for the MPC
+	 */
+	public static final String MPC = "mpc";
+	/**
+	 * The prefix of the criterion for a Message Property, the name of the property follows the prefix
+	 */
+	public static final String PROPERTY_PREFIX = "property.";
+
+	/**
+	 * The index of a criterion
+	 */
+	private static class CriterionIndex {
+		/**
+		 * The rules that match for each value of the criterion
+		 */
+		final Map<String, BitSet>	byValue = new HashMap<>();
+		/**
+		 * The rules that don't use the criterion and therefore match any value
+		 */
+		final BitSet	any = new BitSet();
+	}
+
+	/**
+	 * The targets of the rules, in order of the rules
+	 */
+	private final List<T>	targets = new ArrayList<>();
+	/**
+	 * The criteria of the rules, in order of the rules
+	 */
+	private final List<Map<String, Collection<String>>>	rules = new ArrayList<>();
+	/**
+	 * The compiled indexes, <code>null</code> when rules have been added after the last compilation
+	 */
+	private volatile Map<String, CriterionIndex>	index;
+
+	/**
+	 * Adds a routing rule. All criteria must match for the rule to match, a criterion matches when the message contains
+	 * one of the specified values.
+	 *
+	 * @param criteria	the criteria of the rule mapped to the values that match
+	 * @param target	the target to use when the rule matches
+	 * @throws IllegalArgumentException	when the rule has no criteria, uses an unknown criterion or a criterion has no
+	 * 									values
+	 */
+	public synchronized void addRule(final Map<String, ? extends Collection<String>> criteria, final T target) {
+		if (Utils.isNullOrEmpty(criteria))
+			throw new IllegalArgumentException("A rule must have at least one criterion");
+		final Map<String, Collection<String>> rule = new HashMap<>();
+		for (final Map.Entry<String, ? extends Collection<String>> c : criteria.entrySet()) {
+			if (!isSupported(c.getKey()))
+				throw new IllegalArgumentException("Unknown criterion: " + c.getKey());
+			if (Utils.isNullOrEmpty(c.getValue()))
+				throw new IllegalArgumentException("No values specified for criterion: " + c.getKey());
+			rule.put(c.getKey(), new ArrayList<>(c.getValue()));
+		}
+		rules.add(rule);
+		targets.add(target);
+		index = null;
+	}
+
+	/**
+	 * Indicates whether no rules have been added.
+	 *
+	 * @return <code>true</code> if there are no rules, <code>false</code> otherwise
+	 */
+	public synchronized boolean isEmpty() {
+		return rules.isEmpty();
+	}
+
+	/**
+	 * Gets the target of the first rule that matches the User Message.
+	 *
+	 * @param userMessage	the User Message to route
+	 * @return	the target of the first matching rule, <code>null</code> if no rule matches
+	 */
+	public T route(final IUserMessage userMessage) {
+		Map<String, CriterionIndex> idx = index;
+		if (idx == null)
+			idx = compile();
+		if (idx.isEmpty())
+			return null;
+
+		BitSet candidates = null;
+		for (final Map.Entry<String, CriterionIndex> c : idx.entrySet()) {
+			final CriterionIndex ci = c.getValue();
+			final BitSet matching = (BitSet) ci.any.clone();
+			for (final String v : getValues(userMessage, c.getKey())) {
+				final BitSet rulesForValue = ci.byValue.get(v);
+				if (rulesForValue != null)
+					matching.or(rulesForValue);
+			}
+			if (candidates == null)
+				candidates = matching;
+			else
+				candidates.and(matching);
+			if (candidates.isEmpty())
+				return null;
+		}
+		return targets.get(candidates.nextSetBit(0));
+	}
+
+	/**
+	 * Compiles the rules into the indexes.
+	 *
+	 * @return	the compiled indexes
+	 */
+	private synchronized Map<String, CriterionIndex> compile() {
+		if (index != null)
+			return index;
+
+		final Map<String, CriterionIndex> idx = new HashMap<>();
+		for (final Map<String, Collection<String>> rule : rules)
+			for (final String criterion : rule.keySet())
+				idx.computeIfAbsent(criterion, c -> new CriterionIndex());
+		for (int r = 0; r < rules.size(); r++)
+			for (final Map.Entry<String, CriterionIndex> c : idx.entrySet()) {
+				final Collection<String> values = rules.get(r).get(c.getKey());
+				if (values == null)
+					c.getValue().any.set(r);
+				else
+					for (final String v : values)
+						c.getValue().byValue.computeIfAbsent(v, k -> new BitSet()).set(r);
+			}
+		index = idx;
+		return idx;
+	}
+
+	/**
+	 * Indicates whether the given criterion is supported.
+	 *
+	 * @param criterion	name of the criterion
+	 * @return	<code>true</code> if the criterion is supported, <code>false</code> if not
+	 */
+	public static boolean isSupported(final String criterion) {
+		switch (criterion) {
+		case SERVICE :
+		case ACTION :
+		case SENDER :
+		case RECEIVER :
+		case MPC :
+			return true;
+		default :
+			return criterion.startsWith(PROPERTY_PREFIX) && criterion.length() > PROPERTY_PREFIX.length();
+		}
+	}
+
+	/**
+	 * Gets the values of the given criterion in the User Message.
+	 *
+	 * @param userMessage	the User Message
+	 * @param criterion		the criterion
+	 * @return	the values of the criterion in the message, empty if the message has no value for it
+	 */
+	private static Collection<String> getValues(final IUserMessage userMessage, final String criterion) {
+		final ICollaborationInfo collabInfo = userMessage.getCollaborationInfo();
+		switch (criterion) {
+		case SERVICE :
+			return collabInfo != null && collabInfo.getService() != null ?
+							Collections.singletonList(collabInfo.getService().getName()) : Collections.emptyList();
+		case ACTION :
+			return collabInfo != null && collabInfo.getAction() != null ?
+							Collections.singletonList(collabInfo.getAction()) : Collections.emptyList();
+		case SENDER :
+			return getPartyIds(userMessage.getSender());
+		case RECEIVER :
+			return getPartyIds(userMessage.getReceiver());
+		case MPC :
+			return userMessage.getMPC() != null ? Collections.singletonList(userMessage.getMPC())
+												: Collections.emptyList();
+		default :
+			final String name = criterion.substring(PROPERTY_PREFIX.length());
+			final Collection<IProperty> props = userMessage.getMessageProperties();
+			if (Utils.isNullOrEmpty(props))
+				return Collections.emptyList();
+			final List<String> values = new ArrayList<>(1);
+			for (final IProperty p : props)
+				if (name.equals(p.getName()) && p.getValue() != null)
+					values.add(p.getValue());
+			return values;
+		}
+	}
+
+	/**
+	 * Gets the ids of the PartyIds of the trading partner.
+	 *
+	 * @param partner	the trading partner
+	 * @return	the ids of the PartyIds, empty if there are none
+	 */
+	private static Collection<String> getPartyIds(final ITradingPartner partner) {
+		if (partner == null || Utils.isNullOrEmpty(partner.getPartyIds()))
+			return Collections.emptyList();
+		final List<String> ids = new ArrayList<>(partner.getPartyIds().size());
+		for (final IPartyId pid : partner.getPartyIds())
+			ids.add(pid.getId());
+		return ids;
+	}
+}
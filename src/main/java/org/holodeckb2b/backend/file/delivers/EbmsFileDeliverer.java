@@ -16,25 +16,27 @@
  */
 package org.holodeckb2b.backend.file.delivers;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.holodeckb2b.backend.file.NotifyAndDeliverOperation;
+import org.holodeckb2b.backend.file.ebms.EbmsHeaderWriter;
 import org.holodeckb2b.backend.file.ebms.ReceiptElement;
 import org.holodeckb2b.backend.file.ebms.UserMessageElement;
-import org.holodeckb2b.backend.file.mmd.MessageMetaData;
-import org.holodeckb2b.backend.file.mmd.PartInfo;
+import org.holodeckb2b.backend.file.mmd.PayloadView;
 import org.holodeckb2b.backend.file.mmd.Property;
-import org.holodeckb2b.commons.util.FileUtils;
+import org.holodeckb2b.backend.file.mmd.UserMessageView;
+import org.holodeckb2b.backend.file.util.Utf8Writer;
 import org.holodeckb2b.commons.util.Utils;
 import org.holodeckb2b.ebms3.packaging.ErrorSignalElement;
 import org.holodeckb2b.interfaces.delivery.MessageDeliveryException;
@@ -56,6 +58,10 @@ import org.holodeckb2b.interfaces.messagemodel.ISignalMessage;
  * schema definition <code>http://holodeck-b2b.org/schemas/2015/08/delivery/ebms/receiptchild</code>.
  * <p>For user messages the payloads are copied to the same directory and referred to through a <i>additional</i> part
  * property named "<i>org:holodeckb2b:location</i>" in <code>eb:PartProperties/eb:Property</code>.
+ * <p>The meta-data documents of User Messages and Receipts are written directly to file using the {@link
+ * EbmsHeaderWriter}. The meta-data of Errors is written by serializing the Axiom element created by the ebMS packaging
+ * classes of the Holodeck B2B Core, which can also be used for User Messages and Receipts by disabling the streaming
+ * writer using {@link #setUseStreamingWriter(boolean)}.
  * <p><b>Examples</b>
  * <p><u>User message</u>
  * <p>For a received user message unit containing two payloads there will be one XML file containing the message info
@@ -124,6 +130,27 @@ public class EbmsFileDeliverer extends AbstractFileDeliverer {
      */
     private static final QName ROOT_QNAME = new QName(EbMSConstants.EBMS3_NS_URI, "Messaging",
                                                            EbMSConstants.EBMS3_NS_PREFIX);
+    /**
+     * Holds the factory used to create the Axiom object tree of the meta-data document, so Axiom is only initialised
+     * when the object tree is used
+     */
+    private static final class OMFactoryHolder {
+    	static final OMFactory FACTORY = OMAbstractFactory.getOMFactory();
+    }
+
+    /**
+     * Writes (part of) the meta-data document to the XML stream
+     */
+    @FunctionalInterface
+    protected interface XMLContentWriter {
+    	void write(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    /**
+     * Indicates whether the meta-data documents of User Messages and Receipts should be written using the streaming
+     * writer instead of building an Axiom object tree
+     */
+    protected boolean	useStreamingWriter = true;
 
     /**
      * Constructs a new deliverer which will write the files to the given directory.
@@ -134,6 +161,17 @@ public class EbmsFileDeliverer extends AbstractFileDeliverer {
         super(dir);
     }
 
+    /**
+     * Sets whether the meta-data documents of User Messages and Receipts should be written using the {@link
+     * EbmsHeaderWriter} or by serializing an Axiom object tree.
+     *
+     * @param useStreamingWriter	<code>true</code> to use the streaming writer, <code>false</code> to use Axiom
+     * @since 2.1.0
+     */
+    public void setUseStreamingWriter(final boolean useStreamingWriter) {
+    	this.useStreamingWriter = useStreamingWriter;
+    }
+
     /*
      * Payloads should be copied to the delivery directory
      */
@@ -146,30 +184,37 @@ public class EbmsFileDeliverer extends AbstractFileDeliverer {
      * Writes the user message meta data to file using the same structure as in the ebMS header.
      *
      * @param mmd           The user message meta data.
+     * @param targetDir     The directory to write the file to
      * @return	Path of the file that contains the message (meta-)data
      * @throws IOException  When the information could not be written to disk.
      */
     @Override
-    protected String writeUserMessageInfoToFile(final MessageMetaData mmd) throws IOException {
+    protected String writeUserMessageInfoToFile(final UserMessageView mmd, final Path targetDir) throws IOException {
 
     	// First set the location as additional part property
     	log.trace("Set payload file locations as properties");
         if (!Utils.isNullOrEmpty(mmd.getPayloads())) {
             // We add the local file location as a Part property
-            for (final PartInfo p : mmd.getPayloads()) {
+            for (final PayloadView p : mmd.getPayloads()) {
                 final Property locationProp = new Property();
                 locationProp.setName("org:holodeckb2b:location");
                 locationProp.setValue(p.getContentLocation());
-                p.getProperties().add(locationProp);
+                p.addProperty(locationProp);
             }
         }
 
+        if (useStreamingWriter) {
+        	log.trace("Write delivery XML document to file");
+        	return writeXMLDocument(w -> writeContainer(w, c -> EbmsHeaderWriter.writeUserMessage(c, mmd, false)),
+        							mmd.getMessageId(), targetDir);
+        }
+
         log.trace("Create delivery XML document and add message info");
         // Add the information on the user message to the container
         final OMElement  container = createContainerElement();
         UserMessageElement.createElement(container, mmd);
         log.trace("Information complete, write XML document to file");
-        return writeXMLDocument(container, mmd.getMessageId());
+        return writeXMLDocument(container::serialize, mmd.getMessageId(), targetDir);
     }
 
     /**
@@ -182,19 +227,26 @@ public class EbmsFileDeliverer extends AbstractFileDeliverer {
      */
     @Override
     protected void deliverSignalMessage(final ISignalMessage sigMsgUnit) throws MessageDeliveryException {
-        final OMElement   container = createContainerElement();
-
-        if (sigMsgUnit instanceof IReceipt) {
-            log.trace("Add receipt meta data to XML");
-            ReceiptElement.createElement(container, (IReceipt) sigMsgUnit);
-        } else if (sigMsgUnit instanceof IErrorMessage) {
-            log.trace("Add error meta data to XML");
-            ErrorSignalElement.createElement(container, (IErrorMessage) sigMsgUnit);
+        final XMLContentWriter content;
+        if (sigMsgUnit instanceof IReceipt && useStreamingWriter) {
+        	log.trace("Write receipt meta data to XML");
+        	content = w -> writeContainer(w, c -> EbmsHeaderWriter.writeReceipt(c, (IReceipt) sigMsgUnit));
+        } else {
+        	final OMElement   container = createContainerElement();
+	        if (sigMsgUnit instanceof IReceipt) {
+	            log.trace("Add receipt meta data to XML");
+	            ReceiptElement.createElement(container, (IReceipt) sigMsgUnit);
+	        } else if (sigMsgUnit instanceof IErrorMessage) {
+	            log.trace("Add error meta data to XML");
+	            ErrorSignalElement.createElement(container, (IErrorMessage) sigMsgUnit);
+	        }
+	        log.trace("Added signal meta data to XML, write to file");
+	        content = container::serialize;
         }
 
-        log.trace("Added signal meta data to XML, write to file");
+        final String outFile;
         try {
-            writeXMLDocument(container, sigMsgUnit.getMessageId());
+            outFile = writeXMLDocument(content, sigMsgUnit.getMessageId(), getTargetDirectory(sigMsgUnit));
             log.debug("Signal message with msgID=" + sigMsgUnit.getMessageId() + " successfully delivered");
         } catch (final IOException ex) {
             log.error("An error occurred while delivering the signal message [" + sigMsgUnit.getMessageId()
@@ -203,6 +255,7 @@ public class EbmsFileDeliverer extends AbstractFileDeliverer {
             throw new MessageDeliveryException("Unable to deliver signal message [" + sigMsgUnit.getMessageId()
                                                     + "]. Error details: " + ex.getMessage());
         }
+        recordDelivery(sigMsgUnit, outFile, Collections.emptyList());
     }
 
     /**
@@ -211,32 +264,56 @@ public class EbmsFileDeliverer extends AbstractFileDeliverer {
      * @return  The root element of the delivery document.
      */
     protected OMElement createContainerElement() {
-        final OMFactory   f = OMAbstractFactory.getOMFactory();
-        final OMElement rootElement = f.createOMElement(ROOT_QNAME);
+        final OMElement rootElement = getOMFactory().createOMElement(ROOT_QNAME);
         rootElement.declareNamespace(EbMSConstants.EBMS3_NS_URI, EbMSConstants.EBMS3_NS_PREFIX);
 
         return rootElement;
     }
 
     /**
-     * Helper to write the XML to file. Serializes the given XML element to file named
-     * "<code>mi-«<i>message id</i>».xml</code>".
+     * Gets the factory to use for creating the Axiom object tree of the meta-data document.
+     *
+     * @return	the shared Axiom factory
+     * @since 2.1.0
+     */
+    protected static OMFactory getOMFactory() {
+    	return OMFactoryHolder.FACTORY;
+    }
+
+    /**
+     * Writes the container element of the meta-data document to the XML stream, i.e. the element that is created by
+     * {@link #createContainerElement()} when the Axiom object tree is used, with the given content.
      *
-     * @param xml       The xml element to write to file
+     * @param w			the writer to use
+     * @param content	the writer of the content of the container
+     * @throws XMLStreamException	when writing fails
+     * @since 2.1.0
+     */
+    protected void writeContainer(final XMLStreamWriter w, final XMLContentWriter content) throws XMLStreamException {
+    	EbmsHeaderWriter.startMessaging(w);
+    	content.write(w);
+    	w.writeEndElement();
+    }
+
+    /**
+     * Helper to write the XML to file. Writes the XML to a file named "<code>mi-«<i>message id</i>».xml</code>".
+     *
+     * @param xml       The writer of the XML to write to file
      * @param msgId     The message id of the message unit the XML is the meta data of
+     * @param targetDir The directory to write the file to
      * @return          The path to the new file containing the XML document
      * @throws IOException When the XML can not be written to disk
      */
-    private String writeXMLDocument(final OMElement xml, final String msgId) throws IOException {
-        final Path msgFilePath = FileUtils.createFileWithUniqueName(directory.resolve(
-															FileUtils.sanitizeFileName("mi-" + msgId + TMP_EXTENSION)));
+    private String writeXMLDocument(final XMLContentWriter xml, final String msgId, final Path targetDir)
+    																								throws IOException {
+        final Path msgFilePath = createFile(targetDir, "mi-" + getFileName(msgId) + TMP_EXTENSION);
 
 		try {
-			final FileWriter fw = new FileWriter(msgFilePath.toString());
-			final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(fw);
-			xml.serialize(writer);
-			writer.flush();
-			fw.close();
+			try (Writer out = Utf8Writer.create(msgFilePath)) {
+				final XMLStreamWriter writer = EbmsHeaderWriter.createWriter(out);
+				xml.write(writer);
+				writer.flush();
+			}
 			return changeExt(msgFilePath);
 		} catch (final Exception ex) {
 			// Can not write the message info XML to file -> delivery not possible
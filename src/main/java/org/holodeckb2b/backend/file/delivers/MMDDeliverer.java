@@ -16,15 +16,15 @@
  */
 package org.holodeckb2b.backend.file.delivers;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 import org.holodeckb2b.backend.file.NotifyAndDeliverOperation;
 import org.holodeckb2b.backend.file.SubmitOperation;
+import org.holodeckb2b.backend.file.mmd.MMDWriter;
 import org.holodeckb2b.backend.file.mmd.MessageMetaData;
-import org.holodeckb2b.commons.util.FileUtils;
+import org.holodeckb2b.backend.file.mmd.UserMessageView;
 import org.holodeckb2b.interfaces.delivery.MessageDeliveryException;
 import org.holodeckb2b.interfaces.messagemodel.ISignalMessage;
 
@@ -35,7 +35,7 @@ import org.holodeckb2b.interfaces.messagemodel.ISignalMessage;
  * MMD document.
  * <p>The XML format of the message meta data (MMD) document is the same as for the default file based message submitter
  * ({@link SubmitOperation}) and defined in the <code>http://holodeck-b2b.org/schemas/2014/06/mmd</code> xml schema
- * definition.
+ * definition. The MMD document is written using the streaming {@link MMDWriter}.
  *
  * @author Sander Fieten (sander at holodeck-b2b.org)
  * @see NotifyAndDeliverOperation
@@ -61,11 +61,10 @@ public class MMDDeliverer extends AbstractFileDeliverer {
     }
 
     @Override
-    protected String writeUserMessageInfoToFile(final MessageMetaData mmd) throws IOException {
-        final Path mmdFilePath = FileUtils.createFileWithUniqueName(directory.resolve(
-											FileUtils.sanitizeFileName(mmd.getMessageId() + ".mmd" + TMP_EXTENSION)));
+    protected String writeUserMessageInfoToFile(final UserMessageView mmd, final Path targetDir) throws IOException {
+        final Path mmdFilePath = createFile(targetDir, getFileName(mmd.getMessageId()) + ".mmd" + TMP_EXTENSION);
         try {
-            mmd.writeToFile(new File(mmdFilePath.toString()));
+            MMDWriter.write(mmd, mmdFilePath);
             return changeExt(mmdFilePath);
         } catch (IOException ex) {
             // Something went wrong on writing the mmd file, try to remove the already created file
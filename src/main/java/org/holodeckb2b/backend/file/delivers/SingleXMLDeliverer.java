@@ -16,28 +16,28 @@
  */
 package org.holodeckb2b.backend.file.delivers;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Base64;
 
 import javax.xml.XMLConstants;
-import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 
-import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
-import org.apache.axiom.om.OMFactory;
-import org.apache.axiom.util.base64.Base64EncodingWriterOutputStream;
 import org.holodeckb2b.backend.file.NotifyAndDeliverOperation;
-import org.holodeckb2b.backend.file.mmd.MessageMetaData;
+import org.holodeckb2b.backend.file.ebms.EbmsHeaderWriter;
+import org.holodeckb2b.backend.file.ebms.UserMessageElement;
+import org.holodeckb2b.backend.file.mmd.PayloadView;
 import org.holodeckb2b.backend.file.mmd.Property;
-import org.holodeckb2b.commons.util.FileUtils;
+import org.holodeckb2b.backend.file.mmd.UserMessageView;
+import org.holodeckb2b.backend.file.util.BufferPool;
+import org.holodeckb2b.backend.file.util.Utf8Writer;
 import org.holodeckb2b.commons.util.Utils;
-import org.holodeckb2b.ebms3.packaging.UserMessageElement;
 import org.holodeckb2b.interfaces.general.EbMSConstants;
 import org.holodeckb2b.interfaces.messagemodel.IPayload;
 
@@ -50,6 +50,8 @@ import org.holodeckb2b.interfaces.messagemodel.IPayload;
  * the  message as <code>Payload</code> elements. Because the payload can contain binary data their content is included
  * <i>base64</i> encoded. The payloads are referenced using the <code>xml:id</code> attribute of a <code>Payload</code>
  * element which is included as a <i>"Part Property"</i> with name "<i>org:holodeckb2b:ref</i>".
+ * <p>The payload data is read in chunks of {@link #CHUNK_SIZE} bytes which are encoded and written directly to the
+ * delivery file, so the memory needed for delivery does not depend on the size of the payloads.
  * <p><b>Examples</b>
  * <p><u>User message</u>
  * <p>For a received user message unit containing one payload the message info file is like this:
@@ -120,6 +122,10 @@ public class SingleXMLDeliverer extends EbmsFileDeliverer {
      * The QName of the container element that contains the message info
      */
     private static final String XML_ROOT_NAME = "ebmsMessage";
+    /**
+     * The number of bytes of payload data that is read and encoded at once
+     */
+    static final int CHUNK_SIZE = BufferPool.BUFFER_SIZE / 4 * 3;
 
     /**
      * Constructs a new deliverer which will write the files to the given directory.
@@ -145,8 +151,7 @@ public class SingleXMLDeliverer extends EbmsFileDeliverer {
      */
     @Override
 	protected OMElement createContainerElement() {
-        final OMFactory   f = OMAbstractFactory.getOMFactory();
-        final OMElement rootElement = f.createOMElement(XML_ROOT_NAME, DELIVERY_NS_URI, XMLConstants.DEFAULT_NS_PREFIX);
+        final OMElement rootElement = getOMFactory().createOMElement(XML_ROOT_NAME, DELIVERY_NS_URI, XMLConstants.DEFAULT_NS_PREFIX);
         // Declare the namespaces
         rootElement.declareDefaultNamespace(DELIVERY_NS_URI);
         rootElement.declareNamespace(EbMSConstants.EBMS3_NS_URI, EbMSConstants.EBMS3_NS_PREFIX);
@@ -154,41 +159,61 @@ public class SingleXMLDeliverer extends EbmsFileDeliverer {
         return rootElement;
     }
 
+    /**
+     * Writes the <code>ebmsMessage</code> root element of the delivery document with the given content.
+     *
+     * @param w			the writer to use
+     * @param content	the writer of the content of the root element
+     * @throws XMLStreamException	when writing fails
+     */
+    @Override
+    protected void writeContainer(final XMLStreamWriter w, final XMLContentWriter content) throws XMLStreamException {
+    	w.writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, XML_ROOT_NAME, DELIVERY_NS_URI);
+    	w.writeDefaultNamespace(DELIVERY_NS_URI);
+    	w.writeNamespace(EbMSConstants.EBMS3_NS_PREFIX, EbMSConstants.EBMS3_NS_URI);
+    	content.write(w);
+    	w.writeEndElement();
+    }
+
     /**
      * Writes the user message meta data and payload data to a single file using the same structure for the meta-data
      * as in the ebMS header.
      *
      * @param mmd           The user message meta data.
+     * @param targetDir     The directory to write the file to
      * @return	Path of the file that contains the message data
      * @throws IOException  When the information could not be written to disk.
      */
     @Override
-    protected String writeUserMessageInfoToFile(final MessageMetaData mmd) throws IOException {
+    protected String writeUserMessageInfoToFile(final UserMessageView mmd, final Path targetDir) throws IOException {
 
         // Generate id values for the Payload elements to include later
         if (!Utils.isNullOrEmpty(mmd.getPayloads())) {
         	int i = 1;
-        	for (final IPayload p : mmd.getPayloads()) {
+        	for (final PayloadView p : mmd.getPayloads()) {
         		final Property refProp = new Property();
         		refProp.setName("org:holodeckb2b:ref");
         		refProp.setValue("pl-" + i++);
-        		p.getProperties().add(refProp);
+        		p.addProperty(refProp);
         	}
         }
 
-        // Create the document and UserMessage child element
-        final OMElement  usrMsgElement = UserMessageElement.createElement(createContainerElement(), mmd);
+        // Create the UserMessage element, unless it is written directly to file
+        final OMElement  usrMsgElement = useStreamingWriter ? null
+        									: UserMessageElement.createElement(createContainerElement(), mmd);
 
-        Path msgFilePath = FileUtils.createFileWithUniqueName(directory.resolve(
-        								FileUtils.sanitizeFileName("message-" + mmd.getMessageId() + TMP_EXTENSION)));
+        Path msgFilePath = createFile(targetDir, "message-" + getFileName(mmd.getMessageId()) + TMP_EXTENSION);
 		log.trace("Message meta data complete, start writing this to file " + msgFilePath.toString());
-        try (FileWriter fw = new FileWriter(msgFilePath.toFile())) {
-            final XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(fw);
+        try (Writer fw = Utf8Writer.create(msgFilePath)) {
+            final XMLStreamWriter xmlWriter = EbmsHeaderWriter.createWriter(fw);
             log.trace("Write the meta data to file");
             xmlWriter.writeStartElement(XML_ROOT_NAME);
             xmlWriter.setDefaultNamespace(DELIVERY_NS_URI);
             xmlWriter.writeNamespace("", DELIVERY_NS_URI);
-            usrMsgElement.serialize(xmlWriter);
+            if (useStreamingWriter)
+            	EbmsHeaderWriter.writeUserMessage(xmlWriter, mmd, true);
+            else
+            	usrMsgElement.serialize(xmlWriter);
             xmlWriter.flush();
             log.trace("Meta data writen to file");
             if (!Utils.isNullOrEmpty(mmd.getPayloads())) {
@@ -199,7 +224,11 @@ public class SingleXMLDeliverer extends EbmsFileDeliverer {
                     log.trace("Create <Payload> element");
                     xmlWriter.writeStartElement(DELIVERY_NS_URI, "Payload");
                     xmlWriter.writeAttribute("xml:id", "pl-" + i++);
-                    xmlWriter.writeCharacters(encodePayload(p));
+                    // External payloads have no content
+                    try (InputStream cis = p.getContent()) {
+                    	if (cis != null)
+                    		writeBase64(cis, xmlWriter);
+                    }
                     xmlWriter.writeEndElement();
                 }
                 log.trace("Close the <Payloads> element");
@@ -224,21 +253,70 @@ public class SingleXMLDeliverer extends EbmsFileDeliverer {
     }
 
     /**
-     * Helper method create the base64 encoded version of the payload
+     * Helper method to write the base64 encoded payload data to the delivery document. The data is read in chunks into
+     * a pooled buffer and encoded by the JDK's streaming base64 encoder, which writes the encoded characters to the
+     * delivery document through a pooled character buffer. So only one chunk of the payload is in memory at any time
+     * and no new large buffers are needed for each payload.
      *
-     * @param p the payload
-     * @return the base64 encoded payload
-     * @throws IOException      When reading from the source or writing to the output fails
+     * @param is        the stream to read the payload data from
+     * @param xmlWriter the writer of the delivery document
+     * @throws IOException          When reading the payload data fails
+     * @throws XMLStreamException   When writing to the delivery document fails
      */
-    private String encodePayload(final IPayload p) throws IOException {
-    	final StringWriter b64Payload = new StringWriter();
-        try (InputStream cis = p.getContent();
-        	 Base64EncodingWriterOutputStream b64os = new Base64EncodingWriterOutputStream(b64Payload)) {
-            Utils.copyStream(cis, b64os);
-            b64os.complete();
-            b64os.flush();
+    static void writeBase64(final InputStream is, final XMLStreamWriter xmlWriter)
+                                                                            throws IOException, XMLStreamException {
+        final byte[] data = BufferPool.getByteBuffer();
+        final char[] chars = BufferPool.getCharBuffer();
+        final CharactersOutputStream out = new CharactersOutputStream(xmlWriter, chars);
+        try (OutputStream encoder = Base64.getEncoder().wrap(out)) {
+        	for (int n = is.read(data, 0, CHUNK_SIZE); n >= 0; n = is.read(data, 0, CHUNK_SIZE))
+        		encoder.write(data, 0, n);
+        } catch (final IOException writeFailure) {
+        	if (out.failure != null)
+        		throw out.failure;
+        	throw writeFailure;
+        } finally {
+        	BufferPool.release(data);
+        	BufferPool.release(chars);
         }
-        return b64Payload.toString();
     }
 
+    /**
+     * Is the stream the base64 encoder writes the encoded data to. As the encoded data only contains ASCII characters,
+     * the bytes are converted to characters one to one and written as text to the delivery document.
+     */
+    private static class CharactersOutputStream extends OutputStream {
+    	private final XMLStreamWriter	xmlWriter;
+    	private final char[]			chars;
+    	/**
+    	 * The exception that occurred when writing to the delivery document, <code>null</code> if there was none
+    	 */
+    	XMLStreamException	failure;
+
+    	CharactersOutputStream(final XMLStreamWriter xmlWriter, final char[] chars) {
+    		this.xmlWriter = xmlWriter;
+    		this.chars = chars;
+    	}
+
+    	@Override
+    	public void write(final int b) throws IOException {
+    		write(new byte[] { (byte) b }, 0, 1);
+    	}
+
+    	@Override
+    	public void write(final byte[] b, final int off, final int len) throws IOException {
+    		int i = off;
+    		while (i < off + len) {
+    			final int n = Math.min(off + len - i, chars.length);
+    			for (int c = 0; c < n; c++)
+    				chars[c] = (char) b[i++];
+    			try {
+    				xmlWriter.writeCharacters(chars, 0, n);
+    			} catch (final XMLStreamException ex) {
+    				failure = ex;
+    				throw new IOException("Could not write encoded data", ex);
+    			}
+    		}
+    	}
+    }
 }
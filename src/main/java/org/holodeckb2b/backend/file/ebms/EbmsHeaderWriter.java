@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.ebms;
+
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.axiom.om.OMElement;
+import org.holodeckb2b.commons.util.Utils;
+import org.holodeckb2b.interfaces.general.EbMSConstants;
+import org.holodeckb2b.interfaces.general.IDescription;
+import org.holodeckb2b.interfaces.general.IPartyId;
+import org.holodeckb2b.interfaces.general.IProperty;
+import org.holodeckb2b.interfaces.general.ISchemaReference;
+import org.holodeckb2b.interfaces.general.IService;
+import org.holodeckb2b.interfaces.general.ITradingPartner;
+import org.holodeckb2b.interfaces.messagemodel.IAgreementReference;
+import org.holodeckb2b.interfaces.messagemodel.ICollaborationInfo;
+import org.holodeckb2b.interfaces.messagemodel.IMessageUnit;
+import org.holodeckb2b.interfaces.messagemodel.IPayload;
+import org.holodeckb2b.interfaces.messagemodel.IReceipt;
+import org.holodeckb2b.interfaces.messagemodel.IUserMessage;
+
+/**
+ * Writes the ebMS header elements of the delivered message units directly to a {@link XMLStreamWriter}. It produces
+ * the same elements as the {@link UserMessageElement} and {@link ReceiptElement} facades, but without first building
+ * an Axiom object tree for them. Like the facades it leaves out elements for which no meta-data is available.
+ * <p>All elements are written with a start and end tag, also when empty, so the output is the same as when the Axiom
+ * tree is serialized.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public final class EbmsHeaderWriter {
+
+	private static final String EB_NS = EbMSConstants.EBMS3_NS_URI;
+	private static final String EB = EbMSConstants.EBMS3_NS_PREFIX;
+
+	/**
+	 * The namespace of the element that replaces the content of a Receipt
+	 */
+	private static final String RECEIPT_CHILD_NS = "http://holodeck-b2b.org/schemas/2015/08/delivery/ebms/receiptchild";
+
+	/**
+	 * The factory is thread safe and expensive to look up, so it is shared
+	 */
+	private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private EbmsHeaderWriter() {}
+
+	/**
+	 * Creates a new {@link XMLStreamWriter} that writes to the given writer, using the shared output factory.
+	 *
+	 * @param out	the writer to write the XML to
+	 * @return		the XML writer
+	 * @throws XMLStreamException	when the XML writer could not be created
+	 */
+	public static XMLStreamWriter createWriter(final Writer out) throws XMLStreamException {
+		return XML_OUTPUT_FACTORY.createXMLStreamWriter(out);
+	}
+
+	/**
+	 * Writes the start tag of the <code>eb3:Messaging</code> element, including the namespace declaration for the ebMS
+	 * namespace. The element must be closed by the caller.
+	 *
+	 * @param w		the writer to use
+	 * @throws XMLStreamException	when writing fails
+	 */
+	public static void startMessaging(final XMLStreamWriter w) throws XMLStreamException {
+		w.writeStartElement(EB, "Messaging", EB_NS);
+		w.writeNamespace(EB, EB_NS);
+	}
+
+	/**
+	 * Writes the <code>eb3:UserMessage</code> element for the given User Message.
+	 *
+	 * @param w					the writer to use
+	 * @param data				the meta-data of the User Message
+	 * @param declareNamespace	indicates whether the ebMS namespace should be declared on the element, which is needed
+	 * 							when it is not declared on a parent element
+	 * @throws XMLStreamException	when writing fails
+	 */
+	public static void writeUserMessage(final XMLStreamWriter w, final IUserMessage data,
+										final boolean declareNamespace) throws XMLStreamException {
+		w.writeStartElement(EB, "UserMessage", EB_NS);
+		if (declareNamespace)
+			w.writeNamespace(EB, EB_NS);
+		// MPC attribute only set when not default
+		final String mpc = data.getMPC();
+		if (mpc != null && !mpc.equals(EbMSConstants.DEFAULT_MPC))
+			w.writeAttribute("mpc", mpc);
+
+		writeMessageInfo(w, data);
+
+		w.writeStartElement(EB, "PartyInfo", EB_NS);
+		writeTradingPartner(w, "From", data.getSender());
+		writeTradingPartner(w, "To", data.getReceiver());
+		w.writeEndElement();
+
+		writeCollaborationInfo(w, data.getCollaborationInfo(), data.getPModeId());
+
+		final Collection<IProperty> msgProps = data.getMessageProperties();
+		if (!Utils.isNullOrEmpty(msgProps)) {
+			w.writeStartElement(EB, "MessageProperties", EB_NS);
+			for (final IProperty p : msgProps)
+				writeProperty(w, p);
+			w.writeEndElement();
+		}
+
+		final Collection<? extends IPayload> payloads = data.getPayloads();
+		if (!Utils.isNullOrEmpty(payloads)) {
+			w.writeStartElement(EB, "PayloadInfo", EB_NS);
+			for (final IPayload p : payloads)
+				writePartInfo(w, p);
+			w.writeEndElement();
+		}
+
+		w.writeEndElement();
+	}
+
+	/**
+	 * Writes the <code>eb3:SignalMessage</code> element for the given Receipt. As in the {@link ReceiptElement} facade
+	 * the content of the Receipt is replaced by a <code>ReceiptChild</code> element that contains the qualified name of
+	 * the first element of the Receipt content.
+	 *
+	 * @param w			the writer to use
+	 * @param receipt	the Receipt
+	 * @throws XMLStreamException	when writing fails
+	 */
+	public static void writeReceipt(final XMLStreamWriter w, final IReceipt receipt) throws XMLStreamException {
+		w.writeStartElement(EB, "SignalMessage", EB_NS);
+		writeMessageInfo(w, receipt);
+		w.writeStartElement(EB, "Receipt", EB_NS);
+		w.writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, "ReceiptChild", RECEIPT_CHILD_NS);
+		w.writeDefaultNamespace(RECEIPT_CHILD_NS);
+		final List<OMElement> content = receipt.getContent();
+		if (!Utils.isNullOrEmpty(content))
+			w.writeCharacters(content.get(0).getQName().toString());
+		w.writeEndElement();
+		w.writeEndElement();
+		w.writeEndElement();
+	}
+
+	private static void writeMessageInfo(final XMLStreamWriter w, final IMessageUnit data) throws XMLStreamException {
+		w.writeStartElement(EB, "MessageInfo", EB_NS);
+		writeTextElement(w, "Timestamp", Utils.toXMLDateTime(data.getTimestamp()));
+		writeTextElement(w, "MessageId", data.getMessageId());
+		final String refToMsgId = data.getRefToMessageId();
+		if (!Utils.isNullOrEmpty(refToMsgId))
+			writeTextElement(w, "RefToMessageId", refToMsgId);
+		w.writeEndElement();
+	}
+
+	private static void writeTradingPartner(final XMLStreamWriter w, final String name, final ITradingPartner data)
+																						throws XMLStreamException {
+		if (data == null)
+			return;
+		w.writeStartElement(EB, name, EB_NS);
+		for (final IPartyId pi : data.getPartyIds()) {
+			w.writeStartElement(EB, "PartyId", EB_NS);
+			final String pidType = pi.getType();
+			if (!Utils.isNullOrEmpty(pidType))
+				w.writeAttribute("type", pidType);
+			writeText(w, pi.getId());
+			w.writeEndElement();
+		}
+		final String role = data.getRole();
+		if (!Utils.isNullOrEmpty(role))
+			writeTextElement(w, "Role", role);
+		w.writeEndElement();
+	}
+
+	private static void writeCollaborationInfo(final XMLStreamWriter w, final ICollaborationInfo data,
+											   final String pmodeId) throws XMLStreamException {
+		if (data == null)
+			return;
+		w.writeStartElement(EB, "CollaborationInfo", EB_NS);
+
+		// The P-Mode id is always included in the AgreementRef
+		final IAgreementReference ar = data.getAgreement();
+		w.writeStartElement(EB, "AgreementRef", EB_NS);
+		if (ar != null && !Utils.isNullOrEmpty(ar.getType()))
+			w.writeAttribute("type", ar.getType());
+		if (!Utils.isNullOrEmpty(pmodeId))
+			w.writeAttribute("pmode", pmodeId);
+		writeText(w, ar != null ? ar.getName() : null);
+		w.writeEndElement();
+
+		final IService svc = data.getService();
+		if (svc != null) {
+			w.writeStartElement(EB, "Service", EB_NS);
+			if (!Utils.isNullOrEmpty(svc.getType()))
+				w.writeAttribute("type", svc.getType());
+			writeText(w, svc.getName());
+			w.writeEndElement();
+		}
+		final String action = data.getAction();
+		if (!Utils.isNullOrEmpty(action))
+			writeTextElement(w, "Action", action);
+		final String convId = data.getConversationId();
+		if (!Utils.isNullOrEmpty(convId))
+			writeTextElement(w, "ConversationId", convId);
+
+		w.writeEndElement();
+	}
+
+	private static void writePartInfo(final XMLStreamWriter w, final IPayload data) throws XMLStreamException {
+		w.writeStartElement(EB, "PartInfo", EB_NS);
+		String href = data.getPayloadURI();
+		if (href != null) {
+			if (data.getContainment() == IPayload.Containment.ATTACHMENT)
+				href = "cid:" + href;
+			else if (data.getContainment() == IPayload.Containment.BODY)
+				href = "#" + href;
+			w.writeAttribute("href", href);
+		}
+
+		final ISchemaReference schema = data.getSchemaReference();
+		if (schema != null) {
+			w.writeStartElement(EB, "Schema", EB_NS);
+			w.writeAttribute("location", schema.getLocation());
+			if (!Utils.isNullOrEmpty(schema.getVersion()))
+				w.writeAttribute("version", schema.getVersion());
+			if (!Utils.isNullOrEmpty(schema.getNamespace()))
+				w.writeAttribute("namespace", schema.getNamespace());
+			w.writeEndElement();
+		}
+
+		final IDescription descr = data.getDescription();
+		if (descr != null) {
+			w.writeStartElement(EB, "Description", EB_NS);
+			if (!Utils.isNullOrEmpty(descr.getLanguage()))
+				w.writeAttribute("xml", XMLConstants.XML_NS_URI, "lang", descr.getLanguage());
+			writeText(w, descr.getText());
+			w.writeEndElement();
+		}
+
+		final Collection<IProperty> props = data.getProperties();
+		if (!Utils.isNullOrEmpty(props)) {
+			w.writeStartElement(EB, "PartProperties", EB_NS);
+			for (final IProperty p : props)
+				writeProperty(w, p);
+			w.writeEndElement();
+		}
+
+		w.writeEndElement();
+	}
+
+	private static void writeProperty(final XMLStreamWriter w, final IProperty p) throws XMLStreamException {
+		w.writeStartElement(EB, "Property", EB_NS);
+		w.writeAttribute("name", p.getName());
+		if (!Utils.isNullOrEmpty(p.getType()))
+			w.writeAttribute("type", p.getType());
+		writeText(w, p.getValue());
+		w.writeEndElement();
+	}
+
+	private static void writeTextElement(final XMLStreamWriter w, final String name, final String text)
+																						throws XMLStreamException {
+		w.writeStartElement(EB, name, EB_NS);
+		writeText(w, text);
+		w.writeEndElement();
+	}
+
+	private static void writeText(final XMLStreamWriter w, final String text) throws XMLStreamException {
+		if (text != null)
+			w.writeCharacters(text);
+	}
+}
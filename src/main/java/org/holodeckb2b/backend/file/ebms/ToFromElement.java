@@ -26,7 +26,8 @@ import org.holodeckb2b.interfaces.general.ITradingPartner;
 /**
  * Is a helper class for creating the <code>To</code> and <code>From</code> child elements of the <code>PartyInfo</code>
  * element. It is based on {@link TradingPartner}, but leaves out the <code>Role</code> element if no role is specified
- * for a trading partner (which can happen if another protocol then ebMS3 is used).
+ * for a trading partner (which can happen if another protocol then ebMS3 is used). When there is no information on the
+ * trading partner at all, the element is left out.
  *  
  * @author Sander Fieten (sander at holodeck-b2b.org)
  */
@@ -39,10 +40,13 @@ public class ToFromElement extends TradingPartner {
      * @param rootName      The name to use for the element, i.e. <i>From</i> or <i>To</i>
      * @param piElement     The parent element this element should be added to
      * @param data          The data to include in the element
-     * @return  The new element
+     * @return  The new element, or <code>null</code> if no data is given
      */
     public static OMElement createElement(final ElementName rootName, final OMElement piElement,
                                           final ITradingPartner data) {
+        if (data == null)
+            return null;
+
         final OMFactory f = piElement.getOMFactory();
 
         // Create the element
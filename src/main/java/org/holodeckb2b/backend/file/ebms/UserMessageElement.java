@@ -23,6 +23,7 @@ import org.apache.axiom.om.OMFactory;
 import org.holodeckb2b.commons.util.Utils;
 import org.holodeckb2b.ebms3.packaging.MessageInfoElement;
 import org.holodeckb2b.ebms3.packaging.MessagePropertiesElement;
+import org.holodeckb2b.ebms3.packaging.PartyInfoElement;
 import org.holodeckb2b.ebms3.packaging.PartyInfoElement.TradingPartner.ElementName;
 import org.holodeckb2b.ebms3.packaging.PayloadInfoElement;
 import org.holodeckb2b.interfaces.general.EbMSConstants;
@@ -62,7 +63,7 @@ public class UserMessageElement extends org.holodeckb2b.ebms3.packaging.UserMess
         // Create the MessageInfo element
         MessageInfoElement.createElement(usermessage, data);
         // Create the PartyInfo element directly without using a packaging class
-        final OMElement partyInfo = f.createOMElement(Q_ELEMENT_NAME, usermessage);
+        final OMElement partyInfo = f.createOMElement(PartyInfoElement.Q_ELEMENT_NAME, usermessage);
         // Add content, i.e. the from and to element
         ToFromElement.createElement(ElementName.FROM, partyInfo, data.getSender());
         ToFromElement.createElement(ElementName.TO, partyInfo, data.getReceiver());
@@ -0,0 +1,346 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Is an append-only journal of the delivered message units, which allows back-end systems to find new deliveries by
+ * reading the journal instead of repeatedly listing the delivery directory. For each delivered message unit a {@link
+ * JournalRecord} is appended after its files have got their final names.
+ * <p>The journal consists of <i>segments</i>, files named <code>journal-«offset».log</code> where the offset is the
+ * position of the segment's first record in the journal. The position of each record in the journal is therefore
+ * unique and a consumer only needs to store the offset of the next record to read to continue reading later, see
+ * {@link DeliveryJournalReader}. When the active segment has reached the maximum segment size a new segment is
+ * started, and segments that have not been changed during the retention period are removed.
+ * <p>A journal directory must only be written by one JVM. Within the JVM the journal instance is shared, see {@link
+ * #getInstance(Path, long, long)}. When the JVM stops while a record is being written, the incomplete record is
+ * removed when the journal is opened again.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class DeliveryJournal implements Closeable {
+	private static final Logger	log = LogManager.getLogger(DeliveryJournal.class);
+
+	/**
+	 * The prefix of the segment file names
+	 */
+	static final String SEGMENT_PREFIX = "journal-";
+	/**
+	 * The extension of the segment files
+	 */
+	static final String SEGMENT_EXT = ".log";
+
+	/**
+	 * The journals already opened, mapped by their directory
+	 */
+	private static final Map<Path, DeliveryJournal> journals = new ConcurrentHashMap<>();
+
+	/**
+	 * The directory containing the segments
+	 */
+	private final Path	directory;
+	/**
+	 * The size in bytes after which a new segment is started
+	 */
+	private final long	segmentSize;
+	/**
+	 * The time in milliseconds a segment is kept after it was last changed, 0 to keep segments forever
+	 */
+	private final long	retention;
+
+	/**
+	 * The offset of the first record of the active segment
+	 */
+	private long	segmentBase;
+	/**
+	 * The active segment
+	 */
+	private Path	segment;
+	private FileChannel	channel;
+
+	/**
+	 * Gets the journal in the given directory. If the journal is not opened yet in this JVM it is opened with the
+	 * given settings, otherwise the already opened journal is returned.
+	 *
+	 * @param dir			the directory of the journal
+	 * @param segmentSize	the size in bytes after which a new segment is started
+	 * @param retention		the time in milliseconds a segment is kept after it was last changed, 0 to keep segments
+	 * 						forever
+	 * @return	the journal
+	 * @throws IOException	when the journal could not be opened
+	 */
+	public static DeliveryJournal getInstance(final Path dir, final long segmentSize, final long retention)
+																								throws IOException {
+		final Path key = dir.toAbsolutePath().normalize();
+		DeliveryJournal journal = journals.get(key);
+		if (journal == null)
+			synchronized (journals) {
+				journal = journals.get(key);
+				if (journal == null) {
+					journal = new DeliveryJournal(key, segmentSize, retention);
+					journals.put(key, journal);
+				}
+			}
+		return journal;
+	}
+
+	/**
+	 * Opens the journal in the given directory. The directory is created if it does not exist.
+	 *
+	 * @param dir			the directory of the journal
+	 * @param segmentSize	the size in bytes after which a new segment is started
+	 * @param retention		the time in milliseconds a segment is kept after it was last changed, 0 to keep segments
+	 * 						forever
+	 * @throws IOException	when the journal could not be opened
+	 */
+	public DeliveryJournal(final Path dir, final long segmentSize, final long retention) throws IOException {
+		if (segmentSize <= 0)
+			throw new IllegalArgumentException("Segment size must be positive");
+		this.directory = dir;
+		this.segmentSize = segmentSize;
+		this.retention = retention;
+
+		Files.createDirectories(dir);
+		final List<Long> segments = listSegments(dir);
+		if (segments.isEmpty())
+			openSegment(0);
+		else {
+			openSegment(segments.get(segments.size() - 1));
+			recover();
+		}
+		removeExpiredSegments();
+		log.debug("Opened delivery journal in {} at offset {}", dir, segmentBase + channel.size());
+	}
+
+	/**
+	 * Gets the directory of the journal.
+	 *
+	 * @return	the journal directory
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Gets the active segment, i.e. the segment records are currently appended to.
+	 *
+	 * @return	path of the active segment
+	 */
+	public synchronized Path getActiveSegment() {
+		return segment;
+	}
+
+	/**
+	 * Gets the offset at which the next record will be appended.
+	 *
+	 * @return	the offset of the end of the journal
+	 * @throws IOException	when the size of the active segment could not be determined
+	 */
+	public synchronized long getEndOffset() throws IOException {
+		ensureOpen();
+		return segmentBase + channel.size();
+	}
+
+	/**
+	 * Appends a record for a delivered message unit to the journal.
+	 *
+	 * @param type			the type of the message unit
+	 * @param messageId		the message id of the message unit
+	 * @param metaDataFile	the path of the meta-data file
+	 * @param payloadFiles	the paths of the payload files, may be <code>null</code> or empty
+	 * @return	the offset of the appended record
+	 * @throws IOException	when the record could not be written
+	 */
+	public long append(final String type, final String messageId, final String metaDataFile,
+					   final List<String> payloadFiles) throws IOException {
+		final ByteBuffer record = ByteBuffer.wrap(JournalRecord.encode(Instant.now(), type, messageId, metaDataFile,
+																		payloadFiles));
+		synchronized (this) {
+			ensureOpen();
+			long size = channel.size();
+			if (size >= segmentSize) {
+				rollover(segmentBase + size);
+				size = 0;
+			}
+			final long offset = segmentBase + size;
+			try {
+				while (record.hasRemaining())
+					channel.write(record);
+			} catch (IOException writeFailure) {
+				// Remove the partially written record so the next record starts at a correct position
+				channel.truncate(size);
+				throw writeFailure;
+			}
+			return offset;
+		}
+	}
+
+	/**
+	 * Forces the records appended to the active segment to disk.
+	 *
+	 * @throws IOException	when the segment could not be synced
+	 */
+	public synchronized void force() throws IOException {
+		ensureOpen();
+		channel.force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		journals.remove(directory, this);
+		synchronized (this) {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		}
+	}
+
+	/**
+	 * Starts a new segment. The active segment is forced to disk before it is closed.
+	 *
+	 * @param base	the offset of the first record of the new segment
+	 * @throws IOException	when the new segment could not be created
+	 */
+	private void rollover(final long base) throws IOException {
+		channel.force(false);
+		channel.close();
+		openSegment(base);
+		log.debug("Started new journal segment {}", segment);
+		removeExpiredSegments();
+	}
+
+	private void openSegment(final long base) throws IOException {
+		segmentBase = base;
+		segment = directory.resolve(segmentName(base));
+		channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+								   StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Removes an incomplete record at the end of the active segment, which is the result of the JVM stopping while
+	 * the record was being written.
+	 *
+	 * @throws IOException	when the segment could not be read or truncated
+	 */
+	private void recover() throws IOException {
+		final long size = channel.size();
+		if (size == 0)
+			return;
+		try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+			final ByteBuffer buf = ByteBuffer.allocate(8192);
+			long end = size;
+			while (end > 0) {
+				final int n = (int) Math.min(buf.capacity(), end);
+				buf.clear().limit(n);
+				while (buf.hasRemaining() && in.read(buf, end - n + buf.position()) >= 0);
+				for (int i = n - 1; i >= 0; i--)
+					if (buf.get(i) == '\n') {
+						final long complete = end - n + i + 1;
+						if (complete < size) {
+							log.warn("Removing incomplete record from journal segment {}", segment);
+							channel.truncate(complete);
+						}
+						return;
+					}
+				end -= n;
+			}
+			log.warn("Removing incomplete record from journal segment {}", segment);
+			channel.truncate(0);
+		}
+	}
+
+	/**
+	 * Removes the segments that have not been changed during the retention period. The active segment is never
+	 * removed.
+	 */
+	private void removeExpiredSegments() {
+		if (retention <= 0)
+			return;
+		final long expiry = System.currentTimeMillis() - retention;
+		try {
+			for (final long base : listSegments(directory)) {
+				if (base == segmentBase)
+					continue;
+				final Path p = directory.resolve(segmentName(base));
+				if (Files.getLastModifiedTime(p).toMillis() < expiry) {
+					Files.deleteIfExists(p);
+					log.debug("Removed expired journal segment {}", p);
+				}
+			}
+		} catch (IOException removeFailure) {
+			log.warn("Could not remove expired journal segments from {} : {}", directory, removeFailure.getMessage());
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (channel == null)
+			throw new IOException("Journal closed");
+	}
+
+	/**
+	 * Gets the file name of the segment that starts at the given offset.
+	 *
+	 * @param base	the offset of the first record of the segment
+	 * @return	the file name of the segment
+	 */
+	static String segmentName(final long base) {
+		return String.format("%s%020d%s", SEGMENT_PREFIX, base, SEGMENT_EXT);
+	}
+
+	/**
+	 * Gets the offsets of the segments in the given directory.
+	 *
+	 * @param dir	the journal directory
+	 * @return	the offsets of the first records of the segments, in ascending order
+	 * @throws IOException	when the directory could not be read
+	 */
+	static List<Long> listSegments(final Path dir) throws IOException {
+		final List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_EXT)) {
+			for (final Path f : files) {
+				final String name = f.getFileName().toString();
+				try {
+					segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+															   name.length() - SEGMENT_EXT.length())));
+				} catch (NumberFormatException notASegment) {
+					// Ignore other files
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the records of a {@link DeliveryJournal}, starting at a given offset. The reader can be used to tail the
+ * journal: when {@link #next()} returns <code>null</code> all records currently in the journal have been read and the
+ * consumer can try again later to get the records appended in the meantime.
+ * <p>To continue reading after a restart the consumer should store the offset returned by {@link #getOffset()} (or
+ * {@link JournalRecord#getNextOffset()}) after it has processed a record and use it to create the new reader. When the
+ * segment containing the stored offset has already been removed because of the retention period, the reader continues
+ * with the oldest segment still available.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class DeliveryJournalReader implements Closeable {
+	private static final Logger	log = LogManager.getLogger(DeliveryJournalReader.class);
+
+	/**
+	 * The directory of the journal
+	 */
+	private final Path	directory;
+	/**
+	 * The offset of the first record of the segment being read
+	 */
+	private long	segmentBase;
+	/**
+	 * The segment being read, <code>null</code> when no segment has been opened yet
+	 */
+	private FileChannel	channel;
+	/**
+	 * The position in the segment of the next byte to read into the buffer
+	 */
+	private long	filePos;
+
+	/**
+	 * Buffer containing the bytes read from the segment, of which the ones from <code>bufPos</code> up to <code>
+	 * bufLen</code> are not consumed yet
+	 */
+	private byte[]	buf = new byte[8192];
+	private int		bufPos;
+	private int		bufLen;
+
+	/**
+	 * The offset to start reading at when no segment has been opened yet
+	 */
+	private long	startOffset;
+
+	/**
+	 * Creates a new reader that starts at the given offset.
+	 *
+	 * @param dir		the directory of the journal
+	 * @param offset	the offset of the first record to read, use 0 to read from the start of the journal
+	 */
+	public DeliveryJournalReader(final Path dir, final long offset) {
+		this.directory = dir;
+		this.startOffset = offset;
+	}
+
+	/**
+	 * Gets the offset of the next record to read.
+	 *
+	 * @return	the offset of the next record
+	 */
+	public long getOffset() {
+		return channel == null ? startOffset : segmentBase + filePos - (bufLen - bufPos);
+	}
+
+	/**
+	 * Gets the next record from the journal.
+	 *
+	 * @return	the next record, or <code>null</code> if there are no more (complete) records in the journal at the moment
+	 * @throws IOException	when the journal could not be read or contains an invalid record
+	 */
+	public JournalRecord next() throws IOException {
+		if (channel == null && !open())
+			return null;
+		for (;;) {
+			for (int i = bufPos; i < bufLen; i++)
+				if (buf[i] == '\n') {
+					final JournalRecord record = JournalRecord.decode(getOffset(), buf, bufPos, i - bufPos);
+					bufPos = i + 1;
+					return record;
+				}
+			if (bufPos > 0) {
+				System.arraycopy(buf, bufPos, buf, 0, bufLen - bufPos);
+				bufLen -= bufPos;
+				bufPos = 0;
+			}
+			if (bufLen == buf.length)
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			final int n = channel.read(ByteBuffer.wrap(buf, bufLen, buf.length - bufLen), filePos);
+			if (n > 0) {
+				filePos += n;
+				bufLen += n;
+			} else if (bufLen > 0 || !nextSegment())
+				// Either the last record is still being written or there is no newer segment yet
+				return null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			startOffset = getOffset();
+			channel.close();
+			channel = null;
+			bufPos = bufLen = 0;
+		}
+	}
+
+	/**
+	 * Opens the segment containing the start offset.
+	 *
+	 * @return	<code>true</code> if a segment was opened, <code>false</code> if the journal has no segments yet
+	 * @throws IOException	when the segment could not be opened
+	 */
+	private boolean open() throws IOException {
+		final List<Long> segments = DeliveryJournal.listSegments(directory);
+		if (segments.isEmpty())
+			return false;
+		long base = segments.get(0);
+		if (startOffset < base) {
+			log.warn("Journal records from offset {} up to {} have been removed, continuing at {}", startOffset, base,
+					 base);
+			startOffset = base;
+		} else
+			for (final long s : segments)
+				if (s <= startOffset)
+					base = s;
+		openSegment(base);
+		filePos = startOffset - base;
+		return true;
+	}
+
+	/**
+	 * Switches to the next segment when the current one has been completely read and the writer has started a new
+	 * segment. As the writer may have appended records to the current segment after it was read up to the end and
+	 * before the new segment was started, the current segment is checked again for new records after the new segment
+	 * has been found. Only when there are none, records between the end of the current segment and the start of the
+	 * next one have been removed.
+	 *
+	 * @return	<code>true</code> if the next segment was opened or the current segment contains new records,
+	 * 			<code>false</code> if there is no next segment yet
+	 * @throws IOException	when the segment could not be opened
+	 */
+	private boolean nextSegment() throws IOException {
+		long next = -1;
+		for (final long s : DeliveryJournal.listSegments(directory))
+			if (s > segmentBase) {
+				next = s;
+				break;
+			}
+		if (next < 0)
+			return false;
+		// The writer only starts a new segment after the last record was appended to the current one, so its size is
+		// now final
+		if (channel.size() > filePos)
+			return true;
+		final long end = segmentBase + filePos;
+		if (next > end)
+			log.warn("Journal records from offset {} up to {} have been removed, continuing at {}", end, next, next);
+		channel.close();
+		openSegment(next);
+		filePos = 0;
+		return true;
+	}
+
+	private void openSegment(final long base) throws IOException {
+		segmentBase = base;
+		channel = FileChannel.open(directory.resolve(DeliveryJournal.segmentName(base)), StandardOpenOption.READ);
+	}
+}
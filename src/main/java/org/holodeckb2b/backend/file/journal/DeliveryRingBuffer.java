@@ -0,0 +1,341 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Is a memory-mapped ring buffer file used to notify back-end systems running on the same host of new deliveries with
+ * low latency. For each delivered message unit an entry referencing the meta-data file is written to the buffer, which
+ * consumers can read using a {@link DeliveryRingBufferReader} without any file system calls.
+ * <p>The file has the following binary layout, all numbers are little-endian:
+ * <pre>
+ * Header (128 bytes)
+ *   0   int   magic, 0x48425242 ("HBRB")
+ *   4   int   layout version, 1
+ *   8   int   capacity, the number of entries (a power of 2)
+ *   12  int   entry size in bytes (a multiple of 8)
+ *   64  long  the sequence number of the next entry to write
+ * Entries, starting at offset 128, the entry with sequence number <i>s</i> is at
+ * 128 + (s &amp; (capacity - 1)) * entry size
+ *   0   long  sequence number of the entry, 0 if never written, -1 while being written
+ *   8   byte  type of message unit: 1 = UserMessage, 2 = Receipt, 3 = Error, 4 = other Signal
+ *   9   byte  flags, bit 0 set when the message id or path did not fit in the entry and was truncated
+ *   10  short length in bytes of the message id
+ *   12  short length in bytes of the path of the meta-data file
+ *   16  long  time of delivery in milliseconds since the epoch
+ *   24  the UTF-8 encoded message id, directly followed by the UTF-8 encoded path of the meta-data file
+ * </pre>
+ * Sequence numbers start at 1. The writer marks an entry as being written by setting its sequence number to -1, then
+ * writes the content and finally sets the sequence number of the entry and the next sequence number in the header. A
+ * reader therefore knows it has read a complete entry when the entry's sequence number is the expected one both before
+ * and after reading the content. When a reader is more than <i>capacity</i> entries behind the writer, the entries it
+ * has not read yet have been overwritten.
+ * <p>A ring buffer file must only be written by one JVM. Within the JVM the instance is shared, see {@link
+ * #getInstance(Path, int, int)}. When an existing file with the same capacity and entry size is opened, the sequence
+ * numbering continues where it stopped, otherwise the file is reinitialised.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class DeliveryRingBuffer {
+	private static final Logger	log = LogManager.getLogger(DeliveryRingBuffer.class);
+
+	static final int MAGIC = 0x48425242;
+	static final int VERSION = 1;
+	static final int CAPACITY_OFFSET = 8;
+	static final int ENTRY_SIZE_OFFSET = 12;
+	static final int WRITE_SEQUENCE_OFFSET = 64;
+	static final int HEADER_SIZE = 128;
+
+	static final int ENTRY_TYPE_OFFSET = 8;
+	static final int ENTRY_FLAGS_OFFSET = 9;
+	static final int ENTRY_ID_LENGTH_OFFSET = 10;
+	static final int ENTRY_PATH_LENGTH_OFFSET = 12;
+	static final int ENTRY_TIMESTAMP_OFFSET = 16;
+	static final int ENTRY_DATA_OFFSET = 24;
+
+	static final byte FLAG_TRUNCATED = 1;
+	/**
+	 * The sequence number of an entry that is being written
+	 */
+	static final long BUSY = -1;
+
+	/**
+	 * The minimum size of an entry
+	 */
+	public static final int MIN_ENTRY_SIZE = 64;
+	/**
+	 * The maximum size of an entry
+	 */
+	public static final int MAX_ENTRY_SIZE = 32768;
+
+	/**
+	 * Access to the sequence numbers with memory ordering guarantees
+	 */
+	static final VarHandle	LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+	/**
+	 * Access to the magic number, which is cleared when the file is replaced
+	 */
+	static final VarHandle	INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * The ring buffers already opened, mapped by their file
+	 */
+	private static final Map<Path, DeliveryRingBuffer> buffers = new ConcurrentHashMap<>();
+
+	private final Path	file;
+	private final MappedByteBuffer	buffer;
+	private final int	capacity;
+	private final int	entrySize;
+	/**
+	 * The sequence number of the next entry to write
+	 */
+	private long	nextSequence;
+
+	/**
+	 * Gets the ring buffer in the given file. If the ring buffer is not opened yet in this JVM it is opened with the
+	 * given settings, otherwise the already opened ring buffer is returned.
+	 *
+	 * @param file		the ring buffer file
+	 * @param capacity	the number of entries, rounded up to a power of 2
+	 * @param entrySize	the size of an entry in bytes, rounded up to a multiple of 8
+	 * @return	the ring buffer
+	 * @throws IOException	when the file could not be opened
+	 */
+	public static DeliveryRingBuffer getInstance(final Path file, final int capacity, final int entrySize)
+																								throws IOException {
+		final Path key = file.toAbsolutePath().normalize();
+		DeliveryRingBuffer ringBuffer = buffers.get(key);
+		if (ringBuffer == null)
+			synchronized (buffers) {
+				ringBuffer = buffers.get(key);
+				if (ringBuffer == null) {
+					ringBuffer = new DeliveryRingBuffer(key, capacity, entrySize);
+					buffers.put(key, ringBuffer);
+				}
+			}
+		return ringBuffer;
+	}
+
+	/**
+	 * Opens the ring buffer in the given file. The file is created if it does not exist.
+	 *
+	 * @param file		the ring buffer file
+	 * @param capacity	the number of entries, rounded up to a power of 2
+	 * @param entrySize	the size of an entry in bytes, rounded up to a multiple of 8
+	 * @throws IOException	when the file could not be opened
+	 */
+	public DeliveryRingBuffer(final Path file, final int capacity, final int entrySize) throws IOException {
+		if (capacity < 1 || capacity > 1 << 24)
+			throw new IllegalArgumentException("Capacity must be between 1 and " + (1 << 24));
+		if (entrySize < MIN_ENTRY_SIZE || entrySize > MAX_ENTRY_SIZE)
+			throw new IllegalArgumentException("Entry size must be between " + MIN_ENTRY_SIZE + " and "
+												+ MAX_ENTRY_SIZE);
+		this.file = file;
+		int c = 1;
+		while (c < capacity)
+			c <<= 1;
+		this.capacity = c;
+		this.entrySize = (entrySize + 7) & ~7;
+		final long size = HEADER_SIZE + (long) this.capacity * this.entrySize;
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Ring buffer too large, reduce capacity or entry size");
+
+		MappedByteBuffer mapped = null;
+		if (Files.exists(file))
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				if (channel.size() == size && hasLayout(channel, this.capacity, this.entrySize)) {
+					mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+					mapped.order(ByteOrder.LITTLE_ENDIAN);
+					nextSequence = (long) LONG.getVolatile(mapped, WRITE_SEQUENCE_OFFSET);
+				}
+			}
+		buffer = mapped != null ? mapped : initialise(file, size, this.capacity, this.entrySize);
+		if (mapped == null)
+			nextSequence = 1;
+		log.debug("Opened delivery ring buffer {} with {} entries of {} bytes at sequence {}", file, this.capacity,
+				  this.entrySize, nextSequence);
+	}
+
+	/**
+	 * @return	the ring buffer file
+	 */
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return	the number of entries in the ring buffer
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return	the size of an entry in bytes
+	 */
+	public int getEntrySize() {
+		return entrySize;
+	}
+
+	/**
+	 * Writes an entry for a delivered message unit to the ring buffer. When the message id and path of the meta-data
+	 * file together don't fit in the entry they are truncated and the entry is flagged as such.
+	 *
+	 * @param type			the type of the message unit, as used in the {@link DeliveryJournal}
+	 * @param messageId		the message id of the message unit
+	 * @param metaDataFile	the path of the meta-data file
+	 * @return	the sequence number of the written entry
+	 */
+	public long publish(final String type, final String messageId, final String metaDataFile) {
+		final byte[] id = messageId != null ? messageId.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		final byte[] path = metaDataFile != null ? metaDataFile.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		final int available = entrySize - ENTRY_DATA_OFFSET;
+		final int idLength = Math.min(id.length, available);
+		final int pathLength = Math.min(path.length, available - idLength);
+		final boolean truncated = idLength < id.length || pathLength < path.length;
+		if (truncated)
+			log.warn("Entry for message unit [{}] does not fit in ring buffer entry, truncated", messageId);
+
+		synchronized (this) {
+			final long sequence = nextSequence++;
+			final int base = HEADER_SIZE + (int) (sequence & (capacity - 1)) * entrySize;
+			LONG.setVolatile(buffer, base, BUSY);
+			VarHandle.storeStoreFence();
+			buffer.put(base + ENTRY_TYPE_OFFSET, typeCode(type));
+			buffer.put(base + ENTRY_FLAGS_OFFSET, truncated ? FLAG_TRUNCATED : 0);
+			buffer.putShort(base + ENTRY_ID_LENGTH_OFFSET, (short) idLength);
+			buffer.putShort(base + ENTRY_PATH_LENGTH_OFFSET, (short) pathLength);
+			buffer.putLong(base + ENTRY_TIMESTAMP_OFFSET, System.currentTimeMillis());
+			final ByteBuffer data = buffer.duplicate();
+			data.position(base + ENTRY_DATA_OFFSET);
+			data.put(id, 0, idLength).put(path, 0, pathLength);
+			LONG.setRelease(buffer, base, sequence);
+			LONG.setVolatile(buffer, WRITE_SEQUENCE_OFFSET, sequence + 1);
+			return sequence;
+		}
+	}
+
+	/**
+	 * Gets the code used in the ring buffer for the type of message unit.
+	 *
+	 * @param type	the type of message unit, as used in the {@link DeliveryJournal}
+	 * @return	the code of the type
+	 */
+	static byte typeCode(final String type) {
+		switch (type != null ? type : "") {
+		case "UserMessage" : return 1;
+		case "Receipt" : return 2;
+		case "Error" : return 3;
+		default : return 4;
+		}
+	}
+
+	/**
+	 * Gets the type of message unit for the code used in the ring buffer.
+	 *
+	 * @param code	the code of the type
+	 * @return	the type of message unit, as used in the {@link DeliveryJournal}
+	 */
+	static String typeName(final byte code) {
+		switch (code) {
+		case 1 : return "UserMessage";
+		case 2 : return "Receipt";
+		case 3 : return "Error";
+		default : return "Signal";
+		}
+	}
+
+	/**
+	 * Creates a new, empty ring buffer with the given layout in the file. The ring buffer is prepared in a temporary
+	 * file which then replaces the existing file, so readers that still have the old file mapped are not affected by
+	 * its content or size changing. The magic number of the old file is cleared afterwards to signal these readers that
+	 * they must reopen the file.
+	 */
+	private static MappedByteBuffer initialise(final Path file, final long size, final int capacity,
+											   final int entrySize) throws IOException {
+		final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(),
+											   ".tmp");
+		try {
+			final MappedByteBuffer mapped;
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			mapped.putInt(0, MAGIC);
+			mapped.putInt(4, VERSION);
+			mapped.putInt(CAPACITY_OFFSET, capacity);
+			mapped.putInt(ENTRY_SIZE_OFFSET, entrySize);
+			LONG.setVolatile(mapped, WRITE_SEQUENCE_OFFSET, 1L);
+
+			FileChannel old = null;
+			try {
+				if (Files.exists(file))
+					old = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				if (old != null && hasMagic(old)) {
+					log.debug("Replaced delivery ring buffer {} with new layout", file);
+					final ByteBuffer cleared = ByteBuffer.allocate(4);
+					while (cleared.hasRemaining() && old.write(cleared, cleared.position()) >= 0);
+				}
+			} finally {
+				if (old != null)
+					old.close();
+			}
+			return mapped;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Checks whether the file starts with the magic number of a ring buffer.
+	 */
+	private static boolean hasMagic(final FileChannel channel) throws IOException {
+		final ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		while (magic.hasRemaining() && channel.read(magic, magic.position()) >= 0);
+		return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+	}
+
+	/**
+	 * Checks whether the file contains a ring buffer with the given layout.
+	 */
+	private static boolean hasLayout(final FileChannel channel, final int capacity, final int entrySize)
+																								throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		while (header.hasRemaining() && channel.read(header, header.position()) >= 0);
+		return !header.hasRemaining() && header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+				&& header.getInt(CAPACITY_OFFSET) == capacity && header.getInt(ENTRY_SIZE_OFFSET) == entrySize;
+	}
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.CAPACITY_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.ENTRY_DATA_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.ENTRY_FLAGS_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.ENTRY_ID_LENGTH_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.ENTRY_PATH_LENGTH_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.ENTRY_SIZE_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.ENTRY_TIMESTAMP_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.ENTRY_TYPE_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.FLAG_TRUNCATED;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.HEADER_SIZE;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.INT;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.LONG;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.MAGIC;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.VERSION;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.WRITE_SEQUENCE_OFFSET;
+import static org.holodeckb2b.backend.file.journal.DeliveryRingBuffer.typeName;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads the entries of a {@link DeliveryRingBuffer}, see there for the layout of the file. The reader maps the file
+ * in memory, so checking for new entries does not require any file system call. A consumer can either poll for new
+ * entries using {@link #poll()} or wait for them using {@link #await(long, TimeUnit)}, which first spins for a short
+ * time and then parks the thread between checks.
+ * <p>When the reader falls more than the capacity of the ring buffer behind the writer, entries are overwritten before
+ * they are read. The reader then continues with the oldest entry still available and adds the number of missed
+ * entries to {@link #getMissedCount()}. The consumer can use the {@link DeliveryJournal} to find the missed deliveries.
+ * <p>When the writer reinitialises the ring buffer because its layout changed, the file is replaced and the reader
+ * reopens it. Reading then continues with the oldest entry available in the new ring buffer. The same happens when the
+ * writer's sequence number is lower than the next sequence number to read, for example because the reader was started
+ * with a sequence number stored before the ring buffer was reinitialised.
+ * <p>A reader is not thread safe, each consumer thread should use its own reader.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class DeliveryRingBufferReader {
+	/**
+	 * The number of times to check for a new entry before parking the thread
+	 */
+	private static final int SPIN_TRIES = 1000;
+	/**
+	 * The time to park the thread between checks for a new entry
+	 */
+	private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final Path	file;
+	private MappedByteBuffer	buffer;
+	private int	capacity;
+	private int	entrySize;
+	/**
+	 * Buffer to copy the data of an entry into
+	 */
+	private byte[]	data;
+	/**
+	 * The sequence number of the next entry to read
+	 */
+	private long	nextSequence;
+	/**
+	 * The number of entries that were overwritten before they could be read
+	 */
+	private long	missed;
+
+	/**
+	 * Creates a new reader that starts with the next entry that will be written.
+	 *
+	 * @param file	the ring buffer file
+	 * @throws IOException	when the file could not be opened or is not a ring buffer
+	 */
+	public DeliveryRingBufferReader(final Path file) throws IOException {
+		this(file, -1);
+	}
+
+	/**
+	 * Creates a new reader that starts with the entry with the given sequence number. This can be used by a consumer
+	 * to continue reading after a restart, provided that the entries have not been overwritten in the meantime.
+	 *
+	 * @param file		the ring buffer file
+	 * @param sequence	the sequence number of the first entry to read, a negative value to start with the next entry
+	 * 					that will be written
+	 * @throws IOException	when the file could not be opened or is not a ring buffer
+	 */
+	public DeliveryRingBufferReader(final Path file, final long sequence) throws IOException {
+		this.file = file;
+		map();
+		nextSequence = sequence < 0 ? getWriteSequence() : sequence;
+	}
+
+	/**
+	 * Gets the sequence number of the next entry to read. A consumer can store this number to continue reading at this
+	 * entry after a restart.
+	 *
+	 * @return	sequence number of the next entry
+	 */
+	public long getSequence() {
+		return nextSequence;
+	}
+
+	/**
+	 * @return	the number of entries that were overwritten before they could be read
+	 */
+	public long getMissedCount() {
+		return missed;
+	}
+
+	/**
+	 * Gets the next entry from the ring buffer.
+	 *
+	 * @return	the next entry, or <code>null</code> if no new entry is available
+	 * @throws UncheckedIOException	when the ring buffer was reinitialised and the new file could not be opened
+	 */
+	public RingBufferEntry poll() {
+		if ((int) INT.getAcquire(buffer, 0) != MAGIC)
+			try {
+				map();
+				nextSequence = Math.max(1, getWriteSequence() - capacity);
+			} catch (IOException reopenFailed) {
+				throw new UncheckedIOException(reopenFailed);
+			}
+		for (;;) {
+			// The write sequence is read first, so when it shows the entry was written, the entry itself shows it too
+			final long writeSequence = getWriteSequence();
+			if (writeSequence < nextSequence)
+				// The ring buffer was reinitialised after the sequence number was stored
+				nextSequence = Math.max(1, writeSequence - capacity);
+			if (writeSequence <= nextSequence)
+				return null;
+
+			final int base = HEADER_SIZE + (int) (nextSequence & (capacity - 1)) * entrySize;
+			final long sequence = (long) LONG.getAcquire(buffer, base);
+			if (sequence == nextSequence) {
+				final byte type = buffer.get(base + ENTRY_TYPE_OFFSET);
+				final byte flags = buffer.get(base + ENTRY_FLAGS_OFFSET);
+				final int idLength = Math.min(buffer.getShort(base + ENTRY_ID_LENGTH_OFFSET) & 0xFFFF, data.length);
+				final int pathLength = Math.min(buffer.getShort(base + ENTRY_PATH_LENGTH_OFFSET) & 0xFFFF,
+												data.length - idLength);
+				final long timestamp = buffer.getLong(base + ENTRY_TIMESTAMP_OFFSET);
+				final ByteBuffer content = buffer.duplicate();
+				content.position(base + ENTRY_DATA_OFFSET);
+				content.get(data, 0, idLength + pathLength);
+				VarHandle.loadLoadFence();
+				if ((long) LONG.getAcquire(buffer, base) == sequence) {
+					nextSequence++;
+					return new RingBufferEntry(sequence, typeName(type),
+											   new String(data, 0, idLength, StandardCharsets.UTF_8),
+											   new String(data, idLength, pathLength, StandardCharsets.UTF_8),
+											   Instant.ofEpochMilli(timestamp), (flags & FLAG_TRUNCATED) != 0);
+				}
+			}
+			// The entry has been overwritten, continue with the oldest entry that may still be available
+			final long oldest = Math.max(nextSequence + 1, writeSequence - capacity);
+			missed += oldest - nextSequence;
+			nextSequence = oldest;
+		}
+	}
+
+	/**
+	 * Waits for the next entry from the ring buffer. The reader first spins for a short time checking for a new entry
+	 * and then parks the thread between checks, so the latency stays low without using a full processor core while the
+	 * back-end is idle.
+	 *
+	 * @param timeout	the maximum time to wait
+	 * @param unit		the unit of the timeout
+	 * @return	the next entry, or <code>null</code> if no new entry became available within the timeout
+	 * @throws InterruptedException	when the thread is interrupted while waiting
+	 */
+	public RingBufferEntry await(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		int tries = 0;
+		for (;;) {
+			final RingBufferEntry entry = poll();
+			if (entry != null)
+				return entry;
+			if (System.nanoTime() - deadline >= 0)
+				return null;
+			if (Thread.interrupted())
+				throw new InterruptedException();
+			if (tries < SPIN_TRIES) {
+				tries++;
+				Thread.onSpinWait();
+			} else
+				LockSupport.parkNanos(PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Maps the ring buffer file in memory.
+	 *
+	 * @throws IOException	when the file could not be opened or is not a ring buffer
+	 */
+	private void map() throws IOException {
+		final MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not a delivery ring buffer: " + file);
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		mapped.order(ByteOrder.LITTLE_ENDIAN);
+		if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION)
+			throw new IOException("Not a delivery ring buffer or unsupported version: " + file);
+		final int c = mapped.getInt(CAPACITY_OFFSET);
+		final int s = mapped.getInt(ENTRY_SIZE_OFFSET);
+		if (mapped.capacity() < HEADER_SIZE + (long) c * s)
+			throw new IOException("Delivery ring buffer file is incomplete: " + file);
+		buffer = mapped;
+		capacity = c;
+		entrySize = s;
+		data = new byte[s - ENTRY_DATA_OFFSET];
+	}
+
+	private long getWriteSequence() {
+		return (long) LONG.getAcquire(buffer, WRITE_SEQUENCE_OFFSET);
+	}
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Is a record of the {@link DeliveryJournal} describing one delivered message unit. In the journal a record is written
+ * as one line of UTF-8 text with the fields separated by tabs:
+ * <pre>«timestamp»	«type»	«message id»	«meta-data file»[	«payload file»]*</pre>
+ * where the timestamp is in ISO-8601 format and the type is either <i>UserMessage</i>, <i>Receipt</i>, <i>Error</i> or
+ * <i>Signal</i>. Backslashes, tabs and line breaks in the fields are escaped as <code>\\</code>, <code>\t</code>,
+ * <code>\n</code> and <code>\r</code>.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class JournalRecord {
+
+	private final long		offset;
+	private final long		nextOffset;
+	private final Instant	timestamp;
+	private final String	type;
+	private final String	messageId;
+	private final String	metaDataFile;
+	private final List<String>	payloadFiles;
+
+	/**
+	 * Creates a new record.
+	 *
+	 * @param offset		the offset of the record in the journal
+	 * @param nextOffset	the offset of the next record in the journal
+	 * @param timestamp		the time the message unit was delivered
+	 * @param type			the type of the message unit
+	 * @param messageId		the message id of the message unit
+	 * @param metaDataFile	the path of the meta-data file
+	 * @param payloadFiles	the paths of the payload files
+	 */
+	JournalRecord(final long offset, final long nextOffset, final Instant timestamp, final String type,
+				  final String messageId, final String metaDataFile, final List<String> payloadFiles) {
+		this.offset = offset;
+		this.nextOffset = nextOffset;
+		this.timestamp = timestamp;
+		this.type = type;
+		this.messageId = messageId;
+		this.metaDataFile = metaDataFile;
+		this.payloadFiles = Collections.unmodifiableList(payloadFiles);
+	}
+
+	/**
+	 * Gets the offset of the record in the journal.
+	 *
+	 * @return	the offset of the record
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Gets the offset of the record following this record. This is the offset a consumer should store to continue
+	 * reading after this record.
+	 *
+	 * @return	the offset of the next record
+	 */
+	public long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * @return	the time the message unit was delivered
+	 */
+	public Instant getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return	the type of the delivered message unit
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return	the message id of the delivered message unit
+	 */
+	public String getMessageId() {
+		return messageId;
+	}
+
+	/**
+	 * @return	the path of the meta-data file of the delivered message unit
+	 */
+	public String getMetaDataFile() {
+		return metaDataFile;
+	}
+
+	/**
+	 * @return	the paths of the payload files of the delivered message unit, empty if there are none
+	 */
+	public List<String> getPayloadFiles() {
+		return payloadFiles;
+	}
+
+	/**
+	 * Encodes a record.
+	 *
+	 * @param timestamp		the time the message unit was delivered
+	 * @param type			the type of the message unit
+	 * @param messageId		the message id of the message unit
+	 * @param metaDataFile	the path of the meta-data file
+	 * @param payloadFiles	the paths of the payload files
+	 * @return	the encoded record, including the line break
+	 */
+	static byte[] encode(final Instant timestamp, final String type, final String messageId,
+						 final String metaDataFile, final List<String> payloadFiles) {
+		final StringBuilder sb = new StringBuilder(128);
+		sb.append(timestamp.toString());
+		escape(sb.append('\t'), type);
+		escape(sb.append('\t'), messageId);
+		escape(sb.append('\t'), metaDataFile);
+		if (payloadFiles != null)
+			for (final String p : payloadFiles)
+				escape(sb.append('\t'), p);
+		return sb.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decodes a record.
+	 *
+	 * @param offset		the offset of the record in the journal
+	 * @param buf			the buffer containing the encoded record
+	 * @param start			the position of the encoded record in the buffer
+	 * @param length		the length of the encoded record, excluding the line break
+	 * @return	the decoded record
+	 * @throws IOException	when the record is not correctly encoded
+	 */
+	static JournalRecord decode(final long offset, final byte[] buf, final int start, final int length)
+																								throws IOException {
+		final String s = new String(buf, start, length, StandardCharsets.UTF_8);
+		final List<String> fields = new ArrayList<>();
+		final StringBuilder field = new StringBuilder();
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '\t') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\\' && i + 1 < s.length()) {
+				final char e = s.charAt(++i);
+				field.append(e == 't' ? '\t' : e == 'n' ? '\n' : e == 'r' ? '\r' : e);
+			} else
+				field.append(c);
+		}
+		fields.add(field.toString());
+		if (fields.size() < 4)
+			throw new IOException("Invalid journal record at offset " + offset);
+		try {
+			return new JournalRecord(offset, offset + length + 1, Instant.parse(fields.get(0)), fields.get(1),
+									 fields.get(2), fields.get(3), fields.subList(4, fields.size()));
+		} catch (DateTimeParseException invalidTime) {
+			throw new IOException("Invalid journal record at offset " + offset);
+		}
+	}
+
+	private static void escape(final StringBuilder sb, final String s) {
+		if (s == null)
+			return;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			switch (c) {
+			case '\\' : sb.append("\\\\"); break;
+			case '\t' : sb.append("\\t"); break;
+			case '\n' : sb.append("\\n"); break;
+			case '\r' : sb.append("\\r"); break;
+			default : sb.append(c);
+			}
+		}
+	}
+}
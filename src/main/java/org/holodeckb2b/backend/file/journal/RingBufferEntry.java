@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import java.time.Instant;
+
+/**
+ * Is an entry of the {@link DeliveryRingBuffer} describing one delivered message unit.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class RingBufferEntry {
+
+	private final long		sequence;
+	private final String	type;
+	private final String	messageId;
+	private final String	metaDataFile;
+	private final Instant	timestamp;
+	private final boolean	truncated;
+
+	RingBufferEntry(final long sequence, final String type, final String messageId, final String metaDataFile,
+					final Instant timestamp, final boolean truncated) {
+		this.sequence = sequence;
+		this.type = type;
+		this.messageId = messageId;
+		this.metaDataFile = metaDataFile;
+		this.timestamp = timestamp;
+		this.truncated = truncated;
+	}
+
+	/**
+	 * @return	the sequence number of the entry
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return	the type of the delivered message unit, as used in the {@link DeliveryJournal}
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return	the message id of the delivered message unit
+	 */
+	public String getMessageId() {
+		return messageId;
+	}
+
+	/**
+	 * @return	the path of the meta-data file of the delivered message unit
+	 */
+	public String getMetaDataFile() {
+		return metaDataFile;
+	}
+
+	/**
+	 * @return	the time the message unit was delivered
+	 */
+	public Instant getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Indicates whether the message id or path of the meta-data file did not fit in the entry and was truncated. The
+	 * consumer should then use the {@link DeliveryJournal} or the delivery directory to find the delivered files.
+	 *
+	 * @return	<code>true</code> if the entry was truncated, <code>false</code> if not
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+}
@@ -38,10 +38,10 @@ import org.simpleframework.xml.Element;
 public class CollaborationInfo implements ICollaborationInfo {
 
     @Element(name = "AgreementRef", required = false)
-    private AgreementReference  agreementRef;
+    AgreementReference  agreementRef;
 
     @Element(name = "Service", required = false)
-    private Service             service;
+    Service             service;
 
     @Element(name = "Action", required = false)
     private String              action;
@@ -0,0 +1,35 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import java.io.IOException;
+
+/**
+ * Indicates that a MMD document is not valid according to the MMD schema. The message of the exception describes the
+ * validation error and where in the document it was found.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ * @see MMDSchema
+ */
+public class InvalidMMDException extends IOException {
+	private static final long serialVersionUID = 6054135467018426314L;
+
+	public InvalidMMDException(final String message) {
+		super(message);
+	}
+}
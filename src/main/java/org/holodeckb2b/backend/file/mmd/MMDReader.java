@@ -0,0 +1,535 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.holodeckb2b.interfaces.general.IPartyId;
+import org.holodeckb2b.interfaces.general.IProperty;
+import org.simpleframework.xml.core.PersistenceException;
+
+/**
+ * Reads a MMD document into a {@link MessageMetaData} object using a StAX parser. Unlike the Simple XML {@link
+ * org.simpleframework.xml.core.Persister} that is used by {@link MessageMetaData#createFromStream(InputStream)} this
+ * reader does not use reflection but directly creates the objects while streaming through the document, which makes
+ * it considerably faster.
+ * <p>The reader applies the same rules as the Persister does based on the annotations of the MMD classes: elements
+ * and attributes not defined in the schema are ignored on the root element but not allowed on the child elements,
+ * elements may occur only once (except when in a list), text content is not trimmed and empty elements result in a
+ * <code>null</code> value. Also the validation of the <code>PartInfo</code> elements, i.e. the location rule checked
+ * by {@link PartInfo#validate()}, is executed. As a result both methods create the same object for the same input and
+ * reject the same documents, although the error messages are different.
+ * <p>Optionally the document can be validated against the MMD schema while it is read. Note that the schema is more
+ * restrictive than the rules applied by the Persister, for example it requires the <code>CollaborationInfo</code>
+ * element.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public final class MMDReader {
+
+	/**
+	 * The factory used to create the StAX readers. As it is not changed after its configuration it can be shared
+	 * between threads.
+	 */
+	private static final XMLInputFactory XML_INPUT_FACTORY;
+	static {
+		XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private MMDReader() {}
+
+	/**
+	 * Reads the MMD document from the specified file.
+	 *
+	 * @param mmdFile	the file containing the MMD document
+	 * @return	the {@link MessageMetaData} object representing the MMD document
+	 * @throws IOException	when the file cannot be read or does not contain a valid MMD document
+	 */
+	public static MessageMetaData read(final File mmdFile) throws IOException {
+		return read(mmdFile, false);
+	}
+
+	/**
+	 * Reads the MMD document from the specified file and optionally validates it against the MMD schema.
+	 *
+	 * @param mmdFile	the file containing the MMD document
+	 * @param validate	indicates whether the document should be validated against the MMD schema
+	 * @return	the {@link MessageMetaData} object representing the MMD document
+	 * @throws InvalidMMDException	when validation is requested and the document is not valid according to the schema
+	 * @throws IOException	when the file cannot be read or does not contain a valid MMD document
+	 */
+	public static MessageMetaData read(final File mmdFile, final boolean validate) throws IOException {
+		try (FileInputStream fis = new FileInputStream(mmdFile)) {
+			return read(fis, validate);
+		}
+	}
+
+	/**
+	 * Reads the MMD document from the given input stream.
+	 *
+	 * @param is	the input stream containing the MMD document
+	 * @return	the {@link MessageMetaData} object representing the MMD document
+	 * @throws IOException	when the stream cannot be read or does not contain a valid MMD document
+	 */
+	public static MessageMetaData read(final InputStream is) throws IOException {
+		return read(is, false);
+	}
+
+	/**
+	 * Reads the MMD document from the given input stream and optionally validates it against the MMD schema. The
+	 * validation is done while the document is read, so the document is only parsed once.
+	 *
+	 * @param is		the input stream containing the MMD document
+	 * @param validate	indicates whether the document should be validated against the MMD schema
+	 * @return	the {@link MessageMetaData} object representing the MMD document
+	 * @throws InvalidMMDException	when validation is requested and the document is not valid according to the schema
+	 * @throws IOException	when the stream cannot be read or does not contain a valid MMD document
+	 * @see MMDSchema
+	 */
+	public static MessageMetaData read(final InputStream is, final boolean validate) throws IOException {
+		XMLStreamReader reader = null;
+		try {
+			reader = XML_INPUT_FACTORY.createXMLStreamReader(is);
+			if (!validate)
+				return read(reader);
+
+			reader = new ValidatingStreamReader(reader, MMDSchema.getValidatorHandler());
+			final MessageMetaData mmd = read(reader);
+			// Read the remainder of the document so the validator can complete the validation
+			while (reader.hasNext())
+				reader.next();
+			return mmd;
+		} catch (XMLStreamException | PersistenceException parseError) {
+			if (reader instanceof ValidatingStreamReader
+				&& ((ValidatingStreamReader) reader).getValidationError() != null) {
+				final Location l = reader.getLocation();
+				throw new InvalidMMDException("MMD document is not valid (line " + l.getLineNumber() + ", column "
+											+ l.getColumnNumber() + "): "
+											+ ((ValidatingStreamReader) reader).getValidationError().getMessage());
+			}
+			throw new IOException("Could not parse MMD from stream", parseError);
+		} finally {
+			if (reader != null)
+				try {
+					reader.close();
+				} catch (XMLStreamException closeError) {
+					// Nothing we can do about it, the stream itself is closed by the caller
+				}
+		}
+	}
+
+	/**
+	 * Reads the MMD document from the given StAX reader, which must be positioned before or at the start of the root
+	 * element of the document.
+	 *
+	 * @param reader	the StAX reader to read the MMD document from
+	 * @return	the {@link MessageMetaData} object representing the MMD document
+	 * @throws XMLStreamException	when the document could not be parsed or contains elements or attributes that are
+	 * 								not allowed
+	 * @throws PersistenceException when a <code>PartInfo</code> element is not valid
+	 */
+	static MessageMetaData read(final XMLStreamReader reader) throws XMLStreamException, PersistenceException {
+		if (reader.getEventType() != XMLStreamConstants.START_ELEMENT)
+			reader.nextTag();
+
+		final MessageMetaData mmd = new MessageMetaData();
+		int seen = 0;
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "MessageInfo" :
+				seen = once(reader, seen, 1);
+				mmd.messageInfo = readMessageInfo(reader);
+				break;
+			case "PartyInfo" :
+				seen = once(reader, seen, 2);
+				mmd.partyInfo = readPartyInfo(reader);
+				break;
+			case "CollaborationInfo" :
+				seen = once(reader, seen, 4);
+				mmd.collabInfo = readCollaborationInfo(reader);
+				break;
+			case "MessageProperties" :
+				seen = once(reader, seen, 8);
+				mmd.msgProperties = readProperties(reader);
+				break;
+			case "PayloadInfo" :
+				seen = once(reader, seen, 16);
+				mmd.payloadInfo = readPayloadInfo(reader);
+				break;
+			default :
+				// As the root element is not strict, unknown elements are ignored
+				skipElement(reader);
+			}
+		}
+		return mmd;
+	}
+
+	private static MessageInfo readMessageInfo(final XMLStreamReader reader) throws XMLStreamException {
+		final MessageInfo mi = new MessageInfo();
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+			if ("mpc".equals(reader.getAttributeLocalName(i)))
+				mi.setMpc(reader.getAttributeValue(i));
+			else
+				throw unknownAttribute(reader, i);
+
+		int seen = 0;
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "Timestamp" :
+				seen = once(reader, seen, 1);
+				mi.timestamp = readText(reader);
+				break;
+			case "MessageId" :
+				seen = once(reader, seen, 2);
+				mi.setMessageId(readText(reader));
+				break;
+			case "RefToMessageId" :
+				seen = once(reader, seen, 4);
+				mi.setRefToMessageId(readText(reader));
+				break;
+			default :
+				throw unknownElement(reader);
+			}
+		}
+		return mi;
+	}
+
+	private static PartyInfo readPartyInfo(final XMLStreamReader reader) throws XMLStreamException {
+		checkNoAttributes(reader);
+		final PartyInfo pi = new PartyInfo();
+		int seen = 0;
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "From" :
+				seen = once(reader, seen, 1);
+				pi.sender = readTradingPartner(reader);
+				break;
+			case "To" :
+				seen = once(reader, seen, 2);
+				pi.receiver = readTradingPartner(reader);
+				break;
+			default :
+				throw unknownElement(reader);
+			}
+		}
+		return pi;
+	}
+
+	private static TradingPartner readTradingPartner(final XMLStreamReader reader) throws XMLStreamException {
+		checkNoAttributes(reader);
+		final TradingPartner tp = new TradingPartner();
+		final ArrayList<IPartyId> partyIds = new ArrayList<>(1);
+		boolean roleSeen = false;
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "PartyId" :
+				final PartyId pid = new PartyId();
+				for (int i = 0; i < reader.getAttributeCount(); i++)
+					if ("type".equals(reader.getAttributeLocalName(i)))
+						pid.setType(reader.getAttributeValue(i));
+					else
+						throw unknownAttribute(reader, i);
+				pid.setId(readRequiredText(reader));
+				partyIds.add(pid);
+				break;
+			case "Role" :
+				if (roleSeen)
+					throw duplicateElement(reader);
+				roleSeen = true;
+				tp.setRole(readText(reader));
+				break;
+			default :
+				throw unknownElement(reader);
+			}
+		}
+		if (partyIds.isEmpty())
+			throw new XMLStreamException("Missing required PartyId element", reader.getLocation());
+		tp.partyIds = partyIds;
+		return tp;
+	}
+
+	private static CollaborationInfo readCollaborationInfo(final XMLStreamReader reader) throws XMLStreamException {
+		checkNoAttributes(reader);
+		final CollaborationInfo ci = new CollaborationInfo();
+		int seen = 0;
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "AgreementRef" :
+				seen = once(reader, seen, 1);
+				final AgreementReference ar = new AgreementReference();
+				for (int i = 0; i < reader.getAttributeCount(); i++)
+					switch (reader.getAttributeLocalName(i)) {
+					case "type" :
+						ar.setType(reader.getAttributeValue(i)); break;
+					case "pmode" :
+						ar.setPModeId(reader.getAttributeValue(i)); break;
+					default :
+						throw unknownAttribute(reader, i);
+					}
+				ar.setName(readText(reader));
+				ci.agreementRef = ar;
+				break;
+			case "Service" :
+				seen = once(reader, seen, 2);
+				final Service svc = new Service();
+				for (int i = 0; i < reader.getAttributeCount(); i++)
+					if ("type".equals(reader.getAttributeLocalName(i)))
+						svc.setType(reader.getAttributeValue(i));
+					else
+						throw unknownAttribute(reader, i);
+				svc.setName(readRequiredText(reader));
+				ci.service = svc;
+				break;
+			case "Action" :
+				seen = once(reader, seen, 4);
+				ci.setAction(readText(reader));
+				break;
+			case "ConversationId" :
+				seen = once(reader, seen, 8);
+				ci.setConversationId(readText(reader));
+				break;
+			default :
+				throw unknownElement(reader);
+			}
+		}
+		return ci;
+	}
+
+	private static ArrayList<IProperty> readProperties(final XMLStreamReader reader) throws XMLStreamException {
+		checkNoAttributes(reader);
+		final ArrayList<IProperty> properties = new ArrayList<>();
+		while (nextChild(reader)) {
+			if (!"Property".equals(reader.getLocalName()))
+				throw unknownElement(reader);
+			final Property p = new Property();
+			for (int i = 0; i < reader.getAttributeCount(); i++)
+				switch (reader.getAttributeLocalName(i)) {
+				case "name" :
+					p.setName(reader.getAttributeValue(i)); break;
+				case "type" :
+					p.setType(reader.getAttributeValue(i)); break;
+				default :
+					throw unknownAttribute(reader, i);
+				}
+			if (p.getName() == null)
+				throw new XMLStreamException("Missing required name attribute on Property", reader.getLocation());
+			p.setValue(readRequiredText(reader));
+			properties.add(p);
+		}
+		return properties;
+	}
+
+	private static PayloadInfo readPayloadInfo(final XMLStreamReader reader) throws XMLStreamException,
+																					 PersistenceException {
+		final PayloadInfo pli = new PayloadInfo();
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+			if ("deleteFilesAfterSubmit".equals(reader.getAttributeLocalName(i)))
+				pli.setDeleteFilesAfterSubmit(Boolean.valueOf(reader.getAttributeValue(i)));
+			else
+				throw unknownAttribute(reader, i);
+
+		final ArrayList<PartInfo> parts = new ArrayList<>();
+		while (nextChild(reader)) {
+			if (!"PartInfo".equals(reader.getLocalName()))
+				throw unknownElement(reader);
+			parts.add(readPartInfo(reader));
+		}
+		if (parts.isEmpty())
+			throw new XMLStreamException("Missing required PartInfo element", reader.getLocation());
+		pli.payloads = parts;
+		return pli;
+	}
+
+	private static PartInfo readPartInfo(final XMLStreamReader reader) throws XMLStreamException,
+																			   PersistenceException {
+		final PartInfo pi = new PartInfo();
+		pi.containment = "attachment";
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+			switch (reader.getAttributeLocalName(i)) {
+			case "containment" :
+				// Like the Persister, treat the value declared as "empty" value of the attribute as null
+				final String containment = reader.getAttributeValue(i);
+				pi.containment = "attachment".equals(containment) ? null : containment;
+				break;
+			case "uri" :
+				pi.setPayloadURI(reader.getAttributeValue(i)); break;
+			case "mimeType" :
+				pi.setMimeType(reader.getAttributeValue(i)); break;
+			case "location" :
+				pi.setContentLocation(reader.getAttributeValue(i)); break;
+			default :
+				throw unknownAttribute(reader, i);
+			}
+
+		int seen = 0;
+		while (nextChild(reader)) {
+			switch (reader.getLocalName()) {
+			case "Schema" :
+				seen = once(reader, seen, 1);
+				final SchemaReference schema = new SchemaReference();
+				for (int i = 0; i < reader.getAttributeCount(); i++)
+					switch (reader.getAttributeLocalName(i)) {
+					case "namespace" :
+						schema.setNamespace(reader.getAttributeValue(i)); break;
+					case "version" :
+						schema.setVersion(reader.getAttributeValue(i)); break;
+					case "location" :
+						schema.setLocation(reader.getAttributeValue(i)); break;
+					default :
+						throw unknownAttribute(reader, i);
+					}
+				if (schema.getLocation() == null)
+					throw new XMLStreamException("Missing required location attribute on Schema",
+												 reader.getLocation());
+				// The Schema element has no content, but the Persister does accept (and ignore) text
+				if (nextChild(reader))
+					throw unknownElement(reader);
+				pi.schemaRef = schema;
+				break;
+			case "Description" :
+				seen = once(reader, seen, 2);
+				final Description descr = new Description();
+				for (int i = 0; i < reader.getAttributeCount(); i++)
+					if ("lang".equals(reader.getAttributeLocalName(i)))
+						descr.setLanguage(reader.getAttributeValue(i));
+					else
+						throw unknownAttribute(reader, i);
+				descr.setText(readRequiredText(reader));
+				pi.description = descr;
+				break;
+			case "PartProperties" :
+				seen = once(reader, seen, 4);
+				pi.properties = readProperties(reader);
+				break;
+			default :
+				throw unknownElement(reader);
+			}
+		}
+		pi.validate();
+		return pi;
+	}
+
+	/**
+	 * Moves the reader to the next child element of the current element, skipping any text, comments and processing
+	 * instructions.
+	 *
+	 * @param reader	the StAX reader
+	 * @return	<code>true</code> if the reader is positioned at the start of a child element, <code>false</code> if
+	 * 			it is at the end of the current element
+	 * @throws XMLStreamException	when the document cannot be parsed
+	 */
+	private static boolean nextChild(final XMLStreamReader reader) throws XMLStreamException {
+		while (true) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				return true;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				return false;
+		}
+	}
+
+	/**
+	 * Reads the text content of the current element, which may not contain child elements.
+	 *
+	 * @param reader	the StAX reader, positioned at the start of the element
+	 * @return	the text content of the element, or <code>null</code> if the element is empty
+	 * @throws XMLStreamException	when the element contains child elements
+	 */
+	private static String readText(final XMLStreamReader reader) throws XMLStreamException {
+		final String text = reader.getElementText();
+		return text.isEmpty() ? null : text;
+	}
+
+	/**
+	 * Reads the text content of the current element, which may not be empty.
+	 *
+	 * @param reader	the StAX reader, positioned at the start of the element
+	 * @return	the text content of the element
+	 * @throws XMLStreamException	when the element is empty or contains child elements
+	 */
+	private static String readRequiredText(final XMLStreamReader reader) throws XMLStreamException {
+		final String name = reader.getLocalName();
+		final String text = readText(reader);
+		if (text == null)
+			throw new XMLStreamException("Empty value for " + name + " element", reader.getLocation());
+		return text;
+	}
+
+	/**
+	 * Skips the current element including all its descendants.
+	 *
+	 * @param reader	the StAX reader, positioned at the start of the element
+	 * @throws XMLStreamException	when the document cannot be parsed
+	 */
+	private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	/**
+	 * Checks that the current element does not occur more than once.
+	 *
+	 * @param reader	the StAX reader, positioned at the start of the element
+	 * @param seen		bit mask of the elements already read
+	 * @param element	bit representing the current element
+	 * @return	the updated bit mask
+	 * @throws XMLStreamException	when the element was already read
+	 */
+	private static int once(final XMLStreamReader reader, final int seen, final int element)
+																							throws XMLStreamException {
+		if ((seen & element) != 0)
+			throw duplicateElement(reader);
+		return seen | element;
+	}
+
+	private static void checkNoAttributes(final XMLStreamReader reader) throws XMLStreamException {
+		if (reader.getAttributeCount() > 0)
+			throw unknownAttribute(reader, 0);
+	}
+
+	private static XMLStreamException unknownElement(final XMLStreamReader reader) {
+		return new XMLStreamException("Element " + reader.getLocalName() + " is not allowed", reader.getLocation());
+	}
+
+	private static XMLStreamException duplicateElement(final XMLStreamReader reader) {
+		return new XMLStreamException("Element " + reader.getLocalName() + " may occur only once",
+									  reader.getLocation());
+	}
+
+	private static XMLStreamException unknownAttribute(final XMLStreamReader reader, final int i) {
+		return new XMLStreamException("Attribute " + reader.getAttributeLocalName(i) + " is not allowed on element "
+									  + reader.getLocalName(), reader.getLocation());
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Provides access to the XML schema of the MMD document (<code>xsd/messagemetadata.xsd</code>) for validating MMD
+ * documents. The schema is compiled only once and shared between all threads. As validators are not thread safe,
+ * each thread gets its own {@link ValidatorHandler}, which is reused for all documents validated by the thread.
+ * <p>The schema imports the XML namespace schema from the W3C web site. To prevent that the schema must be retrieved
+ * on compilation, a local copy of the schema (<code>xsd/xml.xsd</code>) is used and access to external schemas is
+ * disabled.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public final class MMDSchema {
+
+	private static final String MMD_XSD = "/xsd/messagemetadata.xsd";
+	private static final String XML_XSD = "/xsd/xml.xsd";
+
+	/**
+	 * The compiled schema, <code>null</code> until first used
+	 */
+	private static volatile Schema schema;
+
+	/**
+	 * The validator handlers of the threads
+	 */
+	private static final ThreadLocal<ValidatorHandler> validators = new ThreadLocal<>();
+
+	private MMDSchema() {}
+
+	/**
+	 * Gets the compiled MMD schema.
+	 *
+	 * @return	the MMD schema
+	 * @throws IOException	when the schema could not be loaded
+	 */
+	public static Schema getSchema() throws IOException {
+		Schema s = schema;
+		if (s == null)
+			synchronized (MMDSchema.class) {
+				s = schema;
+				if (s == null)
+					schema = s = compileSchema();
+			}
+		return s;
+	}
+
+	/**
+	 * Gets the validator handler for the current thread.
+	 *
+	 * @return	the validator handler to use in the current thread
+	 * @throws IOException	when the schema could not be loaded
+	 */
+	static ValidatorHandler getValidatorHandler() throws IOException {
+		ValidatorHandler v = validators.get();
+		if (v == null) {
+			v = getSchema().newValidatorHandler();
+			validators.set(v);
+		}
+		return v;
+	}
+
+	private static Schema compileSchema() throws IOException {
+		final URL xmlXsd = MMDSchema.class.getResource(XML_XSD);
+		final URL mmdXsd = MMDSchema.class.getResource(MMD_XSD);
+		if (xmlXsd == null || mmdXsd == null)
+			throw new IOException("MMD schema not found on class path");
+		try (InputStream xmlIs = xmlXsd.openStream(); InputStream mmdIs = mmdXsd.openStream()) {
+			final SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			factory.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+			factory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+			// By loading the XML namespace schema first the import in the MMD schema is resolved to the local copy
+			return factory.newSchema(new Source[] { new StreamSource(xmlIs, xmlXsd.toExternalForm()),
+													new StreamSource(mmdIs, mmdXsd.toExternalForm()) });
+		} catch (SAXException invalidSchema) {
+			throw new IOException("Could not compile the MMD schema", invalidSchema);
+		}
+	}
+}
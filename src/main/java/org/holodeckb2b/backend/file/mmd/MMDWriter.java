@@ -0,0 +1,370 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.holodeckb2b.backend.file.util.Utf8Writer;
+import org.holodeckb2b.commons.util.Utils;
+import org.holodeckb2b.interfaces.general.IDescription;
+import org.holodeckb2b.interfaces.general.IPartyId;
+import org.holodeckb2b.interfaces.general.IProperty;
+import org.holodeckb2b.interfaces.general.ISchemaReference;
+import org.holodeckb2b.interfaces.general.IService;
+import org.holodeckb2b.interfaces.general.ITradingPartner;
+import org.holodeckb2b.interfaces.messagemodel.IAgreementReference;
+import org.holodeckb2b.interfaces.messagemodel.ICollaborationInfo;
+import org.holodeckb2b.interfaces.messagemodel.IPayload;
+import org.holodeckb2b.interfaces.messagemodel.IUserMessage;
+
+/**
+ * Writes a {@link MessageMetaData} object, or the meta-data of another User Message, as MMD document. The output is
+ * exactly the same as the document written by {@link MessageMetaData#writeToFile(java.io.File)}, which uses the Simple
+ * XML {@link org.simpleframework.xml.core.Persister}, but is produced without reflection by directly streaming the
+ * elements to a buffered UTF-8 writer.
+ * <p>To produce the same output the writer uses the formatting of the Persister: no XML declaration, child elements
+ * indented by three spaces, empty elements written as <code>&lt;Element/&gt;</code> and the characters <code>&amp;
+ * &lt; &gt; " '</code> escaped both in text and attribute values. As the JDK's <code>XMLStreamWriter</code> uses a
+ * different escaping and does not indent, the document is written directly instead.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public final class MMDWriter {
+
+	private static final String MMD_NS = "http://holodeck-b2b.org/schemas/2014/06/mmd";
+	private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+	private static final String INDENT = "   ";
+
+	/**
+	 * The writer the document is written to
+	 */
+	private final Writer	out;
+	/**
+	 * The nesting level of the current element
+	 */
+	private int		depth;
+	/**
+	 * Indicates whether the start tag of the current element is still open, i.e. attributes can be added
+	 */
+	private boolean	startOpen;
+	/**
+	 * Indicates whether text was written for the current element
+	 */
+	private boolean	hasText;
+
+	private MMDWriter(final Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the MMD document for the given User Message to the specified file. If the file already exists it is
+	 * overwritten.
+	 *
+	 * @param mmd		the meta-data to write, either a {@link MessageMetaData} or {@link UserMessageView} object
+	 * @param mmdFile	the path of the file to write the MMD document to
+	 * @throws IOException	when the document could not be written to the file or when a required value is missing in
+	 * 						the meta-data
+	 */
+	public static void write(final IUserMessage mmd, final Path mmdFile) throws IOException {
+		try (Writer w = Utf8Writer.create(mmdFile)) {
+			write(mmd, w);
+		}
+	}
+
+	/**
+	 * Writes the MMD document for the given User Message to the given writer. The writer is not closed.
+	 * <p>A {@link MessageMetaData} object is written as is. For other User Messages, like a {@link UserMessageView}
+	 * of a received message, the document is the same as the one written for the <code>MessageMetaData</code> object
+	 * created from the User Message using {@link MessageMetaData#MessageMetaData(IUserMessage)}, with the location
+	 * of the payloads taken from the {@link PayloadView}s.
+	 *
+	 * @param mmd	the meta-data to write
+	 * @param w		the writer to write the MMD document to
+	 * @throws IOException	when the document could not be written or when a required value is missing in the
+	 * 						meta-data
+	 */
+	public static void write(final IUserMessage mmd, final Writer w) throws IOException {
+		final MMDWriter writer = new MMDWriter(w);
+		if (mmd instanceof MessageMetaData)
+			writer.writeMessageMetaData((MessageMetaData) mmd);
+		else
+			writer.writeUserMessage(mmd);
+		w.flush();
+	}
+
+	private void writeMessageMetaData(final MessageMetaData mmd) throws IOException {
+		start("MessageMetaData");
+		attribute("xmlns", MMD_NS);
+		if (mmd.messageInfo != null)
+			writeMessageInfo(mmd.messageInfo.getMpc(), mmd.messageInfo.timestamp, mmd.messageInfo.getMessageId(),
+							 mmd.messageInfo.getRefToMessageId());
+		if (mmd.partyInfo != null)
+			writePartyInfo(mmd.partyInfo.sender, mmd.partyInfo.receiver);
+		if (mmd.collabInfo != null) {
+			final CollaborationInfo ci = mmd.collabInfo;
+			writeCollaborationInfo(ci.agreementRef, ci.agreementRef != null ? ci.agreementRef.getPModeId() : null,
+								   ci.service, ci.getAction(), ci.getConversationId());
+		}
+		writeProperties("MessageProperties", mmd.msgProperties);
+		if (mmd.payloadInfo != null) {
+			start("PayloadInfo");
+			final Boolean delete = mmd.payloadInfo.shouldDeleteFilesAfterSubmit();
+			attribute("deleteFilesAfterSubmit", delete != null ? delete.toString() : null);
+			final Collection<PartInfo> parts = mmd.payloadInfo.payloads;
+			if (parts == null)
+				throw new IOException("Missing required PartInfo elements");
+			for (PartInfo p : parts)
+				if (p != null)
+					writePartInfo(p, p.containment != null ? p.containment : "attachment", p.getContentLocation(),
+								  p.properties);
+			end("PayloadInfo");
+		}
+		end("MessageMetaData");
+	}
+
+	/**
+	 * Writes the MMD document for a User Message that is not a {@link MessageMetaData} object. As the <code>
+	 * MessageMetaData</code> object created from a User Message always contains the <code>MessageInfo</code> and
+	 * <code>CollaborationInfo</code> elements, these are always written.
+	 */
+	private void writeUserMessage(final IUserMessage um) throws IOException {
+		start("MessageMetaData");
+		attribute("xmlns", MMD_NS);
+		writeMessageInfo(um.getMPC(), Utils.toXMLDateTime(um.getTimestamp()), um.getMessageId(),
+						 um.getRefToMessageId());
+		if (um.getSender() != null || um.getReceiver() != null)
+			writePartyInfo(um.getSender(), um.getReceiver());
+		final ICollaborationInfo ci = um.getCollaborationInfo();
+		if (ci != null)
+			writeCollaborationInfo(ci.getAgreement(), um.getPModeId(), ci.getService(), ci.getAction(),
+								   ci.getConversationId());
+		else
+			writeCollaborationInfo(null, um.getPModeId(), null, null, null);
+		final Collection<IProperty> msgProps = um.getMessageProperties();
+		writeProperties("MessageProperties", !Utils.isNullOrEmpty(msgProps) ? msgProps : null);
+		final Collection<? extends IPayload> payloads = um.getPayloads();
+		if (!Utils.isNullOrEmpty(payloads)) {
+			start("PayloadInfo");
+			for (IPayload p : payloads)
+				if (p != null) {
+					final Collection<IProperty> props = p.getProperties();
+					writePartInfo(p, p.getContainment().name().toLowerCase(),
+								  p instanceof PayloadView ? ((PayloadView) p).getContentLocation() : null,
+								  props != null ? props : Collections.emptyList());
+				}
+			end("PayloadInfo");
+		}
+		end("MessageMetaData");
+	}
+
+	private void writeMessageInfo(final String mpc, final String timestamp, final String messageId,
+								  final String refToMessageId) throws IOException {
+		start("MessageInfo");
+		attribute("mpc", mpc);
+		textElement("Timestamp", timestamp);
+		textElement("MessageId", messageId);
+		textElement("RefToMessageId", refToMessageId);
+		end("MessageInfo");
+	}
+
+	private void writePartyInfo(final ITradingPartner sender, final ITradingPartner receiver) throws IOException {
+		start("PartyInfo");
+		writeTradingPartner("From", sender);
+		writeTradingPartner("To", receiver);
+		end("PartyInfo");
+	}
+
+	/**
+	 * Writes the <code>CollaborationInfo</code> element. When no agreement reference is given, the <code>AgreementRef
+	 * </code> element is only written when a P-Mode id is given.
+	 */
+	private void writeCollaborationInfo(final IAgreementReference agreementRef, final String pmodeId,
+										final IService service, final String action, final String convId)
+																							throws IOException {
+		start("CollaborationInfo");
+		if (agreementRef != null || pmodeId != null) {
+			start("AgreementRef");
+			attribute("type", agreementRef != null ? agreementRef.getType() : null);
+			attribute("pmode", pmodeId);
+			text(agreementRef != null ? agreementRef.getName() : null);
+			end("AgreementRef");
+		}
+		if (service != null) {
+			start("Service");
+			attribute("type", service.getType());
+			text(required(service.getName(), "Service"));
+			end("Service");
+		}
+		textElement("Action", action);
+		textElement("ConversationId", convId);
+		end("CollaborationInfo");
+	}
+
+	private void writeTradingPartner(final String name, final ITradingPartner tp) throws IOException {
+		if (tp == null)
+			return;
+		start(name);
+		final Collection<IPartyId> partyIds = tp.getPartyIds();
+		if (Utils.isNullOrEmpty(partyIds))
+			throw new IOException("Missing required PartyId elements in " + name);
+		for (IPartyId pid : partyIds)
+			if (pid != null) {
+				start("PartyId");
+				attribute("type", pid.getType());
+				text(required(pid.getId(), "PartyId"));
+				end("PartyId");
+			}
+		textElement("Role", tp.getRole());
+		end(name);
+	}
+
+	@SuppressWarnings("deprecation")
+	private void writePartInfo(final IPayload p, final String containment, final String location,
+							   final Collection<IProperty> properties) throws IOException {
+		start("PartInfo");
+		attribute("containment", containment);
+		attribute("uri", p.getPayloadURI());
+		attribute("mimeType", p.getMimeType());
+		attribute("location", location);
+		final ISchemaReference schemaRef = p.getSchemaReference();
+		if (schemaRef != null) {
+			start("Schema");
+			attribute("namespace", schemaRef.getNamespace());
+			attribute("version", schemaRef.getVersion());
+			attribute("location", required(schemaRef.getLocation(), "Schema/@location"));
+			end("Schema");
+		}
+		final IDescription description = p.getDescription();
+		if (description != null) {
+			start("Description");
+			final String lang = description.getLanguage();
+			if (lang != null) {
+				attribute("xml:lang", lang);
+				attribute("xmlns:xml", XML_NS);
+			}
+			text(required(description.getText(), "Description"));
+			end("Description");
+		}
+		writeProperties("PartProperties", properties);
+		end("PartInfo");
+	}
+
+	private void writeProperties(final String name, final Collection<IProperty> properties) throws IOException {
+		if (properties == null)
+			return;
+		start(name);
+		for (IProperty p : properties)
+			if (p != null) {
+				start("Property");
+				attribute("name", required(p.getName(), "Property/@name"));
+				attribute("type", p.getType());
+				text(required(p.getValue(), "Property"));
+				end("Property");
+			}
+		end(name);
+	}
+
+	private void textElement(final String name, final String value) throws IOException {
+		if (value != null) {
+			start(name);
+			text(value);
+			end(name);
+		}
+	}
+
+	private void start(final String name) throws IOException {
+		if (startOpen)
+			out.write('>');
+		if (depth > 0) {
+			out.write('\n');
+			for (int i = 0; i < depth; i++)
+				out.write(INDENT);
+		}
+		out.write('<');
+		out.write(name);
+		startOpen = true;
+		hasText = false;
+		depth++;
+	}
+
+	private void attribute(final String name, final String value) throws IOException {
+		if (value != null) {
+			out.write(' ');
+			out.write(name);
+			out.write("=\"");
+			escape(value);
+			out.write('"');
+		}
+	}
+
+	private void text(final String value) throws IOException {
+		if (value != null) {
+			out.write('>');
+			startOpen = false;
+			escape(value);
+			hasText = true;
+		}
+	}
+
+	private void end(final String name) throws IOException {
+		depth--;
+		if (startOpen) {
+			out.write("/>");
+			startOpen = false;
+		} else {
+			if (!hasText) {
+				out.write('\n');
+				for (int i = 0; i < depth; i++)
+					out.write(INDENT);
+			}
+			out.write("</");
+			out.write(name);
+			out.write('>');
+		}
+		hasText = false;
+	}
+
+	private void escape(final String value) throws IOException {
+		int from = 0;
+		for (int i = 0; i < value.length(); i++) {
+			final String entity;
+			switch (value.charAt(i)) {
+			case '&' : entity = "&amp;"; break;
+			case '<' : entity = "&lt;"; break;
+			case '>' : entity = "&gt;"; break;
+			case '"' : entity = "&quot;"; break;
+			case '\'' : entity = "&apos;"; break;
+			default : continue;
+			}
+			out.write(value, from, i - from);
+			out.write(entity);
+			from = i + 1;
+		}
+		out.write(value, from, value.length() - from);
+	}
+
+	private static String required(final String value, final String name) throws IOException {
+		if (value == null)
+			throw new IOException("Missing required value for " + name);
+		return value;
+	}
+}
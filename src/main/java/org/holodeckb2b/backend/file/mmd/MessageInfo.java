@@ -47,7 +47,7 @@ public class MessageInfo {
      * tranformation to <code>Date</code> is done in the getter and setter methods.
      */
     @Element(name = "Timestamp", required = false)
-    private String  timestamp;
+    String  timestamp;
 
     @Element(name = "MessageId", required = false)
     private String  messageId;
@@ -61,19 +61,19 @@ public class MessageMetaData implements IUserMessage {
      * skipped.
      */
     @Element(name = "MessageInfo", required = false)
-    private MessageInfo         messageInfo;
+    MessageInfo         messageInfo;
 
     @Element(name = "PartyInfo", required = false)
-    private PartyInfo           partyInfo;
+    PartyInfo           partyInfo;
 
     @Element(name = "CollaborationInfo", required = false)
-    private CollaborationInfo   collabInfo;
+    CollaborationInfo   collabInfo;
 
     @ElementList(name = "MessageProperties", entry = "Property", type = Property.class, required = false)
-    private ArrayList<IProperty> msgProperties;
+    ArrayList<IProperty> msgProperties;
 
     @Element(name = "PayloadInfo", required=false)
-    private PayloadInfo  payloadInfo;
+    PayloadInfo  payloadInfo;
 
     /**
      * Default constructor to create an empty <code>MessageMetaData</object>.
@@ -19,6 +19,8 @@ package org.holodeckb2b.backend.file.mmd;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -51,16 +53,16 @@ import org.simpleframework.xml.core.Validate;
 public class PartInfo implements IPayload {
 
     @Element(name="Schema",required = false)
-    private SchemaReference     schemaRef;
+    SchemaReference     schemaRef;
 
     @Element(name="Description", required = false)
-    private Description         description;
+    Description         description;
 
     @ElementList(name="PartProperties",  entry = "Property", type = Property.class, required = false)
-    private ArrayList<IProperty> properties;
+    ArrayList<IProperty> properties;
 
     @Attribute(name="containment", required = false, empty = "attachment")
-    private String  containment;
+    String  containment;
 
     @Attribute(name="uri", required=false)
     private String  uri;
@@ -193,6 +195,22 @@ public class PartInfo implements IPayload {
         this.location = loc;
     }
 
+    /**
+     * Gets the path of the file that contains the payload content. This is only known when the location of the
+     * content is set or when the content source is itself a <code>PartInfo</code> with a known file.
+     *
+     * @return	path of the file with the payload content, or <code>null</code> if not known
+     * @since 2.1.0
+     */
+    public Path getContentFile() {
+    	if (!Utils.isNullOrEmpty(location))
+    		return Paths.get(location);
+    	else if (contentSrc instanceof PartInfo)
+    		return ((PartInfo) contentSrc).getContentFile();
+    	else
+    		return null;
+    }
+
     @Override
     public String getMimeType() {
         return mimeType;
@@ -30,10 +30,10 @@ import org.simpleframework.xml.Element;
 public class PartyInfo {
 
     @Element(name = "From", required = false)
-    private TradingPartner      sender;
+    TradingPartner      sender;
 
     @Element(name = "To", required = false)
-    private TradingPartner      receiver;
+    TradingPartner      receiver;
 
     /**
      * @return the sender
@@ -46,7 +46,7 @@ class PayloadInfo {
      * The list of <code>PartInfo</code> child elements, must be at least one
      */
     @ElementList(entry = "PartInfo", inline = true, required=true)
-    private ArrayList<PartInfo>  payloads;
+    ArrayList<PartInfo>  payloads;
 
     /**
      * Default constructor creates empty meta data object.
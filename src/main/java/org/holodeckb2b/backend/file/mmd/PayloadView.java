@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.holodeckb2b.commons.util.Utils;
+import org.holodeckb2b.interfaces.general.IDescription;
+import org.holodeckb2b.interfaces.general.IProperty;
+import org.holodeckb2b.interfaces.general.ISchemaReference;
+import org.holodeckb2b.interfaces.messagemodel.IPayload;
+
+/**
+ * Is a view of a payload that is being delivered. All meta-data is read from the payload object provided by the
+ * Holodeck B2B Core, only the location where the payload content is saved by the deliverer and the part properties
+ * the deliverer adds are kept by the view itself. This saves copying all meta-data of the payload into a {@link
+ * PartInfo} object.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ * @see UserMessageView
+ */
+public class PayloadView implements IPayload {
+
+	/**
+	 * The payload this is a view of
+	 */
+	private final IPayload	source;
+	/**
+	 * The location where the payload content is saved as included in the meta-data, <code>null</code> if not saved
+	 */
+	private String	location;
+	/**
+	 * The file the payload content is saved to, <code>null</code> if not saved or only the location is known
+	 */
+	private Path	contentFile;
+	/**
+	 * The properties of the source payload with the properties added by the deliverer, <code>null</code> as long as
+	 * no properties are added
+	 */
+	private ArrayList<IProperty>	properties;
+
+	/**
+	 * Creates a new view of the given payload.
+	 *
+	 * @param source	the payload
+	 */
+	public PayloadView(final IPayload source) {
+		this.source = source;
+	}
+
+	/**
+	 * Gets the payload this is a view of.
+	 *
+	 * @return	the source payload
+	 */
+	public IPayload getSource() {
+		return source;
+	}
+
+	/**
+	 * Gets the content of the payload. When the content has been saved by the deliverer, it is read from the saved
+	 * file.
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		if (contentFile != null)
+			return Files.newInputStream(contentFile);
+		else
+			return !Utils.isNullOrEmpty(location) ? new FileInputStream(location) : source.getContent();
+	}
+
+	@Override
+	public Containment getContainment() {
+		return source.getContainment();
+	}
+
+	@Override
+	public String getPayloadURI() {
+		return source.getPayloadURI();
+	}
+
+	/**
+	 * Gets the part properties of the payload, including the properties added using {@link #addProperty(IProperty)}.
+	 */
+	@Override
+	public Collection<IProperty> getProperties() {
+		return properties != null ? properties : source.getProperties();
+	}
+
+	/**
+	 * Adds a part property to the payload. The properties of the source payload are not changed.
+	 *
+	 * @param p		the property to add
+	 */
+	public void addProperty(final IProperty p) {
+		if (properties == null) {
+			final Collection<IProperty> srcProps = source.getProperties();
+			properties = srcProps != null ? new ArrayList<>(srcProps) : new ArrayList<>(1);
+		}
+		properties.add(p);
+	}
+
+	@Override
+	@Deprecated
+	public IDescription getDescription() {
+		return source.getDescription();
+	}
+
+	@Override
+	public ISchemaReference getSchemaReference() {
+		return source.getSchemaReference();
+	}
+
+	@Override
+	public String getMimeType() {
+		return source.getMimeType();
+	}
+
+	/**
+	 * Gets the location where the payload content is saved by the deliverer.
+	 *
+	 * @return	the location, <code>null</code> if the content is not saved
+	 */
+	public String getContentLocation() {
+		return location;
+	}
+
+	/**
+	 * Sets the location where the payload content is saved by the deliverer. As the content will be read from this
+	 * location it should be an absolute path, use {@link #setContentLocation(String, Path)} when the location included
+	 * in the meta-data is relative.
+	 *
+	 * @param loc	the location
+	 */
+	public void setContentLocation(final String loc) {
+		this.location = loc;
+		this.contentFile = null;
+	}
+
+	/**
+	 * Sets the location where the payload content is saved by the deliverer together with the file it is saved to.
+	 * The location is included in the meta-data and can be relative to the directory of the meta-data file, the
+	 * content is read from the file.
+	 *
+	 * @param loc	the location as included in the meta-data
+	 * @param file	the file the content is saved to
+	 */
+	public void setContentLocation(final String loc, final Path file) {
+		this.location = loc;
+		this.contentFile = file;
+	}
+
+	/**
+	 * Gets the file the payload content is saved to by the deliverer.
+	 *
+	 * @return	the file, <code>null</code> if the content is not saved or only its location is known
+	 */
+	public Path getContentFile() {
+		return contentFile;
+	}
+}
@@ -38,7 +38,7 @@ public class TradingPartner implements ITradingPartner {
      * When used there must be at least one PartyId child element
      */
     @ElementList(entry = "PartyId", type = PartyId.class , required = true, inline = true)
-    private ArrayList<IPartyId>   partyIds;
+    ArrayList<IPartyId>   partyIds;
 
     /*
      * Optionally a <i>role</i> might be provided
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.holodeckb2b.interfaces.general.IProperty;
+import org.holodeckb2b.interfaces.general.ITradingPartner;
+import org.holodeckb2b.interfaces.messagemodel.Direction;
+import org.holodeckb2b.interfaces.messagemodel.ICollaborationInfo;
+import org.holodeckb2b.interfaces.messagemodel.IPayload;
+import org.holodeckb2b.interfaces.messagemodel.IUserMessage;
+import org.holodeckb2b.interfaces.processingmodel.IMessageUnitProcessingState;
+
+/**
+ * Is a view of a User Message that is being delivered. Instead of copying all meta-data of the User Message into a
+ * {@link MessageMetaData} object, the meta-data is read from the message unit provided by the Holodeck B2B Core. Only
+ * the payloads are wrapped in a {@link PayloadView} so the deliverer can set the location of the saved payload content
+ * and add part properties. The payload views are created when first requested.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class UserMessageView implements IUserMessage {
+
+	/**
+	 * The User Message this is a view of
+	 */
+	private final IUserMessage	source;
+	/**
+	 * The views of the payloads, <code>null</code> until requested
+	 */
+	private List<PayloadView>	payloads;
+
+	/**
+	 * Creates a new view of the given User Message.
+	 *
+	 * @param source	the User Message
+	 */
+	public UserMessageView(final IUserMessage source) {
+		this.source = source;
+	}
+
+	/**
+	 * Gets the User Message this is a view of.
+	 *
+	 * @return	the source User Message
+	 */
+	public IUserMessage getSource() {
+		return source;
+	}
+
+	@Override
+	public Direction getDirection() {
+		return source.getDirection();
+	}
+
+	@Override
+	public Date getTimestamp() {
+		return source.getTimestamp();
+	}
+
+	@Override
+	public String getMessageId() {
+		return source.getMessageId();
+	}
+
+	@Override
+	public String getRefToMessageId() {
+		return source.getRefToMessageId();
+	}
+
+	@Override
+	public String getPModeId() {
+		return source.getPModeId();
+	}
+
+	@Override
+	public List<IMessageUnitProcessingState> getProcessingStates() {
+		return source.getProcessingStates();
+	}
+
+	@Override
+	public String getMPC() {
+		return source.getMPC();
+	}
+
+	@Override
+	public ITradingPartner getSender() {
+		return source.getSender();
+	}
+
+	@Override
+	public ITradingPartner getReceiver() {
+		return source.getReceiver();
+	}
+
+	@Override
+	public ICollaborationInfo getCollaborationInfo() {
+		return source.getCollaborationInfo();
+	}
+
+	@Override
+	public Collection<IProperty> getMessageProperties() {
+		return source.getMessageProperties();
+	}
+
+	/**
+	 * Gets the views of the payloads of the User Message.
+	 *
+	 * @return	the payload views, <code>null</code> if the User Message has no payloads
+	 */
+	@Override
+	public List<PayloadView> getPayloads() {
+		if (payloads == null) {
+			final Collection<? extends IPayload> srcPayloads = source.getPayloads();
+			if (srcPayloads == null)
+				return null;
+			payloads = new ArrayList<>(srcPayloads.size());
+			for (final IPayload p : srcPayloads)
+				payloads.add(new PayloadView(p));
+		}
+		return payloads;
+	}
+}
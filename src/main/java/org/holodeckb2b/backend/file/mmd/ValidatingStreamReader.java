@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Is a StAX reader that validates the document while it is read by passing all events to a {@link ValidatorHandler}.
+ * This allows the {@link MMDReader} to validate the MMD document in the same pass as it is parsed. When the document
+ * is not valid, the reader throws a {@link XMLStreamException} and the validation error is available through {@link
+ * #getValidationError()}.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+class ValidatingStreamReader extends StreamReaderDelegate {
+
+	/**
+	 * The validator the events are passed to
+	 */
+	private final ValidatorHandler	validator;
+	/**
+	 * Reused for passing the attributes of the elements to the validator
+	 */
+	private final AttributesImpl	attributes = new AttributesImpl();
+	/**
+	 * The validation error, <code>null</code> if the document is valid so far
+	 */
+	private SAXException	validationError;
+
+	/**
+	 * Creates a new validating reader. The given reader must be positioned at the start of the document.
+	 *
+	 * @param reader	the reader to read the document from
+	 * @param validator	the validator to pass the events to
+	 * @throws XMLStreamException	when the validator cannot be started
+	 */
+	ValidatingStreamReader(final XMLStreamReader reader, final ValidatorHandler validator)
+																						throws XMLStreamException {
+		super(reader);
+		this.validator = validator;
+		validator.setContentHandler(null);
+		validator.setErrorHandler(null);
+		try {
+			validator.startDocument();
+		} catch (SAXException startFailure) {
+			throw validationFailure(startFailure);
+		}
+	}
+
+	/**
+	 * Gets the validation error that was found while reading the document.
+	 *
+	 * @return	the validation error, or <code>null</code> if the document read so far is valid
+	 */
+	SAXException getValidationError() {
+		return validationError;
+	}
+
+	@Override
+	public int next() throws XMLStreamException {
+		final int event = super.next();
+		try {
+			switch (event) {
+			case XMLStreamConstants.START_ELEMENT :
+				for (int i = 0; i < getNamespaceCount(); i++)
+					validator.startPrefixMapping(nullToEmpty(getNamespacePrefix(i)), nullToEmpty(getNamespaceURI(i)));
+				attributes.clear();
+				for (int i = 0; i < getAttributeCount(); i++) {
+					final String prefix = getAttributePrefix(i);
+					final String localName = getAttributeLocalName(i);
+					attributes.addAttribute(nullToEmpty(getAttributeNamespace(i)), localName,
+											prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName,
+											"CDATA", getAttributeValue(i));
+				}
+				validator.startElement(nullToEmpty(getNamespaceURI()), getLocalName(), getQName(), attributes);
+				break;
+			case XMLStreamConstants.END_ELEMENT :
+				validator.endElement(nullToEmpty(getNamespaceURI()), getLocalName(), getQName());
+				for (int i = 0; i < getNamespaceCount(); i++)
+					validator.endPrefixMapping(nullToEmpty(getNamespacePrefix(i)));
+				break;
+			case XMLStreamConstants.CHARACTERS :
+			case XMLStreamConstants.CDATA :
+			case XMLStreamConstants.SPACE :
+				validator.characters(getTextCharacters(), getTextStart(), getTextLength());
+				break;
+			case XMLStreamConstants.END_DOCUMENT :
+				validator.endDocument();
+				break;
+			default :
+				// Other events are not relevant for validation
+			}
+		} catch (SAXException invalid) {
+			throw validationFailure(invalid);
+		}
+		return event;
+	}
+
+	/*
+	 * Implemented using next() so all events are passed to the validator
+	 */
+	@Override
+	public int nextTag() throws XMLStreamException {
+		int event = next();
+		while ((event == XMLStreamConstants.CHARACTERS && isWhiteSpace()) || event == XMLStreamConstants.SPACE
+				|| event == XMLStreamConstants.COMMENT || event == XMLStreamConstants.PROCESSING_INSTRUCTION)
+			event = next();
+		if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT)
+			throw new XMLStreamException("Expected start or end tag", getLocation());
+		return event;
+	}
+
+	/*
+	 * Implemented using next() so all events are passed to the validator
+	 */
+	@Override
+	public String getElementText() throws XMLStreamException {
+		final StringBuilder text = new StringBuilder();
+		int event = next();
+		while (event != XMLStreamConstants.END_ELEMENT) {
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+				|| event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE)
+				text.append(getText());
+			else if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_DOCUMENT)
+				throw new XMLStreamException("Element text content may not contain START_ELEMENT", getLocation());
+			event = next();
+		}
+		return text.toString();
+	}
+
+	private String getQName() {
+		final String prefix = getPrefix();
+		return prefix == null || prefix.isEmpty() ? getLocalName() : prefix + ':' + getLocalName();
+	}
+
+	private XMLStreamException validationFailure(final SAXException invalid) {
+		validationError = invalid;
+		return new XMLStreamException(invalid.getMessage(), getLocation());
+	}
+
+	private static String nullToEmpty(final String s) {
+		return s != null ? s : "";
+	}
+}
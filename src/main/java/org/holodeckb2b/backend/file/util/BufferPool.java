@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Is a pool of the byte and character buffers used for reading and writing the delivered files, so these large
+ * buffers don't need to be allocated again for each delivery. A pool is used instead of thread local buffers because
+ * the deliveries can be executed by virtual threads, which are not reused.
+ * <p>The number of pooled buffers is limited. When no pooled buffer is available a new one is allocated, and when
+ * a buffer is released while the pool is full it is left to the garbage collector. A buffer must not be used anymore
+ * after it has been released.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public final class BufferPool {
+
+	/**
+	 * The size of the buffers, in bytes or characters
+	 */
+	public static final int BUFFER_SIZE = 64 * 1024;
+	/**
+	 * The maximum number of buffers of each type kept in the pool
+	 */
+	static final int MAX_POOLED = 32;
+
+	private static final Queue<byte[]>	BYTE_BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED);
+	private static final Queue<char[]>	CHAR_BUFFERS = new ArrayBlockingQueue<>(MAX_POOLED);
+
+	private BufferPool() {}
+
+	/**
+	 * Gets a byte buffer of {@link #BUFFER_SIZE} bytes. The content of the buffer is undefined.
+	 *
+	 * @return	the byte buffer
+	 */
+	public static byte[] getByteBuffer() {
+		final byte[] b = BYTE_BUFFERS.poll();
+		return b != null ? b : new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Returns the byte buffer to the pool.
+	 *
+	 * @param b		the buffer, as retrieved by {@link #getByteBuffer()}
+	 */
+	public static void release(final byte[] b) {
+		if (b != null && b.length == BUFFER_SIZE)
+			BYTE_BUFFERS.offer(b);
+	}
+
+	/**
+	 * Gets a character buffer of {@link #BUFFER_SIZE} characters. The content of the buffer is undefined.
+	 *
+	 * @return	the character buffer
+	 */
+	public static char[] getCharBuffer() {
+		final char[] b = CHAR_BUFFERS.poll();
+		return b != null ? b : new char[BUFFER_SIZE];
+	}
+
+	/**
+	 * Returns the character buffer to the pool.
+	 *
+	 * @param b		the buffer, as retrieved by {@link #getCharBuffer()}
+	 */
+	public static void release(final char[] b) {
+		if (b != null && b.length == BUFFER_SIZE)
+			CHAR_BUFFERS.offer(b);
+	}
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Forces files and directory entries to disk using <i>group commit</i> for the directory syncs. The files of a request
+ * are specific to the delivery of one message unit, so they are synced by the requesting thread itself, which lets the
+ * file system handle the syncs of concurrent deliveries in parallel. Deliveries however normally write to the same
+ * directory, so the directory syncs of all requests that arrive within a short time window are combined into one
+ * batch. The first thread of a batch syncs each directory of the batch only once and then releases the other threads
+ * of the batch. It only waits for the time window to pass when other requests to sync one of the batch's directories
+ * are in progress, so a single delivery is not delayed.
+ * <p>A thread requesting a sync only returns when all files and directories it requested are synced, or throws an
+ * exception when syncing them failed.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class GroupCommitSyncer {
+	private static final Logger	log = LogManager.getLogger(GroupCommitSyncer.class);
+
+	/**
+	 * A batch of directories to be synced together
+	 */
+	private static class Batch {
+		final Set<Path>	directories = new LinkedHashSet<>();
+		boolean			done;
+		IOException		failure;
+	}
+
+	/**
+	 * The time window in nanoseconds in which requests are combined
+	 */
+	private final long	windowNanos;
+	/**
+	 * The batch that is collecting requests, <code>null</code> if there is none
+	 */
+	private Batch	collecting;
+	/**
+	 * The number of requests per directory that are in progress but have not joined a batch yet
+	 */
+	private final Map<Path, Integer>	pending = new HashMap<>();
+	/**
+	 * Number of batches synced, for monitoring and testing
+	 */
+	private long	batches;
+
+	/**
+	 * Creates a new syncer that combines the directory syncs of the requests arriving within the given time window.
+	 *
+	 * @param window	the time window in milliseconds, 0 to sync each request immediately (though requests arriving
+	 * 					while the previous batch is still collecting are still combined)
+	 */
+	public GroupCommitSyncer(final long window) {
+		this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, window));
+	}
+
+	/**
+	 * Syncs the given files and directory to disk. The files are synced by the calling thread, after which the thread
+	 * is blocked until the batch the directory is included in has been synced.
+	 *
+	 * @param files		the files to sync, may be empty
+	 * @param directory	the directory to sync, which makes the directory entries durable, may be <code>null</code>
+	 * @throws IOException	when the files or directory could not be synced
+	 */
+	public void sync(final Collection<Path> files, final Path directory) throws IOException {
+		if (directory == null) {
+			for (Path f : files)
+				syncFile(f);
+			return;
+		}
+
+		synchronized (this) {
+			// Announce the request, so a leader of a batch with the same directory waits for it to join
+			pending.merge(directory, 1, Integer::sum);
+		}
+		boolean filesSynced = false;
+		try {
+			for (Path f : files)
+				syncFile(f);
+			filesSynced = true;
+		} finally {
+			if (!filesSynced)
+				synchronized (this) {
+					removePending(directory);
+				}
+		}
+
+		final Batch batch;
+		final boolean leader;
+		synchronized (this) {
+			removePending(directory);
+			leader = collecting == null;
+			if (leader)
+				collecting = new Batch();
+			batch = collecting;
+			batch.directories.add(directory);
+		}
+
+		if (leader) {
+			boolean interrupted = false;
+			synchronized (this) {
+				// Give the other requests in progress for the same directories the chance to join the batch
+				final long deadline = System.nanoTime() + windowNanos;
+				long remaining;
+				while (isJoinExpected(batch) && (remaining = deadline - System.nanoTime()) > 0)
+					try {
+						TimeUnit.NANOSECONDS.timedWait(this, remaining);
+					} catch (InterruptedException interrupt) {
+						// Stop waiting for others, but the directories must be synced before returning
+						interrupted = true;
+						break;
+					}
+				// Close the batch, new requests will start a new one
+				collecting = null;
+			}
+			IOException failure = null;
+			try {
+				for (Path d : batch.directories)
+					syncDirectory(d);
+			} catch (IOException syncFailure) {
+				failure = syncFailure;
+			}
+			log.trace("Synced batch of {} directories", batch.directories.size());
+			synchronized (this) {
+				batch.failure = failure;
+				batch.done = true;
+				batches++;
+				notifyAll();
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		} else {
+			boolean interrupted = false;
+			synchronized (this) {
+				while (!batch.done)
+					try {
+						wait();
+					} catch (InterruptedException interrupt) {
+						// The directory must be synced before returning, so keep waiting
+						interrupted = true;
+					}
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+
+		if (batch.failure != null)
+			throw new IOException("Could not sync directory to disk", batch.failure);
+	}
+
+	/**
+	 * Removes a request for the given directory from the requests in progress and wakes up a leader that may be waiting
+	 * for it. Must be called while holding the lock of this syncer.
+	 *
+	 * @param directory	the directory of the request
+	 */
+	private void removePending(final Path directory) {
+		pending.computeIfPresent(directory, (d, n) -> n > 1 ? n - 1 : null);
+		notifyAll();
+	}
+
+	/**
+	 * Checks whether there are requests in progress that will join the given batch because they need to sync one of
+	 * its directories. Must be called while holding the lock of this syncer.
+	 *
+	 * @param batch	the batch that is collecting requests
+	 * @return	<code>true</code> if a request for one of the directories of the batch is in progress,
+	 * 			<code>false</code> if not
+	 */
+	private boolean isJoinExpected(final Batch batch) {
+		for (Path d : batch.directories)
+			if (pending.containsKey(d))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Gets the number of batches synced so far.
+	 *
+	 * @return	number of synced batches
+	 */
+	public synchronized long getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * Forces the content of the given file to disk. The file is opened for writing as some platforms, like Windows,
+	 * only allow to flush a file that is opened with write access.
+	 *
+	 * @param file	the file to sync
+	 * @throws IOException	when the file could not be synced
+	 */
+	public static void syncFile(final Path file) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			ch.force(true);
+		}
+	}
+
+	/**
+	 * Forces the entries of the given directory to disk. Not all platforms allow to sync a directory, in that case the
+	 * sync is skipped as these platforms make the directory entries durable themselves.
+	 *
+	 * @param dir	the directory to sync
+	 * @throws IOException	when the directory could not be synced
+	 */
+	public static void syncDirectory(final Path dir) throws IOException {
+		final FileChannel ch;
+		try {
+			ch = FileChannel.open(dir, StandardOpenOption.READ);
+		} catch (IOException notSupported) {
+			log.trace("Directory {} cannot be synced on this platform", dir);
+			return;
+		}
+		try {
+			ch.force(true);
+		} finally {
+			ch.close();
+		}
+	}
+}
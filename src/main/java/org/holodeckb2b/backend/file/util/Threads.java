@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Is a utility class for creating the threads used by the submit and delivery operations to process files in the
+ * background. The threads can either be normal platform threads or, when the Java runtime supports them, <i>virtual
+ * threads</i>. As this extension must also run on Java versions that do not support virtual threads, these are created
+ * using reflection.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public final class Threads {
+
+	/**
+	 * The factory for virtual threads, <code>null</code> when the runtime does not support virtual threads
+	 */
+	private static final Object VIRTUAL_BUILDER = createVirtualThreadBuilder();
+
+	private Threads() {}
+
+	/**
+	 * Indicates whether the Java runtime supports virtual threads.
+	 *
+	 * @return <code>true</code> if virtual threads can be created, <code>false</code> if not
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return VIRTUAL_BUILDER != null;
+	}
+
+	/**
+	 * Creates a new {@link ThreadFactory} for creating either platform or virtual threads. When virtual threads are
+	 * requested but not supported by the runtime, the factory creates platform threads. Platform threads are created as
+	 * daemon threads so they don't prevent the JVM from shutting down.
+	 *
+	 * @param namePrefix	prefix to use for the names of the threads, the name will be suffixed with a counter
+	 * @param virtual		indicates whether virtual threads should be created
+	 * @return	the thread factory
+	 */
+	public static ThreadFactory createThreadFactory(final String namePrefix, final boolean virtual) {
+		if (virtual && VIRTUAL_BUILDER != null)
+			try {
+				final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				final Object builder = builderClass.getMethod("name", String.class, long.class)
+												   .invoke(VIRTUAL_BUILDER, namePrefix + "-", 1L);
+				return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+			} catch (ReflectiveOperationException unsupported) {
+				LogManager.getLogger(Threads.class).warn("Could not create virtual thread factory, using platform "
+														+ "threads : {}", unsupported.getMessage());
+			}
+
+		final AtomicInteger counter = new AtomicInteger();
+		return r -> {
+			final Thread t = new Thread(r, namePrefix + "-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} that starts a new virtual thread for each task. Virtual threads are cheap to
+	 * create and should not be pooled, so callers that need to limit the number of tasks running at the same time must
+	 * do so themselves, for example using a {@link java.util.concurrent.Semaphore}.
+	 *
+	 * @param namePrefix	prefix to use for the names of the threads, the name will be suffixed with a counter
+	 * @return	the executor, or <code>null</code> when virtual threads are not supported by the runtime
+	 */
+	public static ExecutorService createVirtualThreadPerTaskExecutor(final String namePrefix) {
+		if (VIRTUAL_BUILDER == null)
+			return null;
+		try {
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+													.invoke(null, createThreadFactory(namePrefix, true));
+		} catch (ReflectiveOperationException unsupported) {
+			LogManager.getLogger(Threads.class).warn("Could not create virtual thread executor : {}",
+													 unsupported.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the builder for virtual threads using reflection.
+	 *
+	 * @return	the <code>Thread.Builder.OfVirtual</code> instance, or <code>null</code> if virtual threads are not
+	 * 			supported by the runtime
+	 */
+	private static Object createVirtualThreadBuilder() {
+		try {
+			return Thread.class.getMethod("ofVirtual").invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException unsupported) {
+			// Either the method does not exist or virtual threads are a preview feature that is not enabled
+			return null;
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.holodeckb2b.commons.util.Utils;
+
+/**
+ * Generates file names that are unique without checking the file system for existing files. A generated name has the
+ * form <code>«node id»-«time»-«sequence»</code> where:<ul>
+ * <li><i>node id</i> identifies the Holodeck B2B instance. When no node id is configured a random id is generated when
+ * the class is loaded, so instances running in different JVMs use different node ids.</li>
+ * <li><i>time</i> is the current time in milliseconds, base-36 encoded. It distinguishes the names generated by a
+ * restarted instance using the same node id.</li>
+ * <li><i>sequence</i> is a counter, base-36 encoded, that is shared by all generators in the JVM, so generators using
+ * the same node id never create the same name.</li></ul>
+ * <p>As long as each JVM writing to the same directory uses a different node id, the generated names are unique and
+ * files can be created with the name directly, without first probing for existing files. When no node id is configured
+ * the uniqueness across JVMs depends on the random node ids being different, which is very likely but not guaranteed.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class UniqueNames {
+
+	/**
+	 * The node id used when no node id is configured, randomly generated for this JVM
+	 */
+	private static final String DEFAULT_NODE_ID = Long.toString(new SecureRandom().nextLong() >>> 23, 36);
+	/**
+	 * The sequence shared by all generators in this JVM
+	 */
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	/**
+	 * The node id used by this generator, including the separator
+	 */
+	private final String	prefix;
+
+	/**
+	 * Creates a new generator that uses the random node id of this JVM.
+	 */
+	public UniqueNames() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new generator that uses the given node id. To keep the file names valid, the node id may only contain
+	 * letters, digits, '_' and '.'.
+	 *
+	 * @param nodeId	the node id to use, when <code>null</code> or empty the random node id of this JVM is used
+	 * @throws IllegalArgumentException	when the node id contains other characters than allowed
+	 */
+	public UniqueNames(final String nodeId) {
+		if (Utils.isNullOrEmpty(nodeId))
+			this.prefix = DEFAULT_NODE_ID + '-';
+		else if (nodeId.matches("[A-Za-z0-9_.]+"))
+			this.prefix = nodeId + '-';
+		else
+			throw new IllegalArgumentException("Invalid node id: " + nodeId);
+	}
+
+	/**
+	 * Gets the node id used by this generator.
+	 *
+	 * @return	the node id
+	 */
+	public String getNodeId() {
+		return prefix.substring(0, prefix.length() - 1);
+	}
+
+	/**
+	 * Generates a new unique name.
+	 *
+	 * @return	the generated name
+	 */
+	public String next() {
+		return prefix + Long.toString(System.currentTimeMillis(), 36) + '-'
+				+ Long.toString(SEQUENCE.getAndIncrement(), 36);
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Is a buffered {@link Writer} that writes the characters UTF-8 encoded, using a {@link CharsetEncoder} and character
+ * and byte buffers that are taken from pools. It replaces the combination of a <code>BufferedWriter</code> and
+ * <code>OutputStreamWriter</code> which allocate a new encoder and new character and byte buffers for each file
+ * written, and where the encoder's buffer can grow to three times the size of the largest write. As with the standard
+ * UTF-8 encoder, unpaired surrogate characters are written as <code>'?'</code>.
+ * <p>The encoder and buffers are returned to the pools when the writer is closed, so the writer must always be closed.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ * @since 2.1.0
+ */
+public class Utf8Writer extends Writer {
+	/**
+	 * The pool of encoders, which is limited to the same size as the buffer pools
+	 */
+	private static final Queue<CharsetEncoder>	ENCODERS = new ArrayBlockingQueue<>(BufferPool.MAX_POOLED);
+
+	private final OutputStream	out;
+	private CharsetEncoder	encoder;
+	private char[]		chars;
+	private CharBuffer	charBuf;
+	private byte[]		bytes;
+	private ByteBuffer	byteBuf;
+
+	/**
+	 * Creates a new writer that writes the UTF-8 encoded characters to the given stream.
+	 *
+	 * @param out	the stream to write to, closed when the writer is closed
+	 */
+	public Utf8Writer(final OutputStream out) {
+		this.out = out;
+		final CharsetEncoder e = ENCODERS.poll();
+		this.encoder = e != null ? e.reset() : StandardCharsets.UTF_8.newEncoder()
+																.onMalformedInput(CodingErrorAction.REPLACE)
+																.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.chars = BufferPool.getCharBuffer();
+		this.charBuf = CharBuffer.wrap(chars);
+		this.bytes = BufferPool.getByteBuffer();
+		this.byteBuf = ByteBuffer.wrap(bytes);
+	}
+
+	/**
+	 * Creates a new writer that writes to the given file. If the file already exists it is overwritten.
+	 *
+	 * @param file	the path of the file to write to
+	 * @return	the writer
+	 * @throws IOException	when the file cannot be opened
+	 */
+	public static Utf8Writer create(final Path file) throws IOException {
+		return new Utf8Writer(new FileOutputStream(file.toFile()));
+	}
+
+	@Override
+	public void write(final int c) throws IOException {
+		ensureOpen();
+		if (!charBuf.hasRemaining())
+			encode(false);
+		charBuf.put((char) c);
+	}
+
+	@Override
+	public void write(final char[] cbuf, final int off, final int len) throws IOException {
+		ensureOpen();
+		int i = off;
+		while (i < off + len) {
+			if (!charBuf.hasRemaining())
+				encode(false);
+			final int n = Math.min(off + len - i, charBuf.remaining());
+			charBuf.put(cbuf, i, n);
+			i += n;
+		}
+	}
+
+	@Override
+	public void write(final String str, final int off, final int len) throws IOException {
+		ensureOpen();
+		int i = off;
+		while (i < off + len) {
+			if (!charBuf.hasRemaining())
+				encode(false);
+			final int n = Math.min(off + len - i, charBuf.remaining());
+			str.getChars(i, i + n, chars, charBuf.position());
+			charBuf.position(charBuf.position() + n);
+			i += n;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		encode(false);
+		flushBytes();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (encoder == null)
+			return;
+		try {
+			encode(true);
+			while (encoder.flush(byteBuf).isOverflow())
+				flushBytes();
+			flushBytes();
+		} finally {
+			ENCODERS.offer(encoder);
+			BufferPool.release(chars);
+			BufferPool.release(bytes);
+			encoder = null;
+			chars = null;
+			charBuf = null;
+			bytes = null;
+			byteBuf = null;
+			out.close();
+		}
+	}
+
+	/**
+	 * Encodes the characters in the character buffer into the byte buffer, which is written to the stream whenever it
+	 * is full. When this is not the end of the input, a high surrogate at the end of the buffer remains in the buffer
+	 * until the next character is written, so surrogate pairs can be split over writes.
+	 *
+	 * @param endOfInput	indicates whether no more characters will be written
+	 * @throws IOException	when writing the encoded bytes fails
+	 */
+	private void encode(final boolean endOfInput) throws IOException {
+		charBuf.flip();
+		try {
+			CoderResult result;
+			while ((result = encoder.encode(charBuf, byteBuf, endOfInput)).isOverflow())
+				flushBytes();
+			if (result.isError())
+				result.throwException();
+		} finally {
+			charBuf.compact();
+		}
+	}
+
+	private void flushBytes() throws IOException {
+		if (byteBuf.position() > 0) {
+			out.write(bytes, 0, byteBuf.position());
+			byteBuf.clear();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (encoder == null)
+			throw new IOException("Writer closed");
+	}
+}
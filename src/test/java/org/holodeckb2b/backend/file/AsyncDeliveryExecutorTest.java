@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class AsyncDeliveryExecutorTest {
+
+	@Test
+	void testSharedInstance() {
+		assertSame(AsyncDeliveryExecutor.getInstance(3, 5, false), AsyncDeliveryExecutor.getInstance(3, 5, false));
+	}
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void testRejectWhenQueueFull(final boolean virtualThreads) throws InterruptedException {
+		final AsyncDeliveryExecutor executor = AsyncDeliveryExecutor.getInstance(1, 1, virtualThreads);
+		// The executor is shared, so when virtual threads are not supported both runs use the same instance
+		final long submitted = executor.getSubmittedCount();
+		final long rejected = executor.getRejectedCount();
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(2);
+		final Runnable blocking = () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			done.countDown();
+		};
+
+		assertTrue(executor.execute(blocking));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		assertEquals(1, executor.getActiveCount());
+		assertTrue(executor.execute(done::countDown));
+		assertEquals(1, executor.getQueueDepth());
+		assertFalse(executor.execute(done::countDown));
+		assertEquals(rejected + 1, executor.getRejectedCount());
+
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(submitted + 2, executor.getSubmittedCount());
+		assertTrue(executor.getMaxWaitTime() > 0);
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+
+import org.holodeckb2b.common.testhelpers.HolodeckB2BTestCore;
+import org.holodeckb2b.commons.testing.TestUtils;
+import org.holodeckb2b.commons.util.FileUtils;
+import org.holodeckb2b.interfaces.core.HolodeckB2BCoreInterface;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class SubmissionArchiverTest {
+
+	private static final Path testDir = TestUtils.getTestResource("archiving");
+
+	@BeforeAll
+	static void prepareTestDir() throws IOException {
+		if (!Files.exists(testDir))
+			Files.createDirectory(testDir);
+		HolodeckB2BCoreInterface.setImplementation(new HolodeckB2BTestCore(testDir));
+	}
+
+	@AfterAll
+	static void removeTestDir() throws IOException {
+		FileUtils.cleanDirectory(testDir);
+		Files.deleteIfExists(testDir);
+	}
+
+	@Test
+	void testArchiveAndRetrieve() throws IOException {
+		final long old = System.currentTimeMillis() - 2 * 86400 * 1000L;
+		for (int i = 0; i < 3; i++) {
+			final Path f = testDir.resolve("submission_" + i + ".accepted");
+			Files.write(f, createMMD("msg-" + i).getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(f, FileTime.fromMillis(old));
+		}
+		final Path noId = testDir.resolve("no_id.accepted");
+		Files.write(noId, createMMD(null).getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(noId, FileTime.fromMillis(old));
+		final Path recent = testDir.resolve("recent.accepted");
+		Files.write(recent, createMMD("msg-recent").getBytes(StandardCharsets.UTF_8));
+
+		final SubmissionArchiver worker = new SubmissionArchiver();
+		final HashMap<String, Object> params = new HashMap<>();
+		params.put("directory", testDir.toString());
+		params.put("minAge", "3600");
+		assertDoesNotThrow(() -> worker.setParameters(params));
+		assertDoesNotThrow(() -> worker.run());
+
+		assertFalse(Files.exists(testDir.resolve("submission_0.accepted")));
+		assertFalse(Files.exists(noId));
+		assertTrue(Files.exists(recent));
+
+		final SubmissionArchive archive = new SubmissionArchive(testDir.resolve("archive"));
+		final List<String> segments = archive.getSegments();
+		assertEquals(1, segments.size());
+
+		final byte[] byId = archive.retrieve("msg-1");
+		assertNotNull(byId);
+		assertEquals(createMMD("msg-1"), new String(byId, StandardCharsets.UTF_8));
+		final byte[] byName = archive.retrieve("no_id.accepted");
+		assertNotNull(byName);
+		assertEquals(createMMD(null), new String(byName, StandardCharsets.UTF_8));
+		assertNull(archive.retrieve("msg-recent"));
+	}
+
+	@Test
+	void testSameFileNames() throws IOException {
+		final Path dir = testDir.resolve("same-names");
+		final long old = System.currentTimeMillis() - 2 * 86400 * 1000L;
+		// Files with the same name in different date partitions
+		for (String partition : new String[] { "p1", "p2" }) {
+			final Path f = dir.resolve(partition).resolve("submission.accepted");
+			Files.createDirectories(f.getParent());
+			Files.write(f, createMMD("msg-" + partition).getBytes(StandardCharsets.UTF_8));
+			Files.setLastModifiedTime(f, FileTime.fromMillis(old));
+		}
+		final Path reused = dir.resolve("reused.accepted");
+		Files.write(reused, createMMD("msg-first").getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(reused, FileTime.fromMillis(old));
+
+		final SubmissionArchiver worker = new SubmissionArchiver();
+		final HashMap<String, Object> params = new HashMap<>();
+		params.put("directory", dir.toString());
+		params.put("minAge", "3600");
+		assertDoesNotThrow(() -> worker.setParameters(params));
+		assertDoesNotThrow(() -> worker.run());
+		assertFalse(Files.exists(reused));
+
+		// The file name is reused after the first file was archived
+		Files.write(reused, createMMD("msg-second").getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(reused, FileTime.fromMillis(old));
+		assertDoesNotThrow(() -> worker.run());
+		assertFalse(Files.exists(reused));
+
+		final SubmissionArchive archive = new SubmissionArchive(dir.resolve("archive"));
+		assertEquals(1, archive.getSegments().size());
+		for (String id : new String[] { "msg-p1", "msg-p2", "msg-first", "msg-second" }) {
+			final byte[] mmd = archive.retrieve(id);
+			assertNotNull(mmd, id + " not archived");
+			assertEquals(createMMD(id), new String(mmd, StandardCharsets.UTF_8));
+		}
+		assertNotNull(archive.retrieve("submission.accepted"));
+		assertNotNull(archive.retrieve("p2/submission.accepted"));
+	}
+
+	@Test
+	void testAlreadyArchived() throws IOException {
+		final Path dir = testDir.resolve("rerun");
+		Files.createDirectories(dir);
+		final long old = System.currentTimeMillis() - 2 * 86400 * 1000L;
+		final Path f = dir.resolve("submission.accepted");
+		Files.write(f, createMMD("msg-rerun").getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(f, FileTime.fromMillis(old));
+
+		final SubmissionArchiver worker = new SubmissionArchiver();
+		final HashMap<String, Object> params = new HashMap<>();
+		params.put("directory", dir.toString());
+		params.put("minAge", "3600");
+		assertDoesNotThrow(() -> worker.setParameters(params));
+		final Path copy = dir.resolve("copy");
+		Files.copy(f, copy);
+		assertDoesNotThrow(() -> worker.run());
+
+		// Simulate a run that failed before the archived file was removed
+		Files.move(copy, f);
+		Files.setLastModifiedTime(f, FileTime.fromMillis(old));
+		assertDoesNotThrow(() -> worker.run());
+		assertFalse(Files.exists(f));
+
+		final Path index = Files.list(dir.resolve("archive")).filter(p -> p.toString().endsWith(".idx")).findFirst()
+									.get();
+		assertEquals(1, Files.readAllLines(index).size());
+	}
+
+	@Test
+	void testExternalEntityNotResolved() throws IOException {
+		final Path dir = testDir.resolve("xxe");
+		Files.createDirectories(dir);
+		final Path secret = Files.write(dir.resolve("secret.txt"), "secret-content".getBytes(StandardCharsets.UTF_8));
+		final long old = System.currentTimeMillis() - 2 * 86400 * 1000L;
+		final Path f = dir.resolve("submission.accepted");
+		final String mmd = "<!DOCTYPE MessageMetaData [<!ENTITY xxe SYSTEM \"" + secret.toUri() + "\">]>"
+							+ createMMD("&xxe;");
+		Files.write(f, mmd.getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(f, FileTime.fromMillis(old));
+
+		final SubmissionArchiver worker = new SubmissionArchiver();
+		final HashMap<String, Object> params = new HashMap<>();
+		params.put("directory", dir.toString());
+		params.put("minAge", "3600");
+		assertDoesNotThrow(() -> worker.setParameters(params));
+		assertDoesNotThrow(() -> worker.run());
+		assertFalse(Files.exists(f));
+
+		// The entity is not resolved, so the file can only be found by its name
+		final SubmissionArchive archive = new SubmissionArchive(dir.resolve("archive"));
+		assertNull(archive.retrieve("secret-content"));
+		final byte[] archived = archive.retrieve("submission.accepted");
+		assertNotNull(archived);
+		assertEquals(mmd, new String(archived, StandardCharsets.UTF_8));
+	}
+
+	private static String createMMD(final String messageId) {
+		return "<MessageMetaData xmlns=\"http://holodeck-b2b.org/schemas/2014/06/mmd\">"
+				+ (messageId != null ? "<MessageInfo><MessageId>" + messageId + "</MessageId></MessageInfo>" : "")
+				+ "<CollaborationInfo><AgreementRef pmode=\"ex-pm-push\"/></CollaborationInfo>"
+				+ "</MessageMetaData>";
+	}
+}
@@ -19,21 +19,31 @@ package org.holodeckb2b.backend.file;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import org.holodeckb2b.backend.file.util.Threads;
 import org.holodeckb2b.common.testhelpers.HolodeckB2BTestCore;
 import org.holodeckb2b.common.testhelpers.TestMessageSubmitter;
 import org.holodeckb2b.commons.testing.TestUtils;
 import org.holodeckb2b.commons.util.FileUtils;
 import org.holodeckb2b.interfaces.core.HolodeckB2BCoreInterface;
+import org.holodeckb2b.interfaces.workerpool.TaskConfigurationException;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -165,6 +175,197 @@ public class SubmitOperationTest {
         assertEquals(numOfMMDs, ((TestMessageSubmitter) HolodeckB2BCoreInterface.getMessageSubmitter()).getAllSubmitted().size());
     }
 
+    @Test
+    public void testConcurrentProcessing() {
+    	final int numOfMMDs = 50;
+    	createMMD(numOfMMDs, false, null);
+
+    	SubmitOperation worker = new SubmitOperation();
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("concurrency", "4");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+    	assertDoesNotThrow(() -> worker.run());
+
+    	assertEquals(numOfMMDs, ((TestMessageSubmitter) testCore.getMessageSubmitter()).getAllSubmitted().size());
+    	for (int i = 0; i < numOfMMDs; i++)
+    		assertTrue(Files.exists(testDir.resolve("submission_" + i + ".accepted")));
+    }
+
+    @Test
+    public void testMaxFilesPerRun() {
+    	createMMD(10, false, null);
+
+    	SubmitOperation worker = new SubmitOperation();
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("maxFilesPerRun", "4");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+    	assertDoesNotThrow(() -> worker.run());
+    	assertEquals(4, ((TestMessageSubmitter) testCore.getMessageSubmitter()).getAllSubmitted().size());
+    	assertDoesNotThrow(() -> worker.run());
+    	assertDoesNotThrow(() -> worker.run());
+    	assertEquals(10, ((TestMessageSubmitter) testCore.getMessageSubmitter()).getAllSubmitted().size());
+    }
+
+    @Test
+    public void testVirtualThreads() {
+    	final int numOfMMDs = 50;
+    	createMMD(numOfMMDs, false, null);
+
+    	final AtomicInteger running = new AtomicInteger();
+    	final AtomicInteger maxRunning = new AtomicInteger();
+    	final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    	SubmitOperation worker = new SubmitOperation() {
+    		@Override
+    		protected void processMMDFile(final File f) {
+    			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+    			threads.add(Thread.currentThread());
+    			try {
+    				super.processMMDFile(f);
+    			} finally {
+    				running.decrementAndGet();
+    			}
+    		}
+    	};
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("concurrency", "5");
+    	params.put("useVirtualThreads", "true");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+    	assertDoesNotThrow(() -> worker.run());
+
+    	assertEquals(numOfMMDs, ((TestMessageSubmitter) testCore.getMessageSubmitter()).getAllSubmitted().size());
+    	assertTrue(maxRunning.get() <= 5);
+    	// Virtual threads are not pooled, so each file is processed by its own thread
+    	if (Threads.isVirtualThreadSupported())
+    		assertEquals(numOfMMDs, threads.size());
+    }
+
+    @Test
+    public void testOutcomeDirectories() throws IOException {
+    	createMMD(1, false, null);
+    	Files.write(testDir.resolve("invalid.mmd"), "<MessageMetaData".getBytes());
+
+    	SubmitOperation worker = new SubmitOperation();
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("acceptedDirectory", "accepted");
+    	params.put("rejectedDirectory", "rejected");
+    	params.put("partitionByDate", "true");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+    	assertDoesNotThrow(() -> worker.run());
+
+    	final String today = LocalDate.now().toString();
+    	assertTrue(Files.exists(testDir.resolve("accepted").resolve(today).resolve("submission_0.accepted")));
+    	assertTrue(Files.exists(testDir.resolve("rejected").resolve(today).resolve("invalid.rejected")));
+    	assertTrue(Files.exists(testDir.resolve("rejected").resolve(today).resolve("invalid.err")));
+    	assertFalse(Files.exists(testDir.resolve("submission_0.accepted")));
+    }
+
+    @Test
+    public void testUniqueFileNames() throws IOException {
+    	createMMD(1, false, null);
+    	Files.write(testDir.resolve("invalid.mmd"), "<MessageMetaData".getBytes());
+
+    	SubmitOperation worker = new SubmitOperation();
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("uniqueFileNames", "true");
+    	params.put("nodeId", "node1");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+    	assertDoesNotThrow(() -> worker.run());
+
+    	final List<String> names = Files.list(testDir).map(f -> f.getFileName().toString()).collect(Collectors.toList());
+    	assertTrue(names.stream().anyMatch(n -> n.matches("submission_0_node1-[0-9a-z]+-[0-9a-z]+\\.accepted")));
+    	assertTrue(names.stream().anyMatch(n -> n.matches("invalid_node1-[0-9a-z]+-[0-9a-z]+\\.rejected")));
+    	assertTrue(names.stream().anyMatch(n -> n.matches("invalid_node1-[0-9a-z]+-[0-9a-z]+\\.err")));
+
+    	params.put("nodeId", "node/1");
+    	assertThrows(TaskConfigurationException.class, () -> worker.setParameters(params));
+    }
+
+    @Test
+    public void testFileEvents() {
+    	SubmitOperation worker = new SubmitOperation();
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("useFileEvents", "true");
+    	params.put("reconciliationInterval", "2");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+
+    	final Thread workerThread = new Thread(worker);
+    	workerThread.start();
+    	try {
+    		// Wait until the initial reconciliation scan has been done, then create the MMD
+    		Thread.sleep(500);
+    		createMMD(1, true, false);
+    		Thread.sleep(500);
+    		assertEquals(1, ((TestMessageSubmitter) testCore.getMessageSubmitter()).getAllSubmitted().size());
+    		workerThread.join();
+    	} catch (InterruptedException e) {
+    		fail("Worker did not finish");
+    	}
+    	assertTrue(Files.exists(testDir.resolve("submission_0.accepted")));
+    }
+
+    @Test
+    public void testPersisterParser() {
+    	createMMD(2, true, false);
+
+    	SubmitOperation worker = new SubmitOperation();
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("useStreamingParser", "false");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+    	assertDoesNotThrow(() -> worker.run());
+
+    	assertEquals(2, ((TestMessageSubmitter) testCore.getMessageSubmitter()).getAllSubmitted().size());
+    	assertTrue(Files.exists(testDir.resolve("submission_0.accepted")));
+    }
+
+    @Test
+    public void testValidateMMD() throws IOException {
+    	createMMD(1, true, false);
+    	try (FileWriter fw = new FileWriter(testDir.resolve("no_conversation.mmd").toFile())) {
+    		fw.write("<MessageMetaData xmlns=\"http://holodeck-b2b.org/schemas/2014/06/mmd\">" +
+    				 "    <CollaborationInfo>" +
+    				 "        <AgreementRef pmode=\"ex-pm-push\"/>" +
+    				 "    </CollaborationInfo>" +
+    				 "</MessageMetaData>");
+    	}
+
+    	SubmitOperation worker = new SubmitOperation();
+
+    	HashMap<String, Object> params = new HashMap<>();
+    	params.put("watchPath", testDir.toString());
+    	params.put("validateMMD", "true");
+
+    	assertDoesNotThrow(() -> worker.setParameters(params));
+    	assertDoesNotThrow(() -> worker.run());
+
+    	assertEquals(1, ((TestMessageSubmitter) testCore.getMessageSubmitter()).getAllSubmitted().size());
+    	assertTrue(Files.exists(testDir.resolve("submission_0.accepted")));
+    	assertTrue(Files.exists(testDir.resolve("no_conversation.rejected")));
+    	final String error = new String(Files.readAllBytes(testDir.resolve("no_conversation.err")));
+    	assertTrue(error.contains("ConversationId"));
+    	assertFalse(error.contains("Stacktrace"));
+    }
+
     private void createMMD(int numOfMMDs, boolean withPayload, Boolean deleteFiles) {
         for(int i = 0; i < numOfMMDs; i++) {
         	try (FileWriter fw = new FileWriter(testDir.resolve("submission_" + i + ".mmd").toFile())) {
@@ -16,39 +16,78 @@
  */
 package org.holodeckb2b.backend.file.delivers;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import org.holodeckb2b.backend.file.mmd.MessageMetaData;
+import org.holodeckb2b.backend.file.delivers.AbstractFileDeliverer.DirectoryLayout;
+import org.holodeckb2b.backend.file.delivers.AbstractFileDeliverer.LaneKey;
+import org.holodeckb2b.backend.file.delivers.AbstractFileDeliverer.PayloadTransferMode;
+import org.holodeckb2b.backend.file.journal.DeliveryJournal;
+import org.holodeckb2b.backend.file.journal.DeliveryJournalReader;
+import org.holodeckb2b.backend.file.journal.DeliveryRingBuffer;
+import org.holodeckb2b.backend.file.journal.DeliveryRingBufferReader;
+import org.holodeckb2b.backend.file.journal.JournalRecord;
+import org.holodeckb2b.backend.file.journal.RingBufferEntry;
+import org.holodeckb2b.backend.file.mmd.CollaborationInfo;
+import org.holodeckb2b.backend.file.mmd.PartInfo;
+import org.holodeckb2b.backend.file.mmd.PartyId;
+import org.holodeckb2b.backend.file.mmd.TradingPartner;
+import org.holodeckb2b.backend.file.mmd.UserMessageView;
+import org.holodeckb2b.backend.file.util.GroupCommitSyncer;
+import org.holodeckb2b.backend.file.util.UniqueNames;
+import org.holodeckb2b.common.messagemodel.Payload;
+import org.holodeckb2b.common.messagemodel.Receipt;
 import org.holodeckb2b.common.messagemodel.UserMessage;
 import org.holodeckb2b.common.testhelpers.HolodeckB2BTestCore;
 import org.holodeckb2b.commons.testing.TestUtils;
 import org.holodeckb2b.commons.util.FileUtils;
 import org.holodeckb2b.interfaces.core.HolodeckB2BCoreInterface;
 import org.holodeckb2b.interfaces.delivery.MessageDeliveryException;
+import org.holodeckb2b.interfaces.general.IPartyId;
 import org.holodeckb2b.interfaces.messagemodel.IPayload.Containment;
 import org.holodeckb2b.interfaces.messagemodel.ISignalMessage;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 class AbstractFileDelivererTest {
 
 	private static HolodeckB2BTestCore testCore;
     private static final Path testDir = TestUtils.getTestResource("deliveries");
 
+    @TempDir
+    Path journalDir;
+    private static final Path storageDir = TestUtils.getTestResource("payloadstore");
+
     @BeforeAll
     static void prepareTestDir() throws IOException {
     	if (!Files.exists(testDir))
     		Files.createDirectory(testDir);
+    	if (!Files.exists(storageDir))
+    		Files.createDirectory(storageDir);
 
     	testCore = new HolodeckB2BTestCore(testDir);
     	HolodeckB2BCoreInterface.setImplementation(testCore);
@@ -58,11 +97,14 @@ class AbstractFileDelivererTest {
     static void removeTestDit() throws IOException {
     	FileUtils.cleanDirectory(testDir);
     	Files.deleteIfExists(testDir);
+    	FileUtils.cleanDirectory(storageDir);
+    	Files.deleteIfExists(storageDir);
     }
 
     @BeforeEach
     public void prepareTest() throws IOException {
     	FileUtils.cleanDirectory(testDir);
+    	FileUtils.cleanDirectory(storageDir);
     	testCore.cleanStorage();
     }
 
@@ -135,7 +177,468 @@ class AbstractFileDelivererTest {
 					 savedPl.getFileName().toString());
 	}
 
+	@Test
+	void testFilePayloadContent() throws IOException {
+		final Path source = TestUtils.getTestResource("payloads/dandelion.jpg");
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		TestPayload pl = new TestPayload(source);
+		pl.setMimeType("image/jpeg");
+		pl.setContainment(Containment.ATTACHMENT);
+		pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+		userMessage.addPayload(pl);
+
+		assertDoesNotThrow(() -> new TestImpl(testDir).deliver(userMessage));
+
+		Path savedPl = Files.list(testDir).findFirst().orElse(null);
+		assertNotNull(savedPl);
+		assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(savedPl));
+	}
+
+	@Test
+	void testStreamPayloadContent() throws IOException {
+		final byte[] content = Files.readAllBytes(TestUtils.getTestResource("payloads/test.xml"));
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		Payload pl = new Payload() {
+			@Override
+			public InputStream getContent() throws IOException {
+				return new ByteArrayInputStream(content);
+			}
+		};
+		pl.setMimeType("text/xml");
+		pl.setContainment(Containment.ATTACHMENT);
+		pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+		userMessage.addPayload(pl);
+
+		assertDoesNotThrow(() -> new TestImpl(testDir).deliver(userMessage));
+
+		Path savedPl = Files.list(testDir).findFirst().orElse(null);
+		assertNotNull(savedPl);
+		assertArrayEquals(content, Files.readAllBytes(savedPl));
+	}
+
+	@Test
+	void testPayloadReadOnce() throws IOException {
+		final byte[] content = Files.readAllBytes(TestUtils.getTestResource("payloads/dandelion.jpg"));
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		// The content of this payload can only be read once and no MIME type is given
+		Payload pl = new Payload() {
+			private boolean read = false;
+			@Override
+			public InputStream getContent() throws IOException {
+				if (read)
+					throw new IOException("Content already read");
+				read = true;
+				return new ByteArrayInputStream(content);
+			}
+		};
+		pl.setContainment(Containment.ATTACHMENT);
+		pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+		userMessage.addPayload(pl);
+
+		assertDoesNotThrow(() -> new TestImpl(testDir).deliver(userMessage));
+
+		assertEquals(1, Files.list(testDir).count());
+		Path savedPl = Files.list(testDir).findFirst().orElse(null);
+		assertNotNull(savedPl);
+		assertEquals("pl-" + userMessage.getMessageId() + "-"
+								+ pl.getPayloadURI().substring(0, pl.getPayloadURI().indexOf('@')) + ".jpg",
+					 savedPl.getFileName().toString());
+		assertArrayEquals(content, Files.readAllBytes(savedPl));
+	}
+
+	@Test
+	void testParallelPayloads() throws IOException {
+		final byte[] content = Files.readAllBytes(TestUtils.getTestResource("payloads/dandelion.jpg"));
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		for (int i = 0; i < 10; i++) {
+			TestPayload pl = new TestPayload(TestUtils.getTestResource("payloads/dandelion.jpg"));
+			pl.setMimeType("image/jpeg");
+			pl.setContainment(Containment.ATTACHMENT);
+			pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+			userMessage.addPayload(pl);
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			TestImpl deliverer = new TestImpl(testDir);
+			deliverer.setPayloadWriteExecutor(executor);
+			assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(10, Files.list(testDir).count());
+		for (Path savedPl : Files.list(testDir).collect(Collectors.toList()))
+			assertArrayEquals(content, Files.readAllBytes(savedPl));
+	}
+
+	@Test
+	void testParallelPayloadsFailure() throws IOException {
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		for (int i = 0; i < 10; i++) {
+			final boolean fail = i == 5;
+			TestPayload pl = new TestPayload(TestUtils.getTestResource("payloads/dandelion.jpg")) {
+				@Override
+				public InputStream getContent() throws IOException {
+					if (fail)
+						throw new IOException("Simulated failure");
+					return super.getContent();
+				}
+			};
+			pl.setMimeType("image/jpeg");
+			pl.setContainment(Containment.ATTACHMENT);
+			pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+			userMessage.addPayload(pl);
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			TestImpl deliverer = new TestImpl(testDir);
+			deliverer.setPayloadWriteExecutor(executor);
+			assertThrows(MessageDeliveryException.class, () -> deliverer.deliver(userMessage));
+		} finally {
+			executor.shutdown();
+		}
+
+		// All payload files should have been removed
+		assertEquals(0, Files.list(testDir).count());
+	}
+
+	@Test
+	void testDurableDelivery() throws IOException {
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		TestPayload pl = new TestPayload(TestUtils.getTestResource("payloads/dandelion.jpg"));
+		pl.setMimeType("image/jpeg");
+		pl.setContainment(Containment.ATTACHMENT);
+		pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+		userMessage.addPayload(pl);
+
+		final GroupCommitSyncer syncer = new GroupCommitSyncer(0);
+		TestImpl deliverer = new TestImpl(testDir) {
+			@Override
+			protected String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException {
+				final Path tmpFile = testDir.resolve("mi-" + mmd.getMessageId() + TMP_EXTENSION);
+				Files.write(tmpFile, mmd.getMessageId().getBytes());
+				return changeExt(tmpFile);
+			}
+		};
+		deliverer.setSyncer(syncer);
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		assertEquals(2, Files.list(testDir).count());
+		assertTrue(Files.exists(testDir.resolve("mi-" + userMessage.getMessageId() + ".xml")));
+		// The payload is synced while it is written, so only the directory is synced before and after renaming the
+		// meta-data file
+		assertEquals(2, syncer.getBatchCount());
+	}
+
+	@Test
+	void testLinkPayload() throws IOException {
+		final Path stored = storePayload();
+		final byte[] content = Files.readAllBytes(stored);
+		UserMessage userMessage = createMessageWithStoredPayload(stored);
 
+		TestImpl deliverer = new TestImpl(testDir);
+		deliverer.setPayloadTransferMode(PayloadTransferMode.LINK);
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		Path savedPl = Files.list(testDir).findFirst().orElse(null);
+		assertNotNull(savedPl);
+		assertTrue(Files.exists(stored));
+		assertTrue(Files.isSameFile(stored, savedPl));
+		assertArrayEquals(content, Files.readAllBytes(savedPl));
+	}
+
+	@Test
+	void testMovePayload() throws IOException {
+		final Path stored = storePayload();
+		final byte[] content = Files.readAllBytes(stored);
+		UserMessage userMessage = createMessageWithStoredPayload(stored);
+
+		TestImpl deliverer = new TestImpl(testDir);
+		deliverer.setPayloadTransferMode(PayloadTransferMode.MOVE);
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		Path savedPl = Files.list(testDir).findFirst().orElse(null);
+		assertNotNull(savedPl);
+		assertFalse(Files.exists(stored));
+		assertArrayEquals(content, Files.readAllBytes(savedPl));
+	}
+
+	@Test
+	void testMovePayloadRollback() throws IOException {
+		final Path stored = storePayload();
+		final byte[] content = Files.readAllBytes(stored);
+		UserMessage userMessage = createMessageWithStoredPayload(stored);
+
+		TestImpl deliverer = new TestImpl(testDir) {
+			@Override
+			protected String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException {
+				throw new IOException("Simulated failure");
+			}
+		};
+		deliverer.setPayloadTransferMode(PayloadTransferMode.MOVE);
+		assertThrows(MessageDeliveryException.class, () -> deliverer.deliver(userMessage));
+
+		assertEquals(0, Files.list(testDir).count());
+		assertTrue(Files.exists(stored));
+		assertArrayEquals(content, Files.readAllBytes(stored));
+	}
+
+	@Test
+	void testLinkUnknownFile() throws IOException {
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		TestPayload pl = new TestPayload(TestUtils.getTestResource("payloads/test.xml"));
+		pl.setMimeType("text/xml");
+		pl.setContainment(Containment.ATTACHMENT);
+		pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+		userMessage.addPayload(pl);
+
+		// The file of the payload is not known, so the content should be copied
+		TestImpl deliverer = new TestImpl(testDir);
+		deliverer.setPayloadTransferMode(PayloadTransferMode.LINK);
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		Path savedPl = Files.list(testDir).findFirst().orElse(null);
+		assertNotNull(savedPl);
+		assertFalse(Files.isSameFile(TestUtils.getTestResource("payloads/test.xml"), savedPl));
+		assertArrayEquals(Files.readAllBytes(TestUtils.getTestResource("payloads/test.xml")),
+						  Files.readAllBytes(savedPl));
+	}
+
+	@Test
+	void testHashLayout() throws IOException {
+		final Path stored = storePayload();
+		UserMessage userMessage = createMessageWithStoredPayload(stored);
+
+		final Path[] miDir = new Path[1];
+		TestImpl deliverer = new TestImpl(testDir) {
+			@Override
+			protected String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException {
+				miDir[0] = targetDir;
+				// The payload location must be relative to the directory of the meta-data file
+				assertTrue(Files.exists(targetDir.resolve(mmd.getPayloads().get(0).getContentLocation())));
+				return mmd.getMessageId();
+			}
+		};
+		deliverer.setDirectoryLayout(DirectoryLayout.HASH);
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		final String subDir = AbstractFileDeliverer.hashDirectory(userMessage.getMessageId());
+		assertTrue(subDir.matches("[0-9a-f]{2}/[0-9a-f]{2}"));
+		assertEquals(testDir.resolve(subDir), miDir[0]);
+		assertEquals(1, Files.list(miDir[0]).count());
+	}
+
+	@Test
+	void testHourLayout() throws IOException {
+		UserMessage userMessage = createMessageWithStoredPayload(storePayload());
+
+		final Path[] miDir = new Path[1];
+		TestImpl deliverer = new TestImpl(testDir) {
+			@Override
+			protected String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException {
+				miDir[0] = targetDir;
+				return mmd.getMessageId();
+			}
+		};
+		deliverer.setDirectoryLayout(DirectoryLayout.HOUR);
+		deliverer.setSyncer(new GroupCommitSyncer(0));
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		assertEquals(4, testDir.relativize(miDir[0]).getNameCount());
+		assertEquals(1, Files.list(miDir[0]).count());
+	}
+
+	@Test
+	void testLayoutRollback() throws IOException {
+		UserMessage userMessage = createMessageWithStoredPayload(storePayload());
+
+		TestImpl deliverer = new TestImpl(testDir) {
+			@Override
+			protected String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException {
+				throw new IOException("Simulated failure");
+			}
+		};
+		deliverer.setDirectoryLayout(DirectoryLayout.DAY);
+		assertThrows(MessageDeliveryException.class, () -> deliverer.deliver(userMessage));
+
+		try (Stream<Path> files = Files.walk(testDir)) {
+			assertTrue(files.allMatch(Files::isDirectory));
+		}
+	}
+
+	@Test
+	void testUniqueFileNames() throws IOException {
+		UserMessage userMessage = createMessageWithStoredPayload(storePayload());
+
+		TestImpl deliverer = new TestImpl(testDir) {
+			@Override
+			protected String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException {
+				final Path tmpFile = createFile(targetDir, "mi-" + getFileName(mmd.getMessageId()) + TMP_EXTENSION);
+				return changeExt(tmpFile);
+			}
+		};
+		deliverer.setUniqueNames(new UniqueNames("node1"));
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		final List<String> names = Files.list(testDir).map(f -> f.getFileName().toString())
+																			.collect(Collectors.toList());
+		assertEquals(2, names.size());
+		assertTrue(names.stream().anyMatch(n -> n.matches("pl-node1-[0-9a-z]+-[0-9a-z]+\\.jpg")));
+		assertTrue(names.stream().anyMatch(n -> n.matches("mi-node1-[0-9a-z]+-[0-9a-z]+\\.xml")));
+	}
+
+	@Test
+	void testJournal() throws IOException {
+		UserMessage userMessage = createMessageWithStoredPayload(storePayload());
+
+		TestImpl deliverer = new TestImpl(testDir);
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 1024 * 1024, 0)) {
+			deliverer.setJournal(journal);
+			assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+		}
+
+		try (DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, 0)) {
+			final JournalRecord record = reader.next();
+			assertNotNull(record);
+			assertEquals("UserMessage", record.getType());
+			assertEquals(userMessage.getMessageId(), record.getMessageId());
+			assertEquals(userMessage.getMessageId(), record.getMetaDataFile());
+			assertEquals(1, record.getPayloadFiles().size());
+			assertTrue(Files.exists(Paths.get(record.getPayloadFiles().get(0))));
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	void testRingBuffer() throws IOException {
+		UserMessage userMessage = createMessageWithStoredPayload(storePayload());
+
+		final Path ringBufferFile = journalDir.resolve("deliveries.ring");
+		TestImpl deliverer = new TestImpl(testDir);
+		deliverer.setRingBuffer(new DeliveryRingBuffer(ringBufferFile, 16, 256));
+		final DeliveryRingBufferReader reader = new DeliveryRingBufferReader(ringBufferFile);
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+
+		final RingBufferEntry entry = reader.poll();
+		assertNotNull(entry);
+		assertEquals("UserMessage", entry.getType());
+		assertEquals(userMessage.getMessageId(), entry.getMessageId());
+		assertEquals(userMessage.getMessageId(), entry.getMetaDataFile());
+		assertNull(reader.poll());
+	}
+
+	@Test
+	void testConversationLanes() throws IOException {
+		TestImpl deliverer = new TestImpl(testDir);
+		deliverer.setLanes(8, LaneKey.CONVERSATION);
+
+		final String[] convIds = { "conv-1", "conv-2", "conv-3" };
+		final int[] convLanes = new int[convIds.length];
+		for (int i = 0; i < convIds.length; i++)
+			convLanes[i] = deliverer.getLane(createMessage(convIds[i], null));
+		// Messages of the same conversation must always be delivered in the same lane
+		for (int n = 0; n < 10; n++)
+			for (int i = 0; i < convIds.length; i++) {
+				final int lane = deliverer.getLane(createMessage(convIds[i], null));
+				assertEquals(convLanes[i], lane);
+				assertTrue(lane >= 0 && lane < 8);
+			}
+
+		UserMessage userMessage = createMessageWithStoredPayload(storePayload());
+		final CollaborationInfo ci = new CollaborationInfo();
+		ci.setConversationId(convIds[0]);
+		userMessage.setCollaborationInfo(ci);
+		assertDoesNotThrow(() -> deliverer.deliver(userMessage));
+		assertEquals(1, Files.list(testDir.resolve("lane-" + convLanes[0])).count());
+	}
+
+	@Test
+	void testSenderLanes() {
+		TestImpl deliverer = new TestImpl(testDir);
+		deliverer.setLanes(16, LaneKey.SENDER);
+
+		// The lowest PartyId should be used, independent of the order
+		final int lane = deliverer.getLane(createMessage(null, new String[] { "b-party", "a-party" }));
+		assertEquals(lane, deliverer.getLane(createMessage(null, new String[] { "a-party", "b-party" })));
+		assertEquals(lane, deliverer.getLane(createMessage(null, new String[] { "a-party" })));
+	}
+
+	@Test
+	void testSignalLanes() {
+		TestImpl deliverer = new TestImpl(testDir);
+		deliverer.setLanes(16, LaneKey.CONVERSATION);
+
+		// Signals are partitioned by the referenced message id, or their own when there is no reference
+		final Receipt receipt = new Receipt();
+		receipt.setMessageId(UUID.randomUUID().toString());
+		receipt.setRefToMessageId("referenced-msg-id");
+		final TestImpl byMsgId = new TestImpl(testDir);
+		byMsgId.setLanes(16, LaneKey.MESSAGE);
+		final UserMessage referenced = new UserMessage();
+		referenced.setMessageId("referenced-msg-id");
+		assertEquals(byMsgId.getLane(referenced), deliverer.getLane(receipt));
+
+		receipt.setRefToMessageId(null);
+		referenced.setMessageId(receipt.getMessageId());
+		assertEquals(byMsgId.getLane(referenced), deliverer.getLane(receipt));
+	}
+
+	private UserMessage createMessage(String convId, String[] senderIds) {
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		if (convId != null) {
+			final CollaborationInfo ci = new CollaborationInfo();
+			ci.setConversationId(convId);
+			userMessage.setCollaborationInfo(ci);
+		}
+		if (senderIds != null) {
+			final TradingPartner sender = new TradingPartner();
+			final List<IPartyId> pids = new ArrayList<>();
+			for (String id : senderIds) {
+				final PartyId pid = new PartyId();
+				pid.setId(id);
+				pids.add(pid);
+			}
+			sender.setPartyIds(pids);
+			userMessage.setSender(sender);
+		}
+		return userMessage;
+	}
+
+	private Path storePayload() throws IOException {
+		final Path stored = storageDir.resolve(UUID.randomUUID().toString());
+		Files.copy(TestUtils.getTestResource("payloads/dandelion.jpg"), stored);
+		return stored;
+	}
+
+	private UserMessage createMessageWithStoredPayload(Path stored) {
+		UserMessage userMessage = new UserMessage();
+		userMessage.setMessageId(UUID.randomUUID().toString());
+		userMessage.setTimestamp(new Date());
+		PartInfo pl = new PartInfo();
+		pl.setContentLocation(stored.toString());
+		pl.setMimeType("image/jpeg");
+		pl.setContainment(Containment.ATTACHMENT);
+		pl.setPayloadURI(UUID.randomUUID().toString() + "@test.holodeck-b2b.org");
+		userMessage.addPayload(pl);
+		return userMessage;
+	}
 
 	class TestImpl extends AbstractFileDeliverer {
 
@@ -144,7 +647,7 @@ class AbstractFileDelivererTest {
 		}
 
 		@Override
-		protected String writeUserMessageInfoToFile(MessageMetaData mmd) throws IOException {
+		protected String writeUserMessageInfoToFile(UserMessageView mmd, Path targetDir) throws IOException {
 			return mmd.getMessageId();
 		}
 
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.delivers;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+import org.holodeckb2b.backend.file.mmd.MMDReader;
+import org.holodeckb2b.backend.file.mmd.MessageMetaData;
+import org.holodeckb2b.backend.file.mmd.PartInfo;
+import org.holodeckb2b.commons.testing.TestUtils;
+import org.holodeckb2b.commons.util.FileUtils;
+
+/**
+ * Simple benchmark that measures the number of bytes allocated on the heap per delivered message for each of the
+ * delivery formats. The message delivered is the one described by the <code>mmd/full.mmd</code> test resource, so
+ * it contains two payloads with content and an external one. As detection of the MIME type by Tika allocates much more
+ * than the deliverer itself, the MIME type of the payloads is set. The benchmark uses the allocation counter of the
+ * HotSpot JVM and is not executed as part of the build, run it using:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.holodeckb2b.backend.file.delivers.DeliveryAllocationBenchmark [-Dexec.args=«iterations»]
+ * </pre>
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ */
+public class DeliveryAllocationBenchmark {
+
+	public static void main(final String[] args) throws Exception {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		for (final PartInfo p : mmd.getPayloads())
+			if (p.getContentLocation() != null) {
+				p.setContentLocation(TestUtils.getTestResource(p.getContentLocation()).toString());
+				if (p.getMimeType() == null)
+					p.setMimeType("text/xml");
+			}
+
+		final Path tempDir = Files.createTempDirectory("delivery-benchmark");
+		try {
+			run("mmd", MMDDeliverer::new, mmd, tempDir, iterations);
+			run("ebms", EbmsFileDeliverer::new, mmd, tempDir, iterations);
+			run("single_xml", SingleXMLDeliverer::new, mmd, tempDir, iterations);
+		} finally {
+			FileUtils.cleanDirectory(tempDir);
+			Files.deleteIfExists(tempDir);
+		}
+	}
+
+	private static void run(final String format, final Function<Path, AbstractFileDeliverer> deliverer,
+							final MessageMetaData mmd, final Path dir, final int iterations) throws Exception {
+		final com.sun.management.ThreadMXBean threadBean =
+									(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		final AbstractFileDeliverer d = deliverer.apply(dir);
+
+		// Warm up before measuring
+		for (int i = 0; i < iterations / 4; i++) {
+			d.deliver(mmd);
+			FileUtils.cleanDirectory(dir);
+		}
+
+		long allocated = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			final long before = threadBean.getThreadAllocatedBytes(threadId);
+			d.deliver(mmd);
+			allocated += threadBean.getThreadAllocatedBytes(threadId) - before;
+			FileUtils.cleanDirectory(dir);
+		}
+		final double time = (System.nanoTime() - start) / (iterations * 1000.0);
+		System.out.printf("%-10s : %10d bytes/message, %8.1f us/message (incl. cleanup)%n", format,
+						  allocated / iterations, time);
+	}
+}
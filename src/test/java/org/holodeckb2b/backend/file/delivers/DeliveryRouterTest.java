@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.delivers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.holodeckb2b.backend.file.mmd.CollaborationInfo;
+import org.holodeckb2b.backend.file.mmd.PartyId;
+import org.holodeckb2b.backend.file.mmd.Property;
+import org.holodeckb2b.backend.file.mmd.Service;
+import org.holodeckb2b.backend.file.mmd.TradingPartner;
+import org.holodeckb2b.common.messagemodel.UserMessage;
+import org.holodeckb2b.interfaces.general.IPartyId;
+import org.junit.jupiter.api.Test;
+
+class DeliveryRouterTest {
+
+	@Test
+	void testFirstMatchingRule() {
+		final DeliveryRouter<String> router = new DeliveryRouter<>();
+		router.addRule(criteria(DeliveryRouter.SERVICE, "orders", DeliveryRouter.ACTION, "new"), "new-orders");
+		router.addRule(criteria(DeliveryRouter.SERVICE, "orders"), "orders");
+		router.addRule(criteria(DeliveryRouter.ACTION, "new", "update"), "other-new");
+
+		assertEquals("new-orders", router.route(createMessage("orders", "new", null, null, null)));
+		assertEquals("orders", router.route(createMessage("orders", "cancel", null, null, null)));
+		assertEquals("other-new", router.route(createMessage("invoices", "update", null, null, null)));
+		assertNull(router.route(createMessage("invoices", "cancel", null, null, null)));
+		assertNull(router.route(createMessage(null, null, null, null, null)));
+	}
+
+	@Test
+	void testPartiesAndMPC() {
+		final DeliveryRouter<String> router = new DeliveryRouter<>();
+		router.addRule(criteria(DeliveryRouter.SENDER, "big-partner", DeliveryRouter.MPC, "urn:fast"), "fast");
+		router.addRule(criteria(DeliveryRouter.RECEIVER, "dept-a"), "dept-a");
+
+		final UserMessage m = createMessage("svc", "act", "urn:fast", null, null);
+		m.setSender(createPartner("other", "big-partner"));
+		assertEquals("fast", router.route(m));
+		m.setMPC("urn:slow");
+		assertNull(router.route(m));
+		m.setReceiver(createPartner("dept-a"));
+		assertEquals("dept-a", router.route(m));
+	}
+
+	@Test
+	void testMessageProperty() {
+		final DeliveryRouter<String> router = new DeliveryRouter<>();
+		router.addRule(criteria(DeliveryRouter.PROPERTY_PREFIX + "priority", "high"), "priority");
+
+		assertEquals("priority", router.route(createMessage(null, null, null, "priority", "high")));
+		assertNull(router.route(createMessage(null, null, null, "priority", "low")));
+		assertNull(router.route(createMessage(null, null, null, "other", "high")));
+	}
+
+	@Test
+	void testInvalidRules() {
+		final DeliveryRouter<String> router = new DeliveryRouter<>();
+		assertTrue(router.isEmpty());
+		assertThrows(IllegalArgumentException.class, () -> router.addRule(Collections.emptyMap(), "t"));
+		assertThrows(IllegalArgumentException.class, () -> router.addRule(criteria("conversation", "c"), "t"));
+		assertThrows(IllegalArgumentException.class, () -> router.addRule(criteria("property.", "v"), "t"));
+		assertThrows(IllegalArgumentException.class,
+					() -> router.addRule(Collections.singletonMap(DeliveryRouter.SERVICE, Collections.emptyList()), "t"));
+		assertTrue(router.isEmpty());
+	}
+
+	@Test
+	void testManyRules() {
+		// Rules added after routing must be included as well
+		final DeliveryRouter<Integer> router = new DeliveryRouter<>();
+		for (int i = 0; i < 500; i++)
+			router.addRule(criteria(DeliveryRouter.ACTION, "action-" + i), i);
+		assertEquals(250, router.route(createMessage(null, "action-250", null, null, null)));
+		router.addRule(criteria(DeliveryRouter.ACTION, "action-500"), 500);
+		assertEquals(500, router.route(createMessage(null, "action-500", null, null, null)));
+	}
+
+	private static Map<String, List<String>> criteria(String criterion, String... values) {
+		final Map<String, List<String>> c = new HashMap<>();
+		c.put(criterion, Arrays.asList(values));
+		return c;
+	}
+
+	private static Map<String, List<String>> criteria(String criterion1, String value1, String criterion2,
+													  String value2) {
+		final Map<String, List<String>> c = criteria(criterion1, value1);
+		c.put(criterion2, Collections.singletonList(value2));
+		return c;
+	}
+
+	private static UserMessage createMessage(String service, String action, String mpc, String propName,
+											 String propValue) {
+		final UserMessage m = new UserMessage();
+		m.setMessageId(UUID.randomUUID().toString());
+		m.setMPC(mpc);
+		final CollaborationInfo ci = new CollaborationInfo();
+		if (service != null) {
+			final Service svc = new Service();
+			svc.setName(service);
+			ci.setService(svc);
+		}
+		ci.setAction(action);
+		m.setCollaborationInfo(ci);
+		if (propName != null) {
+			final Property p = new Property();
+			p.setName(propName);
+			p.setValue(propValue);
+			m.addMessageProperty(p);
+		}
+		return m;
+	}
+
+	private static TradingPartner createPartner(String... ids) {
+		final TradingPartner tp = new TradingPartner();
+		final List<IPartyId> pids = new ArrayList<>();
+		for (String id : ids) {
+			final PartyId pid = new PartyId();
+			pid.setId(id);
+			pids.add(pid);
+		}
+		tp.setPartyIds(pids);
+		return tp;
+	}
+}
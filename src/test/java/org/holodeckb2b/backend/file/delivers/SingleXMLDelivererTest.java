@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.delivers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.holodeckb2b.common.messagemodel.Payload;
+import org.holodeckb2b.common.messagemodel.UserMessage;
+import org.holodeckb2b.interfaces.messagemodel.IPayload.Containment;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class SingleXMLDelivererTest {
+
+	/**
+	 * Size of the payload used to check that memory use is bounded, by default 2.5 GB. The system property <code>
+	 * singlexml.largePayloadSize</code> can be used to test with another size.
+	 */
+	private static final long LARGE_PAYLOAD_SIZE = Long.getLong("singlexml.largePayloadSize", 5L * 512 * 1024 * 1024);
+
+	@TempDir
+	Path tempDir;
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, 1, 2, 3, SingleXMLDeliverer.CHUNK_SIZE - 1, SingleXMLDeliverer.CHUNK_SIZE,
+						  SingleXMLDeliverer.CHUNK_SIZE + 1, 3 * SingleXMLDeliverer.CHUNK_SIZE + 2 })
+	void testEncoding(int size) throws Exception {
+		final byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+
+		final StringWriter sw = new StringWriter();
+		final XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(sw);
+		xmlWriter.writeStartElement("Payload");
+		SingleXMLDeliverer.writeBase64(new ByteArrayInputStream(data), xmlWriter);
+		xmlWriter.writeEndElement();
+		xmlWriter.close();
+
+		assertEquals("<Payload>" + Base64.getEncoder().encodeToString(data) + "</Payload>", sw.toString());
+	}
+
+	/**
+	 * Delivers a User Message with a payload larger than 2 GB in a separate JVM with a heap that is much smaller than
+	 * the payload. As this writes a file of more than 3 GB it is only run when the tests tagged <i>large</i> are
+	 * included, e.g. using the <code>large-tests</code> profile.
+	 */
+	@Test
+	@Tag("large")
+	void testBoundedMemory() throws Exception {
+		final String classPath = String.join(File.pathSeparator, codeSource(SingleXMLDelivererTest.class),
+											 codeSource(SingleXMLDeliverer.class), System.getProperty("java.class.path"));
+		final Process p = new ProcessBuilder(System.getProperty("java.home") + File.separator + "bin" + File.separator
+													+ "java",
+											 "-Xmx32m", "-cp", classPath, LargePayloadDelivery.class.getName(),
+											 tempDir.toString(), Long.toString(LARGE_PAYLOAD_SIZE))
+										.inheritIO().start();
+		if (!p.waitFor(10, TimeUnit.MINUTES)) {
+			p.destroyForcibly();
+			throw new AssertionError("Delivery of large payload did not complete in time");
+		}
+		assertEquals(0, p.exitValue());
+
+		final List<Path> delivered;
+		try (Stream<Path> files = Files.list(tempDir)) {
+			delivered = files.collect(Collectors.toList());
+		}
+		assertEquals(1, delivered.size());
+		final Path file = delivered.get(0);
+		assertTrue(file.getFileName().toString().startsWith("message-"));
+
+		// Check the length of the encoded payload and the start of its content
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+			final String payloadStart = "xml:id=\"pl-1\">";
+			final byte[] head = new byte[64 * 1024];
+			raf.readFully(head);
+			final String headText = new String(head, StandardCharsets.UTF_8);
+			final int start = headText.indexOf(payloadStart) + payloadStart.length();
+			assertTrue(start >= payloadStart.length());
+
+			final byte[] tail = new byte[1024];
+			raf.seek(raf.length() - tail.length);
+			raf.readFully(tail);
+			final int end = new String(tail, StandardCharsets.US_ASCII).lastIndexOf("</Payload>");
+			assertTrue(end >= 0);
+			assertEquals((LARGE_PAYLOAD_SIZE + 2) / 3 * 4, raf.length() - tail.length + end - start);
+
+			final byte[] expected = new byte[3000];
+			new GeneratedInputStream(LARGE_PAYLOAD_SIZE).read(expected, 0, expected.length);
+			assertArrayEquals(expected, Base64.getDecoder().decode(headText.substring(start, start + 4000)));
+		}
+	}
+
+	private static String codeSource(Class<?> c) throws URISyntaxException {
+		return Paths.get(c.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+	}
+
+	/**
+	 * Delivers a User Message with one generated payload of the given size to the given directory using the
+	 * single_xml format. Exits with a non zero code if the delivery fails, including running out of memory.
+	 */
+	static class LargePayloadDelivery {
+
+		public static void main(String[] args) throws Exception {
+			final long size = Long.parseLong(args[1]);
+			final UserMessage userMessage = new UserMessage();
+			userMessage.setMessageId("large-payload@holodeck-b2b.org");
+			userMessage.setTimestamp(new Date());
+			final Payload payload = new Payload() {
+				@Override
+				public InputStream getContent() {
+					return new GeneratedInputStream(size);
+				}
+			};
+			payload.setContainment(Containment.ATTACHMENT);
+			payload.setPayloadURI("large@holodeck-b2b.org");
+			payload.setMimeType("application/octet-stream");
+			userMessage.addPayload(payload);
+
+			new SingleXMLDeliverer(Paths.get(args[0])).deliver(userMessage);
+		}
+	}
+
+	static class GeneratedInputStream extends InputStream {
+		private long remaining;
+
+		GeneratedInputStream(long size) {
+			remaining = size;
+		}
+
+		@Override
+		public int read() {
+			return remaining-- > 0 ? (int) (remaining & 0xff) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (remaining <= 0)
+				return -1;
+			final int n = (int) Math.min(len, remaining);
+			for (int i = 0; i < n; i++)
+				b[off + i] = (byte) (--remaining & 0xff);
+			return n;
+		}
+	}
+}
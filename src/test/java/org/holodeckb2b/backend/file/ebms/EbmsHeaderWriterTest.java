@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.ebms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.xml.namespace.QName;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.holodeckb2b.backend.file.delivers.EbmsFileDeliverer;
+import org.holodeckb2b.backend.file.delivers.SingleXMLDeliverer;
+import org.holodeckb2b.backend.file.mmd.MMDReader;
+import org.holodeckb2b.backend.file.mmd.MessageMetaData;
+import org.holodeckb2b.backend.file.mmd.PartInfo;
+import org.holodeckb2b.common.messagemodel.Receipt;
+import org.holodeckb2b.commons.testing.TestUtils;
+import org.holodeckb2b.interfaces.general.EbMSConstants;
+import org.holodeckb2b.interfaces.messagemodel.IMessageUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the documents written using the {@link EbmsHeaderWriter} are the same as the ones created by serializing
+ * the Axiom object tree built by the <code>UserMessageElement</code> and <code>ReceiptElement</code> facades. Each
+ * message unit is delivered twice, once with the streaming writer and once with the Axiom tree, and the resulting
+ * documents are compared byte for byte.
+ */
+class EbmsHeaderWriterTest {
+
+	private static final String EB = EbMSConstants.EBMS3_NS_PREFIX;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testUserMessage() throws Exception {
+		assertSameUserMessage(EbmsFileDeliverer::new, readFullMessage(), "mi-");
+	}
+
+	@Test
+	void testUserMessageSingleXML() throws Exception {
+		assertSameUserMessage(SingleXMLDeliverer::new, readFullMessage(), "message-");
+	}
+
+	@Test
+	void testMinimalUserMessage() throws Exception {
+		final MessageMetaData mmd = new MessageMetaData();
+		mmd.setMessageId("minimal@holodeck-b2b.org");
+		mmd.setTimestamp(new Date(0));
+
+		assertSameUserMessage(EbmsFileDeliverer::new, mmd, "mi-");
+	}
+
+	@Test
+	void testEmptyReceipt() throws Exception {
+		final Receipt receipt = new Receipt();
+		receipt.setMessageId("rcpt");
+		receipt.setTimestamp(new Date(0));
+		receipt.setRefToMessageId("ref");
+
+		assertEquals(deliver(EbmsFileDeliverer::new, false, receipt, "mi-"),
+					 deliver(EbmsFileDeliverer::new, true, receipt, "mi-"));
+	}
+
+	@Test
+	void testReceiptWithContent() throws Exception {
+		final Receipt receipt = new Receipt();
+		receipt.setMessageId("rcpt-nrr");
+		receipt.setTimestamp(new Date(0));
+		receipt.setRefToMessageId("ref");
+		final QName nrrInfo = new QName("http://docs.oasis-open.org/ebxml-bp/ebbp-signals-2.0",
+										"NonRepudiationInformation", "ebbp");
+		receipt.setContent(Collections.singletonList(OMAbstractFactory.getOMFactory().createOMElement(nrrInfo)));
+
+		final String streamed = deliver(EbmsFileDeliverer::new, true, receipt, "mi-");
+		assertTrue(streamed.contains(">" + nrrInfo.toString() + "</ReceiptChild>"));
+		assertEquals(deliver(EbmsFileDeliverer::new, false, receipt, "mi-"), streamed);
+	}
+
+	/**
+	 * Checks that the document written for the User Message using the streaming writer is the same as the one written
+	 * using the Axiom object tree and that both contain a correctly named <code>PartyInfo</code> element.
+	 */
+	private void assertSameUserMessage(final Function<Path, EbmsFileDeliverer> deliverer, final IMessageUnit msgUnit,
+									   final String prefix) throws Exception {
+		final String streamed = deliver(deliverer, true, msgUnit, prefix);
+
+		assertTrue(streamed.contains("</" + EB + ":MessageInfo><" + EB + ":PartyInfo>"));
+		assertEquals(deliver(deliverer, false, msgUnit, prefix), streamed);
+	}
+
+	/**
+	 * Delivers the message unit to a new directory and returns the content of the delivered meta-data document.
+	 */
+	private String deliver(final Function<Path, EbmsFileDeliverer> deliverer, final boolean streaming,
+						   final IMessageUnit msgUnit, final String prefix) throws Exception {
+		final Path dir = Files.createDirectory(tempDir.resolve((streaming ? "streaming-" : "axiom-")
+															   + msgUnit.getMessageId().replaceAll("\\W", "_")));
+		final EbmsFileDeliverer d = deliverer.apply(dir);
+		d.setUseStreamingWriter(streaming);
+		d.deliver(msgUnit);
+
+		final List<Path> docs;
+		try (Stream<Path> files = Files.list(dir)) {
+			docs = files.filter(f -> f.getFileName().toString().startsWith(prefix)
+									 && f.getFileName().toString().endsWith(".xml"))
+						.collect(Collectors.toList());
+		}
+		assertEquals(1, docs.size());
+		return new String(Files.readAllBytes(docs.get(0)), StandardCharsets.UTF_8);
+	}
+
+	private static MessageMetaData readFullMessage() throws IOException {
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		for (final PartInfo p : mmd.getPayloads())
+			if (p.getContentLocation() != null)
+				p.setContentLocation(TestUtils.getTestResource(p.getContentLocation()).toString());
+		return mmd;
+	}
+}
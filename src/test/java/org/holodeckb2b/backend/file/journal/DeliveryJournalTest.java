@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeliveryJournalTest {
+
+	@TempDir
+	Path journalDir;
+
+	@Test
+	void testAppendAndRead() throws IOException {
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 1024, 0);
+			 DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, 0)) {
+			assertNull(reader.next());
+
+			final long offset = journal.append("UserMessage", "msg-1", "/deliveries/mi-msg-1.xml",
+											   Arrays.asList("/deliveries/pl-1.xml", "/deliveries/with\ttab\\.txt"));
+			assertEquals(0, offset);
+			journal.append("Receipt", "rcpt-1", "/deliveries/mi-rcpt-1.xml", null);
+
+			JournalRecord record = reader.next();
+			assertNotNull(record);
+			assertEquals(0, record.getOffset());
+			assertEquals("UserMessage", record.getType());
+			assertEquals("msg-1", record.getMessageId());
+			assertEquals("/deliveries/mi-msg-1.xml", record.getMetaDataFile());
+			assertEquals(Arrays.asList("/deliveries/pl-1.xml", "/deliveries/with\ttab\\.txt"),
+						 record.getPayloadFiles());
+			assertNotNull(record.getTimestamp());
+
+			record = reader.next();
+			assertNotNull(record);
+			assertEquals("Receipt", record.getType());
+			assertTrue(record.getPayloadFiles().isEmpty());
+			assertEquals(journal.getEndOffset(), record.getNextOffset());
+			assertEquals(journal.getEndOffset(), reader.getOffset());
+			assertNull(reader.next());
+
+			// Records appended later are read when tailing
+			journal.append("Error", "err-1", "/deliveries/mi-err-1.xml", null);
+			record = reader.next();
+			assertNotNull(record);
+			assertEquals("err-1", record.getMessageId());
+		}
+	}
+
+	@Test
+	void testRolloverAndResume() throws IOException {
+		final long stored;
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 200, 0)) {
+			for (int i = 0; i < 20; i++)
+				journal.append("UserMessage", "msg-" + i, "/deliveries/mi-msg-" + i + ".xml", null);
+			assertTrue(DeliveryJournal.listSegments(journalDir).size() > 1);
+
+			try (DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, 0)) {
+				for (int i = 0; i < 8; i++)
+					assertEquals("msg-" + i, reader.next().getMessageId());
+				stored = reader.getOffset();
+			}
+		}
+
+		// Continue with the stored offset after the journal has been reopened
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 200, 0);
+			 DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, stored)) {
+			journal.append("UserMessage", "msg-20", "/deliveries/mi-msg-20.xml", null);
+			long expectedOffset = stored;
+			for (int i = 8; i <= 20; i++) {
+				final JournalRecord record = reader.next();
+				assertNotNull(record);
+				assertEquals("msg-" + i, record.getMessageId());
+				assertEquals(expectedOffset, record.getOffset());
+				expectedOffset = record.getNextOffset();
+			}
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	void testTailDuringRollover() throws Exception {
+		final int count = 3000;
+		// Segments that only fit two records, so the writer rolls over all the time while the reader tails the journal
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 150, 0);
+			 DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, 0)) {
+			final Thread writer = new Thread(() -> {
+				try {
+					for (int i = 0; i < count; i++)
+						journal.append("UserMessage", "msg-" + i, "/deliveries/mi-msg-" + i + ".xml", null);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			});
+			writer.start();
+			int read = 0;
+			long expectedOffset = 0;
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+			while (read < count && System.nanoTime() < deadline) {
+				final JournalRecord record = reader.next();
+				if (record == null) {
+					Thread.onSpinWait();
+					continue;
+				}
+				assertEquals("msg-" + read, record.getMessageId());
+				assertEquals(expectedOffset, record.getOffset());
+				expectedOffset = record.getNextOffset();
+				read++;
+			}
+			writer.join();
+			assertEquals(count, read);
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	void testRecoverIncompleteRecord() throws IOException {
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 1024, 0)) {
+			journal.append("UserMessage", "msg-1", "/deliveries/mi-msg-1.xml", null);
+		}
+		final Path segment = journalDir.resolve(DeliveryJournal.segmentName(0));
+		final long size = Files.size(segment);
+		Files.write(segment, "2024-01-01T00:00:00Z\tUserMe".getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.APPEND);
+
+		// The reader must not return the incomplete record
+		try (DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, 0)) {
+			assertEquals("msg-1", reader.next().getMessageId());
+			assertNull(reader.next());
+		}
+
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 1024, 0)) {
+			assertEquals(size, journal.getEndOffset());
+			journal.append("UserMessage", "msg-2", "/deliveries/mi-msg-2.xml", null);
+		}
+		try (DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, 0)) {
+			assertEquals("msg-1", reader.next().getMessageId());
+			assertEquals("msg-2", reader.next().getMessageId());
+			assertNull(reader.next());
+		}
+	}
+
+	@Test
+	void testRetention() throws IOException {
+		try (DeliveryJournal journal = new DeliveryJournal(journalDir, 10, 60000)) {
+			journal.append("UserMessage", "msg-1", "/deliveries/mi-msg-1.xml", null);
+			journal.append("UserMessage", "msg-2", "/deliveries/mi-msg-2.xml", null);
+			final List<Long> segments = DeliveryJournal.listSegments(journalDir);
+			assertEquals(2, segments.size());
+
+			// Make the first segment expire, it is removed when the next segment is started
+			final Path first = journalDir.resolve(DeliveryJournal.segmentName(segments.get(0)));
+			Files.setLastModifiedTime(first, FileTime.fromMillis(System.currentTimeMillis() - 120000));
+			journal.append("UserMessage", "msg-3", "/deliveries/mi-msg-3.xml", null);
+			assertFalse(Files.exists(first));
+
+			// A reader starting at a removed offset continues with the oldest remaining record
+			try (DeliveryJournalReader reader = new DeliveryJournalReader(journalDir, 0)) {
+				assertEquals("msg-2", reader.next().getMessageId());
+				assertEquals("msg-3", reader.next().getMessageId());
+				assertNull(reader.next());
+			}
+		}
+	}
+
+	@Test
+	void testSharedInstance() throws IOException {
+		try (DeliveryJournal journal = DeliveryJournal.getInstance(journalDir, 1024, 0)) {
+			assertSame(journal, DeliveryJournal.getInstance(journalDir.resolve("sub").resolve(".."), 1024, 0));
+			journal.append("UserMessage", "msg-1", "/deliveries/mi-msg-1.xml", Collections.emptyList());
+		}
+		assertTrue(Files.size(journalDir.resolve(DeliveryJournal.segmentName(0))) > 0);
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DeliveryRingBufferTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testPublishAndPoll() throws IOException {
+		final Path file = tempDir.resolve("deliveries.ring");
+		final DeliveryRingBuffer ringBuffer = new DeliveryRingBuffer(file, 10, 65);
+		assertEquals(16, ringBuffer.getCapacity());
+		assertEquals(72, ringBuffer.getEntrySize());
+		assertEquals(DeliveryRingBuffer.HEADER_SIZE + 16 * 72, Files.size(file));
+
+		final DeliveryRingBufferReader reader = new DeliveryRingBufferReader(file);
+		assertNull(reader.poll());
+
+		assertEquals(1, ringBuffer.publish("UserMessage", "msg-1", "/deliveries/mi-msg-1.xml"));
+		ringBuffer.publish("Receipt", "rcpt-1", "/deliveries/mi-rcpt-1.xml");
+		ringBuffer.publish("Error", "err-1", "/a/very/long/path/that/does/not/fit/in/the/entry/mi-err-1.xml");
+
+		RingBufferEntry entry = reader.poll();
+		assertNotNull(entry);
+		assertEquals(1, entry.getSequence());
+		assertEquals("UserMessage", entry.getType());
+		assertEquals("msg-1", entry.getMessageId());
+		assertEquals("/deliveries/mi-msg-1.xml", entry.getMetaDataFile());
+		assertNotNull(entry.getTimestamp());
+		assertFalse(entry.isTruncated());
+
+		entry = reader.poll();
+		assertEquals("Receipt", entry.getType());
+		assertEquals("rcpt-1", entry.getMessageId());
+
+		entry = reader.poll();
+		assertEquals("Error", entry.getType());
+		assertEquals("err-1", entry.getMessageId());
+		assertTrue(entry.isTruncated());
+		assertEquals(72 - DeliveryRingBuffer.ENTRY_DATA_OFFSET - "err-1".length(), entry.getMetaDataFile().length());
+
+		assertNull(reader.poll());
+		assertEquals(4, reader.getSequence());
+		assertEquals(0, reader.getMissedCount());
+	}
+
+	@Test
+	void testOverrun() throws IOException {
+		final Path file = tempDir.resolve("deliveries.ring");
+		final DeliveryRingBuffer ringBuffer = new DeliveryRingBuffer(file, 4, 128);
+		final DeliveryRingBufferReader reader = new DeliveryRingBufferReader(file);
+		for (int i = 1; i <= 10; i++)
+			ringBuffer.publish("UserMessage", "msg-" + i, "/deliveries/mi-msg-" + i + ".xml");
+
+		// Only the last 4 entries are still available
+		for (int i = 7; i <= 10; i++)
+			assertEquals("msg-" + i, reader.poll().getMessageId());
+		assertNull(reader.poll());
+		assertEquals(6, reader.getMissedCount());
+	}
+
+	@Test
+	void testReopen() throws IOException {
+		final Path file = tempDir.resolve("deliveries.ring");
+		new DeliveryRingBuffer(file, 8, 128).publish("UserMessage", "msg-1", "/deliveries/mi-msg-1.xml");
+
+		// Same layout, so the sequence continues and a stored sequence can be used to continue reading
+		final DeliveryRingBufferReader reader = new DeliveryRingBufferReader(file, 1);
+		assertEquals(2, new DeliveryRingBuffer(file, 8, 128).publish("UserMessage", "msg-2",
+																	 "/deliveries/mi-msg-2.xml"));
+		assertEquals("msg-1", reader.poll().getMessageId());
+		assertEquals("msg-2", reader.poll().getMessageId());
+
+		// Other layout, so the file is replaced and the reader that has the old file mapped switches to the new one
+		final DeliveryRingBuffer reinitialised = new DeliveryRingBuffer(file, 16, 128);
+		assertEquals(DeliveryRingBuffer.HEADER_SIZE + 16 * 128, Files.size(file));
+		assertNull(reader.poll());
+		assertEquals(1, reinitialised.publish("UserMessage", "msg-3", "/deliveries/mi-msg-3.xml"));
+		assertEquals("msg-3", reader.poll().getMessageId());
+		assertNull(reader.poll());
+		assertEquals("msg-3", new DeliveryRingBufferReader(file, 1).poll().getMessageId());
+		try (Stream<Path> files = Files.list(tempDir)) {
+			assertEquals(1, files.count());
+		}
+	}
+
+	@Test
+	void testReinitialisedWhileReading() throws IOException {
+		final Path file = tempDir.resolve("deliveries.ring");
+		final DeliveryRingBuffer ringBuffer = new DeliveryRingBuffer(file, 4, 128);
+		final DeliveryRingBufferReader reader = new DeliveryRingBufferReader(file);
+		for (int i = 1; i <= 6; i++)
+			ringBuffer.publish("UserMessage", "msg-" + i, "/deliveries/mi-msg-" + i + ".xml");
+		assertEquals("msg-3", reader.poll().getMessageId());
+
+		// Entries published to the new ring buffer before the reader checks again must not be lost
+		final DeliveryRingBuffer reinitialised = new DeliveryRingBuffer(file, 8, 64);
+		for (int i = 7; i <= 9; i++)
+			reinitialised.publish("UserMessage", "msg-" + i, "/deliveries/mi-msg-" + i + ".xml");
+		for (int i = 7; i <= 9; i++)
+			assertEquals("msg-" + i, reader.poll().getMessageId());
+		assertNull(reader.poll());
+		assertEquals(4, reader.getSequence());
+	}
+
+	@Test
+	void testStoredSequenceAfterReinitialisation() throws IOException {
+		final Path file = tempDir.resolve("deliveries.ring");
+		final DeliveryRingBuffer ringBuffer = new DeliveryRingBuffer(file, 8, 128);
+		for (int i = 1; i <= 2; i++)
+			ringBuffer.publish("UserMessage", "msg-" + i, "/deliveries/mi-msg-" + i + ".xml");
+
+		// The stored sequence is from before the ring buffer was reinitialised and is ahead of the writer
+		final DeliveryRingBufferReader reader = new DeliveryRingBufferReader(file, 500);
+		assertEquals("msg-1", reader.poll().getMessageId());
+		assertEquals("msg-2", reader.poll().getMessageId());
+		assertNull(reader.poll());
+		ringBuffer.publish("UserMessage", "msg-3", "/deliveries/mi-msg-3.xml");
+		assertEquals("msg-3", reader.poll().getMessageId());
+	}
+
+	@Test
+	void testInvalidFile() throws IOException {
+		final Path file = Files.write(tempDir.resolve("other.file"), new byte[256]);
+		assertThrows(IOException.class, () -> new DeliveryRingBufferReader(file));
+		assertThrows(IllegalArgumentException.class, () -> new DeliveryRingBuffer(file, 8, 16));
+	}
+
+	@Test
+	void testWriterInOtherJVM() throws Exception {
+		final Path file = tempDir.resolve("deliveries.ring");
+		final int count = 500;
+		new DeliveryRingBuffer(file, 1024, 256);
+		final DeliveryRingBufferReader reader = new DeliveryRingBufferReader(file);
+
+		final Process writer = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+												  "-cp", System.getProperty("java.class.path"),
+												  WriterProcess.class.getName(), file.toString(),
+												  Integer.toString(count))
+										.redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+										.start();
+		try {
+			for (int i = 0; i < count; i++) {
+				final RingBufferEntry entry = reader.await(30, TimeUnit.SECONDS);
+				assertNotNull(entry, "Entry " + i + " not received");
+				assertEquals("msg-" + i, entry.getMessageId());
+				assertEquals("/deliveries/mi-msg-" + i + ".xml", entry.getMetaDataFile());
+			}
+			assertTrue(writer.waitFor(30, TimeUnit.SECONDS));
+			assertEquals(0, writer.exitValue());
+		} finally {
+			writer.destroyForcibly();
+		}
+		assertNull(reader.poll());
+		assertEquals(0, reader.getMissedCount());
+	}
+
+	/**
+	 * Writes entries to the ring buffer from another JVM.
+	 */
+	public static class WriterProcess {
+		public static void main(String[] args) throws Exception {
+			final DeliveryRingBuffer ringBuffer = new DeliveryRingBuffer(Paths.get(args[0]), 1024, 256);
+			final int count = Integer.parseInt(args[1]);
+			for (int i = 0; i < count; i++) {
+				ringBuffer.publish("UserMessage", "msg-" + i, "/deliveries/mi-msg-" + i + ".xml");
+				if (i % 50 == 0)
+					Thread.sleep(1);
+			}
+		}
+	}
+}
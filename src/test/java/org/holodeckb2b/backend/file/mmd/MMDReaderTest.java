@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.holodeckb2b.commons.testing.TestUtils;
+import org.holodeckb2b.interfaces.general.IPartyId;
+import org.holodeckb2b.interfaces.general.IProperty;
+import org.holodeckb2b.interfaces.general.ITradingPartner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks that the {@link MMDReader} creates the same objects as the Simple XML Persister and rejects the same
+ * documents, and that the validation against the MMD schema works.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ */
+class MMDReaderTest {
+
+	private static final String MMD_START = "<MessageMetaData xmlns=\"http://holodeck-b2b.org/schemas/2014/06/mmd\">";
+	private static final String MMD_END = "</MessageMetaData>";
+
+	@Test
+	void testFullDocument() throws IOException {
+		final byte[] mmd = Files.readAllBytes(TestUtils.getTestResource("mmd/full.mmd"));
+
+		final MessageMetaData expected = MessageMetaData.createFromStream(new ByteArrayInputStream(mmd));
+		final MessageMetaData actual = MMDReader.read(new ByteArrayInputStream(mmd));
+
+		assertNotNull(actual.getTimestamp());
+		assertEquals(3, actual.getPayloads().size());
+		assertEquals("  C4 ", new ArrayList<>(actual.getMessageProperties()).get(1).getValue());
+		assertSame(expected, actual);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"",
+		"<MessageInfo/>",
+		"<MessageInfo mpc=\"\"><MessageId>  id \n</MessageId><Timestamp>not a date</Timestamp></MessageInfo>",
+		"<CollaborationInfo><Action></Action><ConversationId>  </ConversationId></CollaborationInfo>",
+		"<CollaborationInfo><AgreementRef pmode=\"pm\"/><Action>a<!-- comment -->b&#65;</Action></CollaborationInfo>",
+		"<CollaborationInfo><Action>a</Action></CollaborationInfo><MessageInfo><MessageId>x</MessageId></MessageInfo>",
+		"<Unknown><CollaborationInfo><Action>x</Action></CollaborationInfo></Unknown><PartyInfo/>",
+		"<MessageProperties/><PartyInfo><To><PartyId>p</PartyId></To></PartyInfo>",
+		"<MessageProperties>text<Property name=\"n\" type=\"t\">  </Property></MessageProperties>",
+		"<PayloadInfo deleteFilesAfterSubmit=\"TRUE\"><PartInfo location=\"a\"><PartProperties/></PartInfo></PayloadInfo>",
+		"<PayloadInfo deleteFilesAfterSubmit=\"\"><PartInfo location=\"a\" containment=\"Body\" mimeType=\"\"/>"
+				+ "</PayloadInfo>",
+		"<PayloadInfo><PartInfo containment=\"EXTERNAL\"><Schema location=\"s\">text</Schema></PartInfo></PayloadInfo>",
+		"<PayloadInfo><PartInfo location=\"a\"><Description lang=\"nl\">d</Description></PartInfo></PayloadInfo>"
+	})
+	void testSameResult(final String content) throws IOException {
+		final String mmd = MMD_START + content + MMD_END;
+
+		assertSame(MessageMetaData.createFromStream(toStream(mmd)), MMDReader.read(toStream(mmd)));
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"<MessageInfo><Unknown/></MessageInfo>",
+		"<CollaborationInfo unknown=\"x\"/>",
+		"<CollaborationInfo><Action>a</Action><Action>b</Action></CollaborationInfo>",
+		"<CollaborationInfo/><CollaborationInfo/>",
+		"<CollaborationInfo><Action>a<b/>c</Action></CollaborationInfo>",
+		"<CollaborationInfo><Service/></CollaborationInfo>",
+		"<PartyInfo><From><Role>r</Role></From></PartyInfo>",
+		"<PartyInfo><From><PartyId></PartyId></From></PartyInfo>",
+		"<MessageProperties><Property>v</Property></MessageProperties>",
+		"<MessageProperties><Property name=\"n\"/></MessageProperties>",
+		"<PayloadInfo/>",
+		"<PayloadInfo><PartInfo/></PayloadInfo>",
+		"<PayloadInfo><PartInfo containment=\"body\" location=\"\"/></PayloadInfo>",
+		"<PayloadInfo><PartInfo location=\"a\"><Schema namespace=\"n\"/></PartInfo></PayloadInfo>",
+		"<PayloadInfo><PartInfo location=\"a\"><Description/></PartInfo></PayloadInfo>",
+		"<MessageInfo>"
+	})
+	void testBothReject(final String content) {
+		final String mmd = MMD_START + content + MMD_END;
+
+		assertThrows(IOException.class, () -> MessageMetaData.createFromStream(toStream(mmd)));
+		assertThrows(IOException.class, () -> MMDReader.read(toStream(mmd)));
+	}
+
+	@Test
+	void testValidation() throws IOException {
+		final byte[] valid = Files.readAllBytes(TestUtils.getTestResource("mmd/full.mmd"));
+		// The schema requires the ConversationId, but the parser does not
+		final String invalid = MMD_START + "<CollaborationInfo><Action>a</Action></CollaborationInfo>" + MMD_END;
+
+		assertNotNull(MMDReader.read(toStream(invalid)));
+		final InvalidMMDException error = assertThrows(InvalidMMDException.class,
+														() -> MMDReader.read(toStream(invalid), true));
+		assertTrue(error.getMessage().contains("line 1"));
+		// The validator of the thread should be reusable after a failed validation
+		assertSame(MMDReader.read(new ByteArrayInputStream(valid)), MMDReader.read(new ByteArrayInputStream(valid),
+																					true));
+	}
+
+	@Test
+	void testConcurrentValidation() throws Exception {
+		final byte[] valid = Files.readAllBytes(TestUtils.getTestResource("mmd/full.mmd"));
+		final String invalid = MMD_START + "<CollaborationInfo><ConversationId>c</ConversationId>"
+							 + "<Action>a</Action></CollaborationInfo>" + MMD_END;
+
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				final boolean useValid = i % 2 == 0;
+				results.add(executor.submit(() -> {
+					try {
+						MMDReader.read(useValid ? new ByteArrayInputStream(valid) : toStream(invalid), true);
+						return true;
+					} catch (InvalidMMDException notValid) {
+						return false;
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++)
+				assertEquals(i % 2 == 0, results.get(i).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private static InputStream toStream(final String s) {
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void assertSame(final MessageMetaData expected, final MessageMetaData actual) {
+		assertEquals(expected.messageInfo == null, actual.messageInfo == null);
+		if (expected.messageInfo != null) {
+			assertEquals(expected.messageInfo.timestamp, actual.messageInfo.timestamp);
+			assertEquals(expected.getMessageId(), actual.getMessageId());
+			assertEquals(expected.getRefToMessageId(), actual.getRefToMessageId());
+			assertEquals(expected.getMPC(), actual.getMPC());
+		}
+		assertEquals(expected.partyInfo == null, actual.partyInfo == null);
+		assertSame(expected.getSender(), actual.getSender());
+		assertSame(expected.getReceiver(), actual.getReceiver());
+
+		assertEquals(expected.collabInfo == null, actual.collabInfo == null);
+		if (expected.collabInfo != null) {
+			assertEquals(expected.collabInfo.getAction(), actual.collabInfo.getAction());
+			assertEquals(expected.collabInfo.getConversationId(), actual.collabInfo.getConversationId());
+			if (expected.collabInfo.getService() == null)
+				assertNull(actual.collabInfo.getService());
+			else {
+				assertEquals(expected.collabInfo.getService().getName(), actual.collabInfo.getService().getName());
+				assertEquals(expected.collabInfo.getService().getType(), actual.collabInfo.getService().getType());
+			}
+			if (expected.collabInfo.getAgreement() == null)
+				assertNull(actual.collabInfo.getAgreement());
+			else {
+				assertEquals(expected.collabInfo.getAgreement().getName(),
+							 actual.collabInfo.getAgreement().getName());
+				assertEquals(expected.collabInfo.getAgreement().getType(),
+							 actual.collabInfo.getAgreement().getType());
+				assertEquals(expected.collabInfo.getAgreement().getPModeId(),
+							 actual.collabInfo.getAgreement().getPModeId());
+			}
+		}
+		assertSame(expected.getMessageProperties(), actual.getMessageProperties());
+
+		assertEquals(expected.payloadInfo == null, actual.payloadInfo == null);
+		assertEquals(expected.shouldDeleteFilesAfterSubmit(), actual.shouldDeleteFilesAfterSubmit());
+		if (expected.payloadInfo != null) {
+			final List<PartInfo> expParts = new ArrayList<>(expected.getPayloads());
+			final List<PartInfo> actParts = new ArrayList<>(actual.getPayloads());
+			assertEquals(expParts.size(), actParts.size());
+			for (int i = 0; i < expParts.size(); i++)
+				assertSame(expParts.get(i), actParts.get(i));
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static void assertSame(final PartInfo expected, final PartInfo actual) {
+		assertEquals(expected.containment, actual.containment);
+		assertEquals(expected.getPayloadURI(), actual.getPayloadURI());
+		assertEquals(expected.getMimeType(), actual.getMimeType());
+		assertEquals(expected.getContentLocation(), actual.getContentLocation());
+		if (expected.getSchemaReference() == null)
+			assertNull(actual.getSchemaReference());
+		else {
+			assertEquals(expected.getSchemaReference().getLocation(), actual.getSchemaReference().getLocation());
+			assertEquals(expected.getSchemaReference().getNamespace(), actual.getSchemaReference().getNamespace());
+			assertEquals(expected.getSchemaReference().getVersion(), actual.getSchemaReference().getVersion());
+		}
+		if (expected.getDescription() == null)
+			assertNull(actual.getDescription());
+		else {
+			assertEquals(expected.getDescription().getText(), actual.getDescription().getText());
+			assertEquals(expected.getDescription().getLanguage(), actual.getDescription().getLanguage());
+		}
+		assertSame(expected.getProperties(), actual.getProperties());
+	}
+
+	private static void assertSame(final ITradingPartner expected, final ITradingPartner actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.getRole(), actual.getRole());
+		final Collection<IPartyId> expIds = expected.getPartyIds();
+		final Collection<IPartyId> actIds = actual.getPartyIds();
+		assertEquals(expIds.size(), actIds.size());
+		final Iterator<IPartyId> it = actIds.iterator();
+		for (IPartyId e : expIds) {
+			final IPartyId a = it.next();
+			assertEquals(e.getId(), a.getId());
+			assertEquals(e.getType(), a.getType());
+		}
+	}
+
+	private static void assertSame(final Collection<IProperty> expected, final Collection<IProperty> actual) {
+		if (expected == null) {
+			assertNull(actual);
+			return;
+		}
+		assertEquals(expected.size(), actual.size());
+		final Iterator<IProperty> it = actual.iterator();
+		for (IProperty e : expected) {
+			final IProperty a = it.next();
+			assertEquals(e.getName(), a.getName());
+			assertEquals(e.getValue(), a.getValue());
+			assertEquals(e.getType(), a.getType());
+		}
+	}
+}
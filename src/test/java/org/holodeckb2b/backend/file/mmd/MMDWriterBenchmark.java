@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.holodeckb2b.commons.testing.TestUtils;
+
+/**
+ * Simple benchmark that compares the time needed to write a MMD document to file using the Simple XML Persister
+ * ({@link MessageMetaData#writeToFile(java.io.File)}) and the {@link MMDWriter}. It is not executed as part of the
+ * build, run it using:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.holodeckb2b.backend.file.mmd.MMDWriterBenchmark [-Dexec.args=«iterations»]
+ * </pre>
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ */
+public class MMDWriterBenchmark {
+
+	private interface MMDWrite {
+		void write(MessageMetaData mmd, Path file) throws IOException;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		final Path tempDir = Files.createTempDirectory("mmd-benchmark");
+		final Path target = tempDir.resolve("benchmark.mmd");
+		try {
+			final MMDWrite persister = (m, f) -> m.writeToFile(f.toFile());
+			final MMDWrite streaming = MMDWriter::write;
+
+			// Warm up both implementations before measuring
+			run(persister, mmd, target, iterations / 4);
+			run(streaming, mmd, target, iterations / 4);
+
+			final double persisterTime = run(persister, mmd, target, iterations);
+			final double streamingTime = run(streaming, mmd, target, iterations);
+			System.out.printf("Persister : %8.1f us/document%n", persisterTime);
+			System.out.printf("MMDWriter : %8.1f us/document%n", streamingTime);
+			System.out.printf("Speed-up  : %8.1fx%n", persisterTime / streamingTime);
+		} finally {
+			Files.deleteIfExists(target);
+			Files.deleteIfExists(tempDir);
+		}
+	}
+
+	private static double run(final MMDWrite writer, final MessageMetaData mmd, final Path target,
+							  final int iterations) throws IOException {
+		final long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			writer.write(mmd, target);
+		return (System.nanoTime() - start) / (iterations * 1000.0);
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.holodeckb2b.commons.testing.TestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * Checks that the {@link MMDWriter} produces exactly the same document as the Simple XML Persister.
+ *
+ * @author Sander Fieten (sander at holodeck-b2b.org)
+ */
+class MMDWriterTest {
+
+	private static final String MMD_START = "<MessageMetaData xmlns=\"http://holodeck-b2b.org/schemas/2014/06/mmd\">";
+	private static final String MMD_END = "</MessageMetaData>";
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testFullDocument() throws IOException {
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		assertSameOutput(mmd);
+		// Also check the copy that the deliverers create from the received message unit
+		assertSameOutput(new MessageMetaData(mmd));
+	}
+
+	@Test
+	void testSpecialCharacters() throws IOException {
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		mmd.setRefToMessageId("ref <&> \"q\" 'a' €\r\n\ttab \u0001");
+		mmd.getPayloads().iterator().next().setContentLocation("a&b\"c<d>'eé\t\n");
+		assertSameOutput(mmd);
+	}
+
+	@Test
+	void testEmptyValues() throws IOException {
+		final MessageMetaData mmd = new MessageMetaData();
+		assertSameOutput(mmd);
+		mmd.setMessageId("");
+		mmd.collabInfo = new CollaborationInfo();
+		mmd.collabInfo.agreementRef = new AgreementReference();
+		mmd.msgProperties = new ArrayList<>();
+		assertSameOutput(mmd);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"<MessageInfo/><PartyInfo/>",
+		"<PartyInfo><From><PartyId type=\"t\">a</PartyId></From></PartyInfo><CollaborationInfo><Action> </Action>"
+				+ "</CollaborationInfo>",
+		"<MessageProperties><Property name=\"n\"> </Property></MessageProperties>",
+		"<PayloadInfo><PartInfo location=\"a\" containment=\"attachment\"/><PartInfo location=\"b\"><Description>d"
+				+ "</Description><PartProperties/></PartInfo></PayloadInfo>",
+		"<PayloadInfo deleteFilesAfterSubmit=\"true\"><PartInfo containment=\"EXTERNAL\"><Schema location=\"s\"/>"
+				+ "</PartInfo></PayloadInfo>"
+	})
+	void testSameOutput(final String content) throws IOException {
+		assertSameOutput(MMDReader.read(new ByteArrayInputStream((MMD_START + content + MMD_END)
+																		.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Test
+	void testUserMessageView() throws IOException {
+		final UserMessageView view = new UserMessageView(
+										MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile()));
+		int i = 0;
+		for (final PayloadView p : view.getPayloads()) {
+			p.setContentLocation("/deliveries/pl-" + i);
+			final Property prop = new Property();
+			prop.setName("org:holodeckb2b:ref");
+			prop.setValue("pl-" + i++);
+			p.addProperty(prop);
+		}
+
+		// The view should be written as the MessageMetaData copy that the deliverers created before
+		final MessageMetaData copy = new MessageMetaData(view);
+		i = 0;
+		for (final PartInfo p : copy.getPayloads())
+			p.setContentLocation("/deliveries/pl-" + i++);
+		final StringWriter expected = new StringWriter();
+		MMDWriter.write(copy, expected);
+		final StringWriter actual = new StringWriter();
+		MMDWriter.write(view, actual);
+
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	@Test
+	void testMissingRequired() {
+		final MessageMetaData mmd = new MessageMetaData();
+		mmd.msgProperties = new ArrayList<>();
+		mmd.msgProperties.add(new Property());
+
+		assertThrows(IOException.class, () -> mmd.writeToFile(tempDir.resolve("persister.mmd").toFile()));
+		assertThrows(IOException.class, () -> MMDWriter.write(mmd, tempDir.resolve("streaming.mmd")));
+	}
+
+	private void assertSameOutput(final MessageMetaData mmd) throws IOException {
+		final Path expected = tempDir.resolve("persister.mmd");
+		final Path actual = tempDir.resolve("streaming.mmd");
+		mmd.writeToFile(expected.toFile());
+		MMDWriter.write(mmd, actual);
+
+		assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.mmd;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+import org.holodeckb2b.common.messagemodel.UserMessage;
+import org.holodeckb2b.commons.testing.TestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UserMessageViewTest {
+
+	@Test
+	void testDelegation() throws Exception {
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		final UserMessageView view = new UserMessageView(mmd);
+
+		assertEquals(mmd.getMessageId(), view.getMessageId());
+		assertEquals(mmd.getTimestamp(), view.getTimestamp());
+		assertEquals(mmd.getMPC(), view.getMPC());
+		assertEquals(mmd.getPModeId(), view.getPModeId());
+		// The meta-data is not copied
+		assertSame(mmd.getSender(), view.getSender());
+		assertSame(mmd.getCollaborationInfo(), view.getCollaborationInfo());
+		assertSame(mmd.getMessageProperties(), view.getMessageProperties());
+
+		assertEquals(mmd.getPayloads().size(), view.getPayloads().size());
+		final Iterator<PartInfo> src = mmd.getPayloads().iterator();
+		for (final PayloadView p : view.getPayloads()) {
+			final PartInfo s = src.next();
+			assertSame(s, p.getSource());
+			assertSame(s.getProperties(), p.getProperties());
+			assertSame(s.getSchemaReference(), p.getSchemaReference());
+			assertEquals(s.getMimeType(), p.getMimeType());
+			assertNull(p.getContentLocation());
+		}
+		// The same views should be returned on each call
+		assertSame(view.getPayloads(), view.getPayloads());
+	}
+
+	@Test
+	void testOverlay() throws Exception {
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		final PartInfo srcPayload = mmd.getPayloads().iterator().next();
+		final String srcLocation = srcPayload.getContentLocation();
+		final int srcProps = srcPayload.getProperties().size();
+
+		final PayloadView view = new UserMessageView(mmd).getPayloads().get(0);
+		view.setContentLocation("/delivered/payload");
+		final Property prop = new Property();
+		prop.setName("org:holodeckb2b:location");
+		prop.setValue("/delivered/payload");
+		view.addProperty(prop);
+
+		assertEquals("/delivered/payload", view.getContentLocation());
+		assertEquals(srcProps + 1, view.getProperties().size());
+		assertTrue(view.getProperties().contains(prop));
+		// The source payload is not changed
+		assertEquals(srcLocation, srcPayload.getContentLocation());
+		assertEquals(srcProps, srcPayload.getProperties().size());
+	}
+
+	@Test
+	void testContentFromRelativeLocation(@TempDir final Path tempDir) throws Exception {
+		final MessageMetaData mmd = MMDReader.read(TestUtils.getTestResource("mmd/full.mmd").toFile());
+		final PayloadView view = new UserMessageView(mmd).getPayloads().get(0);
+		final Path saved = Files.write(tempDir.resolve("pl-saved.dat"), "saved".getBytes(StandardCharsets.UTF_8));
+
+		// The location is relative to the directory of the meta-data file, not to the working directory
+		view.setContentLocation("pl-saved.dat", saved);
+		assertEquals("pl-saved.dat", view.getContentLocation());
+		assertEquals(saved, view.getContentFile());
+		try (InputStream content = view.getContent()) {
+			assertArrayEquals("saved".getBytes(StandardCharsets.UTF_8), content.readAllBytes());
+		}
+	}
+
+	@Test
+	void testNoPayloads() {
+		assertTrue(new UserMessageView(new UserMessage()).getPayloads().isEmpty());
+	}
+}
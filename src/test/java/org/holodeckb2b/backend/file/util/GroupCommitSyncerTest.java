@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GroupCommitSyncerTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void testSingleRequest() throws IOException {
+		final Path f = Files.write(tempDir.resolve("single"), new byte[] { 1, 2, 3 });
+		final GroupCommitSyncer syncer = new GroupCommitSyncer(0);
+
+		assertDoesNotThrow(() -> syncer.sync(Collections.singletonList(f), tempDir));
+		assertEquals(1, syncer.getBatchCount());
+	}
+
+	@Test
+	void testNoWaitWithoutConcurrentRequests() throws IOException {
+		final Path f = Files.write(tempDir.resolve("single"), new byte[] { 1, 2, 3 });
+		final GroupCommitSyncer syncer = new GroupCommitSyncer(10000);
+
+		// There are no other requests in progress, so the window should not be waited for
+		final long start = System.nanoTime();
+		syncer.sync(Collections.singletonList(f), tempDir);
+		syncer.sync(Collections.emptyList(), tempDir);
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertEquals(2, syncer.getBatchCount());
+	}
+
+	@Test
+	void testFilesOnly() throws IOException {
+		final Path f = Files.write(tempDir.resolve("single"), new byte[] { 1, 2, 3 });
+		final GroupCommitSyncer syncer = new GroupCommitSyncer(10000);
+
+		assertDoesNotThrow(() -> syncer.sync(Collections.singletonList(f), null));
+		assertEquals(0, syncer.getBatchCount());
+	}
+
+	@Test
+	void testConcurrentRequestsCombined() throws Exception {
+		final int threads = 8;
+		final GroupCommitSyncer syncer = new GroupCommitSyncer(500);
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		final AtomicInteger failures = new AtomicInteger();
+		try {
+			for (int i = 0; i < threads; i++) {
+				final Path f = Files.write(tempDir.resolve("file-" + i), new byte[] { (byte) i });
+				executor.execute(() -> {
+					try {
+						start.await();
+						syncer.sync(Collections.singletonList(f), tempDir);
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+					done.countDown();
+				});
+			}
+			start.countDown();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(0, failures.get());
+		// All requests arrive well within the window, so they should be combined into (almost) one batch
+		assertTrue(syncer.getBatchCount() < threads);
+	}
+
+	@Test
+	void testFailure() {
+		final GroupCommitSyncer syncer = new GroupCommitSyncer(0);
+
+		assertThrows(IOException.class,
+					 () -> syncer.sync(Collections.singletonList(tempDir.resolve("does-not-exist")), tempDir));
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class UniqueNamesTest {
+
+	@Test
+	void testFormat() {
+		final UniqueNames names = new UniqueNames("node_1.a");
+		assertEquals("node_1.a", names.getNodeId());
+		assertTrue(names.next().matches("node_1\\.a-[0-9a-z]+-[0-9a-z]+"));
+	}
+
+	@Test
+	void testDefaultNodeId() {
+		final String nodeId = new UniqueNames().getNodeId();
+		assertFalse(nodeId.isEmpty());
+		assertEquals(nodeId, new UniqueNames("").getNodeId());
+		assertNotEquals(nodeId, new UniqueNames("other").getNodeId());
+	}
+
+	@Test
+	void testInvalidNodeId() {
+		assertThrows(IllegalArgumentException.class, () -> new UniqueNames("node-1"));
+		assertThrows(IllegalArgumentException.class, () -> new UniqueNames("../node"));
+	}
+
+	@Test
+	void testUniqueConcurrent() {
+		// Generators with the same node id share the sequence, so names are unique even when generated concurrently
+		final UniqueNames g1 = new UniqueNames("node");
+		final UniqueNames g2 = new UniqueNames("node");
+		final Set<String> generated = ConcurrentHashMap.newKeySet();
+		IntStream.range(0, 100000).parallel().forEach(i -> generated.add((i % 2 == 0 ? g1 : g2).next()));
+		assertEquals(100000, generated.size());
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2024 The Holodeck B2B Team, Sander Fieten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.holodeckb2b.backend.file.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class Utf8WriterTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = { "", "plain ascii", "café €", "😀 smiley", "lone \ud83d high",
+							 "lone \ude00 low", "ends with high \ud83d" })
+	void testEncoding(String text) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (Utf8Writer w = new Utf8Writer(out)) {
+			w.write(text);
+		}
+		assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+	}
+
+	@Test
+	void testLargeMixedContent() throws IOException {
+		// Generate text larger than the buffer with characters of all encoded lengths, including surrogate pairs
+		final Random r = new Random(42);
+		final StringBuilder sb = new StringBuilder();
+		while (sb.length() < 3 * BufferPool.BUFFER_SIZE)
+			switch (r.nextInt(4)) {
+			case 0 :
+				sb.append((char) (0x20 + r.nextInt(0x5f)));
+				break;
+			case 1 :
+				sb.append((char) (0x80 + r.nextInt(0x780)));
+				break;
+			case 2 :
+				sb.append((char) (0x800 + r.nextInt(0xd000)));
+				break;
+			default :
+				sb.appendCodePoint(0x10000 + r.nextInt(0x100000));
+			}
+		final String text = sb.toString();
+		final char[] chars = text.toCharArray();
+
+		// Write the text in parts of varying length, so surrogate pairs are also split over writes
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (Utf8Writer w = new Utf8Writer(out)) {
+			int i = 0;
+			while (i < chars.length) {
+				final int n = Math.min(chars.length - i, 1 + r.nextInt(10000));
+				if (r.nextBoolean())
+					w.write(chars, i, n);
+				else
+					w.write(text, i, n);
+				i += n;
+			}
+		}
+		assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+	}
+
+	@Test
+	void testWriteAfterClose() throws IOException {
+		final Utf8Writer w = new Utf8Writer(new ByteArrayOutputStream());
+		w.close();
+		// Closing twice is allowed, writing is not
+		w.close();
+		assertThrows(IOException.class, () -> w.write("text"));
+	}
+}